@@ -0,0 +1,94 @@
+package com.xcq.benchmarks;
+
+import com.xcq.core.ApplicationContext;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 每多登录一个账号增加的堆内存和线程数。连接指向本机未监听的端口，登录在建立 TCP 连接时失败，
+// 统计的是连接对象、花名册缓存、数据库、发送线程和 vCard 缓存等客户端自身的开销，不包括服务器推送的数据。
+// 数据库位于当前目录下的 data/accounts
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AccountFootprintBenchmark {
+    @Param({"3"})
+    public int accounts;
+
+    private ApplicationContext primary;
+    private final List<ApplicationContext> opened = new ArrayList<>();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerAccount;
+        public long threadsPerAccount;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        primary = new ApplicationContext();
+    }
+
+    @Benchmark
+    public void openAccounts(Footprint footprint) throws Exception {
+        long heapBefore = usedHeap();
+        int threadsBefore = Thread.activeCount();
+        for (int i = 0; i < accounts; i++) {
+            ApplicationContext account = primary.openAccount();
+            opened.add(account);
+            try {
+                account.getXmppClient().initialize(XMPPTCPConnectionConfiguration.builder()
+                    .setHost("127.0.0.1")
+                    .setPort(1)
+                    .setXmppDomain("bench.local")
+                    .setUsernameAndPassword("user" + i, "secret")
+                    .setSecurityMode(XMPPTCPConnectionConfiguration.SecurityMode.disabled)
+                    .build());
+            } catch (RuntimeException expected) {
+                // 没有服务器，连接失败
+            }
+            account.getDatabase();
+            account.getVCardCache();
+            account.getAsyncService().getChatHistory(BenchmarkData.SELF_JID, BenchmarkData.contactJid(0));
+        }
+        footprint.bytesPerAccount = (usedHeap() - heapBefore) / accounts;
+        footprint.threadsPerAccount = (Thread.activeCount() - threadsBefore) / accounts;
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeAccounts() {
+        for (ApplicationContext account : opened) {
+            primary.closeAccount(account).join();
+        }
+        opened.clear();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
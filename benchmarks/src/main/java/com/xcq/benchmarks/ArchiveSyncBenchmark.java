@@ -0,0 +1,78 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.xmpp.archive.ArchiveSync;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// 从替身存档补齐 backlog 条消息的耗时，其中前 overlap 条已经在本地（本机发送，只有 origin_id）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArchiveSyncBenchmark {
+    @Param({"100", "500"})
+    public int pageSize;
+
+    @Param({"10000"})
+    public int backlog;
+
+    @Param({"1000"})
+    public int overlap;
+
+    private LocalArchive archive;
+    private ArchiveSync sync;
+    private File dbFile;
+    private ChatDatabase db;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        archive = new LocalArchive(backlog, System.currentTimeMillis() - backlog * 1000L);
+        sync = new ArchiveSync(1, pageSize);
+    }
+
+    // 每次从新的数据库开始，同步位置设在存档开头，前 overlap 条消息已在本地
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        db = ChatDatabase.open(dbFile);
+        for (int i = 0; i < overlap; i++) {
+            ChatDatabase.ArchivedMessage m = archive.getMessages().get(i);
+            db.saveMessage(m.getSenderJid(), m.getReceiverJid(), m.getBody(), m.isLocal(), m.getOriginId(), null);
+        }
+        db.saveArchivedMessages(BenchmarkData.SELF_JID, Collections.emptyList(), "-1");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        db.close();
+        BenchmarkData.delete(dbFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        sync.shutdown();
+    }
+
+    @Benchmark
+    public int catchUp() throws Exception {
+        return sync.catchUp(BenchmarkData.SELF_JID, archive, db).get();
+    }
+}
@@ -0,0 +1,141 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// 基准测试共用的数据准备工具，数据由固定种子生成以保证结果可重复
+final class BenchmarkData {
+    static final String SELF_JID = "me@bench.xcq";
+    static final int CONTACTS = 20;
+    private static final int BATCH_SIZE = 10_000;
+    private static final long SEED = 42;
+
+    private BenchmarkData() {}
+
+    static String contactJid(int index) {
+        return "contact" + index + "@bench.xcq";
+    }
+
+    static File createTempDatabaseFile() throws IOException {
+        File dir = Files.createTempDirectory("xcq-bench").toFile();
+        dir.deleteOnExit();
+        return new File(dir, "chat.db");
+    }
+
+    // 建表后直接用 JDBC 批量写入 rows 条消息，均匀分布在 CONTACTS 个联系人的会话中，约一半未读
+    static ChatDatabase createPopulated(File dbFile, int rows) throws SQLException {
+        ChatDatabase.open(dbFile).close();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath())) {
+            Map<String, Integer> ids = registerJids(connection);
+            insertMessages(connection,
+                "INSERT INTO messages (sender_id, receiver_id, message, is_local, timestamp, is_read) VALUES (?, ?, ?, ?, ?, ?)",
+                rows, (pstmt, index, jid) -> pstmt.setInt(index, ids.get(jid)));
+        }
+        return ChatDatabase.open(dbFile);
+    }
+
+    // 与 createPopulated 相同的数据，按 JID 以字符串保存的旧版表结构写入，用 ChatDatabase 打开时会迁移
+    static void createLegacy(File dbFile, int rows) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+             Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("CREATE TABLE messages (id INTEGER PRIMARY KEY AUTOINCREMENT, sender_jid TEXT NOT NULL, " +
+                "receiver_jid TEXT NOT NULL, message TEXT NOT NULL, is_local BOOLEAN NOT NULL, " +
+                "is_read BOOLEAN NOT NULL DEFAULT 0, timestamp BIGINT NOT NULL)");
+            statement.execute("CREATE INDEX idx_participants ON messages (sender_jid, receiver_jid)");
+            statement.execute("CREATE INDEX idx_timestamp ON messages (timestamp)");
+            connection.setAutoCommit(false);
+            insertMessages(connection,
+                "INSERT INTO messages (sender_jid, receiver_jid, message, is_local, timestamp, is_read) VALUES (?, ?, ?, ?, ?, ?)",
+                rows, (pstmt, index, jid) -> pstmt.setString(index, jid));
+        }
+    }
+
+    // 在 jids 表中登记本人和所有联系人，返回 JID 到 id 的映射
+    static Map<String, Integer> registerJids(Connection connection) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement insert = connection.prepareStatement("INSERT OR IGNORE INTO jids (jid) VALUES (?)");
+             PreparedStatement select = connection.prepareStatement("SELECT id FROM jids WHERE jid = ?")) {
+            for (int i = -1; i < CONTACTS; i++) {
+                String jid = i < 0 ? SELF_JID : contactJid(i);
+                insert.setString(1, jid);
+                insert.executeUpdate();
+                select.setString(1, jid);
+                try (ResultSet rs = select.executeQuery()) {
+                    rs.next();
+                    ids.put(jid, rs.getInt(1));
+                }
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+        return ids;
+    }
+
+    private static void insertMessages(Connection connection, String sql, int rows, JidBinder jids) throws SQLException {
+        connection.setAutoCommit(false);
+        Random random = new Random(SEED);
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            long timestamp = System.currentTimeMillis() - rows * 1000L;
+            for (int i = 0; i < rows; i++) {
+                String contact = contactJid(i % CONTACTS);
+                boolean local = random.nextBoolean();
+                jids.bind(pstmt, 1, local ? SELF_JID : contact);
+                jids.bind(pstmt, 2, local ? contact : SELF_JID);
+                pstmt.setString(3, message(random));
+                pstmt.setBoolean(4, local);
+                pstmt.setLong(5, timestamp + i * 1000L);
+                pstmt.setBoolean(6, local || random.nextBoolean());
+                pstmt.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    pstmt.executeBatch();
+                    connection.commit();
+                }
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        }
+    }
+
+    @FunctionalInterface
+    private interface JidBinder {
+        void bind(PreparedStatement pstmt, int index, String jid) throws SQLException;
+    }
+
+    static String message(Random random) {
+        int length = 10 + random.nextInt(120);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    // 删除数据库所在的临时目录，包括其中的备份
+    static void delete(File dbFile) {
+        deleteRecursively(dbFile.getParentFile());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,131 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 机器人发送的长 JSON 消息压缩存储前后的数据库大小和读取延迟。
+// 数据先按旧格式写入，compressed=true 时再由后台压缩任务处理全部记录；数据库文件大小在准备阶段输出。
+// loadPage 只查询一页，loadAndRender 还取出每条正文，相当于显示这一页
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BodyCompressionBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    @Param({"20000"})
+    public int rows;
+
+    @Param({"4096"})
+    public int bodyBytes;
+
+    private File dbFile;
+    private ChatDatabase db;
+    private final String contactJid = BenchmarkData.contactJid(0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        ChatDatabase.open(dbFile).close();
+        populate();
+        db = ChatDatabase.open(dbFile);
+        if (compressed) {
+            long start = System.nanoTime();
+            int total = 0;
+            int count;
+            while ((count = db.recompressBodies(1000)) >= 0) {
+                total += count;
+            }
+            db.compactIfFragmented();
+            System.out.printf("Recompressed %d bodies in %d ms%n", total, (System.nanoTime() - start) / 1_000_000);
+        }
+        // 关闭时合并 WAL，文件大小才准确
+        db.close();
+        System.out.printf("Database size: %d KB%n", dbFile.length() / 1024);
+        db = ChatDatabase.open(dbFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+        BenchmarkData.delete(dbFile);
+    }
+
+    @Benchmark
+    public List<ChatDatabase.ChatMessage> loadPage() {
+        return db.getChatHistoryBefore(BenchmarkData.SELF_JID, contactJid, Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void loadAndRender(Blackhole blackhole) {
+        for (ChatDatabase.ChatMessage message : loadPage()) {
+            blackhole.consume(message.getMessage());
+        }
+    }
+
+    private void populate() throws Exception {
+        Random random = new Random(42);
+        String sql = "INSERT INTO messages (sender_id, receiver_id, message, is_local, timestamp, is_read) VALUES (?, ?, ?, 0, ?, 1)";
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath())) {
+            Map<String, Integer> ids = BenchmarkData.registerJids(connection);
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                long timestamp = System.currentTimeMillis() - rows * 1000L;
+                for (int i = 0; i < rows; i++) {
+                    pstmt.setInt(1, ids.get(BenchmarkData.contactJid(i % BenchmarkData.CONTACTS)));
+                    pstmt.setInt(2, ids.get(BenchmarkData.SELF_JID));
+                    pstmt.setString(3, botReport(random, bodyBytes));
+                    pstmt.setLong(4, timestamp + i * 1000L);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                connection.commit();
+            }
+        }
+    }
+
+    // 类似监控机器人推送的 JSON 日志：字段名重复，数值和 id 随机
+    private static String botReport(Random random, int bytes) {
+        StringBuilder sb = new StringBuilder(bytes + 200);
+        sb.append("{\"source\":\"ci-bot\",\"events\":[");
+        String[] levels = {"INFO", "WARN", "ERROR", "DEBUG"};
+        while (sb.length() < bytes) {
+            sb.append("{\"ts\":").append(1_700_000_000_000L + random.nextInt(1_000_000))
+                .append(",\"level\":\"").append(levels[random.nextInt(levels.length)])
+                .append("\",\"job\":\"build-").append(random.nextInt(5000))
+                .append("\",\"host\":\"runner-").append(random.nextInt(64))
+                .append(".ci.internal\",\"message\":\"step ").append(random.nextInt(40))
+                .append(" finished with status ").append(random.nextInt(3))
+                .append(" after ").append(random.nextInt(100_000)).append(" ms\"},");
+        }
+        sb.setLength(sb.length() - 1);
+        return sb.append("]}").toString();
+    }
+}
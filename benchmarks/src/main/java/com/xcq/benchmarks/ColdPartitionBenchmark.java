@@ -0,0 +1,130 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 按年份把旧消息移到归档库前后的主数据库大小、VACUUM 耗时和翻页延迟。
+// 消息均匀分布在最近 years 年内且都已读，partitioned=true 时把一年前的消息全部移出；大小和 VACUUM 耗时在准备阶段输出。
+// recentPage 翻最新的一页，只查主数据库；oldPage 翻两年前的一页，需要查询归档库
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColdPartitionBenchmark {
+    private static final int PAGE_SIZE = 50;
+    private static final int HOT_MONTHS = 12;
+
+    @Param({"false", "true"})
+    public boolean partitioned;
+
+    @Param({"500000"})
+    public int rows;
+
+    @Param({"4"})
+    public int years;
+
+    private File dbFile;
+    private ChatDatabase db;
+    private final String contactJid = BenchmarkData.contactJid(0);
+    private long oldTimestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        ChatDatabase.open(dbFile).close();
+        populate();
+        if (partitioned) {
+            db = ChatDatabase.open(dbFile);
+            long start = System.nanoTime();
+            long cutoff = ZonedDateTime.now().minusMonths(HOT_MONTHS).toInstant().toEpochMilli();
+            int total = 0;
+            int count;
+            while ((count = db.archiveOldMessages(cutoff, 5000)) >= 0) {
+                total += count;
+            }
+            db.compactIfFragmented();
+            System.out.printf("Moved %d messages to archives in %d ms%n", total, (System.nanoTime() - start) / 1_000_000);
+            db.close();
+        }
+        System.out.printf("Hot database size: %d KB%n", dbFile.length() / 1024);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+             Statement statement = connection.createStatement()) {
+            long start = System.nanoTime();
+            statement.execute("VACUUM");
+            System.out.printf("Hot database VACUUM: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        }
+        db = ChatDatabase.open(dbFile);
+        oldTimestamp = ZonedDateTime.now().minusYears(2).toInstant().toEpochMilli();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+        BenchmarkData.delete(dbFile);
+    }
+
+    @Benchmark
+    public List<ChatDatabase.ChatMessage> recentPage() {
+        return db.getChatHistoryBefore(BenchmarkData.SELF_JID, contactJid, Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<ChatDatabase.ChatMessage> oldPage() {
+        return db.getChatHistoryBefore(BenchmarkData.SELF_JID, contactJid, oldTimestamp, Long.MAX_VALUE, PAGE_SIZE);
+    }
+
+    private void populate() throws Exception {
+        Random random = new Random(42);
+        String sql = "INSERT INTO messages (sender_id, receiver_id, message, is_local, timestamp, is_read) VALUES (?, ?, ?, ?, ?, 1)";
+        long now = System.currentTimeMillis();
+        long step = (now - ZonedDateTime.now().minusYears(years).toInstant().toEpochMilli()) / rows;
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath())) {
+            Map<String, Integer> ids = BenchmarkData.registerJids(connection);
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (int i = 0; i < rows; i++) {
+                    int contact = ids.get(BenchmarkData.contactJid(i % BenchmarkData.CONTACTS));
+                    int self = ids.get(BenchmarkData.SELF_JID);
+                    boolean local = random.nextBoolean();
+                    pstmt.setInt(1, local ? self : contact);
+                    pstmt.setInt(2, local ? contact : self);
+                    pstmt.setString(3, BenchmarkData.message(random));
+                    pstmt.setBoolean(4, local);
+                    pstmt.setLong(5, now - (long) (rows - i) * step);
+                    pstmt.addBatch();
+                    if ((i + 1) % 10_000 == 0) {
+                        pstmt.executeBatch();
+                        connection.commit();
+                    }
+                }
+                pstmt.executeBatch();
+                connection.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.xcq.benchmarks;
+
+import com.xcq.ui.model.ContactTreeModel;
+import org.jivesoftware.smack.roster.RosterEntry;
+import org.jivesoftware.smack.roster.RosterFixtures;
+import org.jivesoftware.smack.roster.RosterGroup;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.jid.impl.JidCreate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 联系人树在大量联系人时的重建耗时，联系人数据离线构造，不需要连接服务器
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ContactTreeModelBenchmark {
+    private static final int GROUPS = 50;
+    // 不属于任何分组的联系人比例
+    private static final int UNGROUPED_PERCENT = 10;
+
+    @Param({"10000"})
+    public int contacts;
+
+    private final List<RosterGroup> groups = new ArrayList<>();
+    private final List<RosterEntry> ungrouped = new ArrayList<>();
+    private ContactTreeModel model;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        XMPPTCPConnection connection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+            .setXmppDomain("bench.xcq")
+            .build());
+        for (int i = 0; i < GROUPS; i++) {
+            groups.add(RosterFixtures.createGroup("分组" + i, connection));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < contacts; i++) {
+            RosterEntry entry = RosterFixtures.createEntry(
+                JidCreate.bareFrom("user" + i + "@bench.xcq"), "联系人" + random.nextInt(contacts), connection);
+            if (random.nextInt(100) < UNGROUPED_PERCENT) {
+                ungrouped.add(entry);
+            } else {
+                RosterFixtures.addToGroup(groups.get(random.nextInt(GROUPS)), entry);
+            }
+        }
+        model = new ContactTreeModel();
+    }
+
+    @Benchmark
+    public ContactTreeModel updateContacts() {
+        model.updateContacts(groups, ungrouped);
+        return model;
+    }
+
+    @Benchmark
+    public ContactTreeModel updateFilteredContacts() {
+        model.updateFilteredContacts(groups, ungrouped, "联系人1");
+        return model;
+    }
+}
@@ -0,0 +1,128 @@
+package com.xcq.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import com.xcq.util.ExecutorProvider;
+import com.xcq.util.ImageLoader;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 同时加载 loads 张聊天图片的总耗时、每张图片的平均等待时间和加载期间新增的平台线程数。
+// 图片来自本机的 HTTP 服务，每个请求延迟 latencyMs 毫秒模拟网络往返；服务端线程在测量前全部启动，不计入线程数。
+// 辅助计数在各次测量间累加，因此只测量一次。executor=virtual 需要在 JDK 21 及以上运行，更低版本的 JDK 上与 platform 相同
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 1)
+@Fork(1)
+public class ImageLoadBenchmark {
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    @Param({"500"})
+    public int loads;
+
+    @Param({"100"})
+    public int latencyMs;
+
+    private HttpServer server;
+    private ThreadPoolExecutor serverPool;
+    private String baseUrl;
+    private int baselineThreads;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Load {
+        public long meanLatencyMs;
+        public long peakThreads;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // 每组参数在单独的 JVM 中运行，首次使用 ExecutorProvider 之前设置
+        System.setProperty(ExecutorProvider.PROPERTY, executor);
+
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        byte[] body = png.toByteArray();
+
+        serverPool = new ThreadPoolExecutor(loads, loads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+        serverPool.prestartAllCoreThreads();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), loads);
+        server.setExecutor(serverPool);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/image/";
+        // 预热后仍存活的加载线程也计入
+        baselineThreads = threads.getThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverPool.shutdownNow();
+    }
+
+    @Benchmark
+    public void loadImages(Load load) {
+        threads.resetPeakThreadCount();
+        AtomicLong totalLatency = new AtomicLong();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[loads];
+        for (int i = 0; i < loads; i++) {
+            long submitted = System.nanoTime();
+            futures[i] = ImageLoader.loadThumbnail(baseUrl + i + ".png", 150, 150)
+                .thenAccept(thumbnail -> {
+                    if (thumbnail == null) {
+                        throw new IllegalStateException("Image not decoded");
+                    }
+                    totalLatency.addAndGet(System.nanoTime() - submitted);
+                });
+        }
+        CompletableFuture.allOf(futures).join();
+        load.meanLatencyMs = totalLatency.get() / loads / 1_000_000;
+        load.peakThreads = threads.getPeakThreadCount() - baselineThreads;
+    }
+}
@@ -0,0 +1,70 @@
+package com.xcq.benchmarks;
+
+import com.xcq.core.Context;
+import com.xcq.xmpp.XMPPClient;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// XMPPClient 处理收到的消息的开销：去除空白、插件管道、保存到数据库、通知监听器。
+// 消息由合成的 Message 节构造；数据库使用工作目录下的 data/chat.db
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncomingDispatchBenchmark {
+    private static final int LISTENERS = 3;
+
+    private XMPPClient client;
+    private EntityBareJid[] senders;
+    private Message[] messages;
+    private final AtomicLong delivered = new AtomicLong();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        client = new Context().getXmppClient();
+        for (int i = 0; i < LISTENERS; i++) {
+            client.addMessageListener((from, message) -> delivered.incrementAndGet());
+        }
+        Random random = new Random(3);
+        senders = new EntityBareJid[BenchmarkData.CONTACTS];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = JidCreate.entityBareFrom(BenchmarkData.contactJid(i));
+        }
+        messages = new Message[1024];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = StanzaBuilder.buildMessage()
+                .from(senders[i % senders.length])
+                .to(BenchmarkData.SELF_JID)
+                .ofType(Message.Type.chat)
+                .setBody(BenchmarkData.message(random) + "  \n")
+                .build();
+        }
+    }
+
+    @Benchmark
+    public long dispatch() {
+        int i = next++ & (messages.length - 1);
+        client.handleIncomingMessage(senders[i % senders.length], messages[i]);
+        return delivered.get();
+    }
+}
@@ -0,0 +1,55 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+// 把 JID 以字符串保存的旧版数据库迁移为 jids 表加整数 id 的耗时（包括迁移后的 VACUUM）。
+// 迁移前后的数据库文件大小在每次测量后输出
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class JidMigrationBenchmark {
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private File dbFile;
+    private long legacyBytes;
+    private ChatDatabase db;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        BenchmarkData.createLegacy(dbFile, rows);
+        legacyBytes = dbFile.length();
+    }
+
+    @Benchmark
+    public void migrate() {
+        db = ChatDatabase.open(dbFile);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        db.close();
+        System.out.printf("Database size: %d KB before, %d KB after%n", legacyBytes / 1024, dbFile.length() / 1024);
+        BenchmarkData.delete(dbFile);
+    }
+}
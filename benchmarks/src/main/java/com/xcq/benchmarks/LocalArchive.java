@@ -0,0 +1,59 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+import com.xcq.xmpp.archive.ArchivePage;
+import com.xcq.xmpp.archive.MessageArchive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// 内存中的替身存档，存档 id 为消息序号，行为与服务器的 RSM 分页一致
+final class LocalArchive implements MessageArchive {
+    private final List<ArchivedMessage> messages;
+
+    LocalArchive(int size, long startTimestamp) {
+        Random random = new Random(7);
+        messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String contact = BenchmarkData.contactJid(i % BenchmarkData.CONTACTS);
+            boolean local = random.nextBoolean();
+            messages.add(new ArchivedMessage(id(i), "origin-" + i, local ? BenchmarkData.SELF_JID : contact,
+                local ? contact : BenchmarkData.SELF_JID, BenchmarkData.message(random), startTimestamp + i * 1000L, local));
+        }
+    }
+
+    List<ArchivedMessage> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public ArchivePage pageAfter(String afterId, int pageSize) {
+        int from = afterId == null ? Math.max(0, messages.size() - pageSize) : Integer.parseInt(afterId) + 1;
+        int to = Math.min(messages.size(), from + pageSize);
+        List<ArchivedMessage> page = new ArrayList<>(messages.subList(Math.min(from, to), to));
+        String first = page.isEmpty() ? null : page.get(0).getStanzaId();
+        String last = page.isEmpty() ? null : page.get(page.size() - 1).getStanzaId();
+        return new ArchivePage(page, first, last, afterId == null || to >= messages.size());
+    }
+
+    @Override
+    public ArchivePage pageBefore(String withJid, String beforeId, long beforeTimestamp, int pageSize) {
+        List<ArchivedMessage> page = new ArrayList<>();
+        int i = beforeId == null ? messages.size() - 1 : Integer.parseInt(beforeId) - 1;
+        for (; i >= 0 && page.size() < pageSize; i--) {
+            ArchivedMessage message = messages.get(i);
+            boolean with = withJid.equals(message.getSenderJid()) || withJid.equals(message.getReceiverJid());
+            if (with && (beforeId != null || message.getTimestamp() < beforeTimestamp)) {
+                page.add(0, message);
+            }
+        }
+        String first = page.isEmpty() ? null : page.get(0).getStanzaId();
+        String last = page.isEmpty() ? null : page.get(page.size() - 1).getStanzaId();
+        return new ArchivePage(page, first, last, i < 0);
+    }
+
+    private static String id(int index) {
+        return Integer.toString(index);
+    }
+}
@@ -0,0 +1,63 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 历史记录和未读计数查询的延迟，rows 为表中的总消息数，分布在 BenchmarkData.CONTACTS 个会话中
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageQueryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private File dbFile;
+    private ChatDatabase db;
+    private final String contactJid = BenchmarkData.contactJid(0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        db = BenchmarkData.createPopulated(dbFile, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+        BenchmarkData.delete(dbFile);
+    }
+
+    @Benchmark
+    public List<ChatDatabase.ChatMessage> getChatHistory() {
+        return db.getChatHistory(BenchmarkData.SELF_JID, contactJid);
+    }
+
+    @Benchmark
+    public int getUnreadMessageCount() {
+        return db.getUnreadMessageCount(BenchmarkData.SELF_JID);
+    }
+
+    @Benchmark
+    public int getUnreadMessageCountFromContact() {
+        return db.getUnreadMessageCountFromContact(BenchmarkData.SELF_JID, contactJid);
+    }
+}
@@ -0,0 +1,103 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.DatabaseBackup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 在线备份进行时 saveMessage 和翻页的延迟分布。backup=true 时后台线程不停地备份（每份完成后删除旧的），
+// 与 backup=false 比较高百分位的差别；每份备份的耗时在结束时输出
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OnlineBackupBenchmark {
+    @Param({"false", "true"})
+    public boolean backup;
+
+    @Param({"200000"})
+    public int rows;
+
+    private File dbFile;
+    private ChatDatabase db;
+    private String[] bodies;
+    private int next;
+    private Thread backupThread;
+    private volatile boolean running;
+    private int backups;
+    private long backupNanos;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        db = BenchmarkData.createPopulated(dbFile, rows);
+        Random random = new Random(1);
+        bodies = new String[1024];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = BenchmarkData.message(random);
+        }
+        if (backup) {
+            DatabaseBackup service = new DatabaseBackup(DatabaseBackup.defaultDirectory(db), 1);
+            running = true;
+            backupThread = new Thread(() -> {
+                while (running) {
+                    long start = System.nanoTime();
+                    try {
+                        service.backup(db);
+                        // 目录名精确到秒
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    backups++;
+                    backupNanos += System.nanoTime() - start - 1_000_000_000L;
+                }
+            }, "bench-backup");
+            backupThread.setPriority(Thread.MIN_PRIORITY);
+            backupThread.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (backupThread != null) {
+            running = false;
+            backupThread.join();
+            System.out.printf("%d backups, %d ms each%n", backups, backups == 0 ? 0 : backupNanos / backups / 1_000_000);
+        }
+        db.close();
+        BenchmarkData.delete(dbFile);
+    }
+
+    @Benchmark
+    public void saveMessage() {
+        int i = next++;
+        db.saveMessage(BenchmarkData.contactJid(i % BenchmarkData.CONTACTS), BenchmarkData.SELF_JID,
+            bodies[i & (bodies.length - 1)], false);
+    }
+
+    @Benchmark
+    public List<ChatDatabase.ChatMessage> loadPage() {
+        return db.getChatHistoryBefore(BenchmarkData.SELF_JID, BenchmarkData.contactJid(0), Long.MAX_VALUE, Long.MAX_VALUE, 50);
+    }
+}
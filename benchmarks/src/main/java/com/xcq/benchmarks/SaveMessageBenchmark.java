@@ -0,0 +1,64 @@
+package com.xcq.benchmarks;
+
+import com.xcq.db.ChatDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// ChatDatabase.saveMessage 的吞吐量，每条消息单独提交
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveMessageBenchmark {
+    private File dbFile;
+    private ChatDatabase db;
+    private String[] bodies;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = BenchmarkData.createTempDatabaseFile();
+        db = ChatDatabase.open(dbFile);
+        Random random = new Random(1);
+        bodies = new String[1024];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = BenchmarkData.message(random);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+        BenchmarkData.delete(dbFile);
+    }
+
+    @Benchmark
+    public void saveIncoming() {
+        int i = next++;
+        db.saveMessage(BenchmarkData.contactJid(i % BenchmarkData.CONTACTS), BenchmarkData.SELF_JID,
+            bodies[i & (bodies.length - 1)], false);
+    }
+
+    @Benchmark
+    public void saveOutgoing() {
+        int i = next++;
+        db.saveMessage(BenchmarkData.SELF_JID, BenchmarkData.contactJid(i % BenchmarkData.CONTACTS),
+            bodies[i & (bodies.length - 1)], true);
+    }
+}
@@ -0,0 +1,22 @@
+package org.jivesoftware.smack.roster;
+
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jxmpp.jid.BareJid;
+
+// RosterEntry 和 RosterGroup 的构造方法是包级私有的，基准测试通过同包的这个类构造离线的联系人数据
+public final class RosterFixtures {
+    private RosterFixtures() {}
+
+    public static RosterGroup createGroup(String name, XMPPConnection connection) {
+        return new RosterGroup(name, connection);
+    }
+
+    public static RosterEntry createEntry(BareJid jid, String name, XMPPConnection connection) {
+        return new RosterEntry(new RosterPacket.Item(jid, name), Roster.getInstanceFor(connection), connection);
+    }
+
+    public static void addToGroup(RosterGroup group, RosterEntry entry) {
+        group.addEntryLocal(entry);
+    }
+}
@@ -1,24 +1,37 @@
 package com.xcq;
 
+import com.xcq.core.Application;
 import com.xcq.core.ApplicationContext;
+import com.xcq.core.StartupTimeline;
 import com.xcq.ui.LoginWindow;
 
 import javax.swing.*;
 
 public class Main {
     public static void main(String[] args) {
+        StartupTimeline timeline = StartupTimeline.getInstance();
+
         // 设置系统外观
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        timeline.record("look-and-feel", () -> {
+            try {
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+
+        // 在主线程中创建上下文，服务本身都是延迟初始化的
+        ApplicationContext context = timeline.record("context", ApplicationContext::new);
+        Application application = new Application(context);
+
+        // 数据库、主题、插件等在后台并行初始化
+        application.start();
 
         // 在 EDT 中创建并显示窗口
         SwingUtilities.invokeLater(() -> {
-            ApplicationContext context = new ApplicationContext();
-            LoginWindow loginWindow = new LoginWindow(context);
+            LoginWindow loginWindow = timeline.record("login-window", () -> new LoginWindow(context));
             loginWindow.setVisible(true);
+            timeline.mark(StartupTimeline.LOGIN_WINDOW_SHOWN);
         });
     }
-} 
\ No newline at end of file
+} 
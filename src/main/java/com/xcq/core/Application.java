@@ -1,71 +1,146 @@
 package com.xcq.core;
 
-import com.xcq.plugin.PluginManager;
-import com.xcq.theme.ThemeManager;
+import com.xcq.db.ChatDatabase;
+import com.xcq.metrics.EdtWatchdog;
+import com.xcq.metrics.MetricsHttpServer;
+import com.xcq.util.SoundService;
 import com.xcq.xmpp.XMPPClient;
-import com.xcq.ui.MainWindow;
 import org.jxmpp.stringprep.XmppStringprepException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.JFrame;
-import java.awt.Point;
-import java.awt.Dimension;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Application {
     private static final Logger logger = LoggerFactory.getLogger(Application.class);
     private final ApplicationContext context;
-    private final PluginManager pluginManager;
-    private final ThemeManager themeManager;
     private final XMPPClient xmppClient;
-    private MainWindow mainWindow;
+    private EdtWatchdog edtWatchdog;
+    private MetricsHttpServer metricsServer;
+    private volatile ChatDatabase database;
+    private final AtomicBoolean stopped = new AtomicBoolean();
 
     public Application(ApplicationContext context) {
         this.context = context;
-        this.pluginManager = context.getPluginManager();
-        this.themeManager = context.getThemeManager();
         this.xmppClient = context.getXmppClient();
         context.setApplication(this);
     }
 
-    public void start() {
-        try {
-            logger.info("Starting application...");
-            
+    // 在后台线程并行执行互不依赖的初始化工作，不阻塞 EDT 和登录窗口的显示
+    public CompletableFuture<Void> start() {
+        logger.info("Starting application...");
+        // 窗口关闭（EXIT_ON_CLOSE）和退出菜单都经过 System.exit，在关闭钩子中释放资源。
+        // 钩子不在 EDT 中，不访问 Swing 组件；窗口状态由主窗口关闭时保存，配置由 Configuration 自己的钩子写盘
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "app-stop"));
+        StartupTimeline timeline = StartupTimeline.getInstance();
+        int threads = Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService startupExecutor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "startup-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        CompletableFuture<Void> startup = CompletableFuture.allOf(
+            // 打开数据库、建表
+            runPhase(startupExecutor, "database", this::openDatabase),
             // 加载主题
-            logger.info("Loading themes...");
-            themeManager.loadThemes();
-            
+            runPhase(startupExecutor, "themes", () -> context.getThemeManager().loadThemes()),
             // 加载插件
-            logger.info("Loading plugins...");
-            pluginManager.loadPlugins();
-            
-            logger.info("Application started successfully");
-        } catch (Exception e) {
-            logger.error("Failed to start application", e);
-            throw new RuntimeException("Failed to start application", e);
+            runPhase(startupExecutor, "plugins", () -> context.getPluginManager().loadPlugins()),
+            // 预先解码提示音
+            runPhase(startupExecutor, "sounds", () -> SoundService.getInstance().preload(SoundService.MESSAGE)),
+            // 运行时指标
+            runPhase(startupExecutor, "metrics", this::startMetrics)
+        );
+
+        return startup.whenComplete((ignored, e) -> {
+            startupExecutor.shutdown();
+            if (e != null) {
+                logger.error("Failed to start application", e);
+            } else {
+                logger.info("Application started successfully");
+            }
+            timeline.logSummary();
+        });
+    }
+
+    private CompletableFuture<Void> runPhase(ExecutorService executor, String name, Runnable task) {
+        return CompletableFuture.runAsync(() -> StartupTimeline.getInstance().record(name, task), executor)
+            .exceptionally(e -> {
+                // 单个阶段失败不影响其他阶段和登录
+                logger.error("Startup phase '{}' failed", name, e);
+                return null;
+            });
+    }
+
+    private void openDatabase() {
+        database = ChatDatabase.getInstance();
+        context.startMaintenance();
+    }
+
+    private void startMetrics() {
+        Configuration config = context.getConfiguration();
+        edtWatchdog = EdtWatchdog.start(config.get(ConfigKeys.EDT_WATCHDOG_THRESHOLD_MS),
+            config.get(ConfigKeys.EDT_WATCHDOG_OVERLAY));
+        int port = config.get(ConfigKeys.METRICS_HTTP_PORT);
+        if (port > 0) {
+            try {
+                metricsServer = MetricsHttpServer.start(port);
+            } catch (IOException e) {
+                logger.warn("Failed to start metrics endpoint on port {}", port, e);
+            }
         }
     }
 
+    // 只执行一次；由关闭钩子调用时不在 EDT 中
     public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
         try {
             logger.info("Stopping application...");
             
-            // 保存窗口状态
-            logger.info("Saving window state...");
-            saveWindowState();
-            
-            // 保存配置
-            logger.info("Saving configuration...");
-            context.getConfiguration().saveSettings();
-            
             // 卸载插件
             logger.info("Unloading plugins...");
-            pluginManager.unloadPlugins();
+            context.getPluginManager().unloadPlugins();
             
+            // 停止监视主题目录
+            context.closeThemeManager();
+
+            // 停止指标采集
+            if (edtWatchdog != null) {
+                edtWatchdog.stop();
+            }
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+
+            // 释放音频线路
+            SoundService.getInstance().shutdown();
+
+            // 断开同时登录的其他账号
+            context.closeAccounts();
+
+            // 停止后台服务线程
+            context.getAsyncService().shutdown();
+            context.closeVCardCache();
+            context.closeArchiveSync();
+            context.stopMaintenance();
+
             // 断开XMPP连接
             logger.info("Disconnecting from XMPP server...");
             xmppClient.disconnect();
+
+            // 最后关闭数据库，合并 WAL
+            if (database != null) {
+                database.close();
+            }
             
             logger.info("Application stopped successfully");
         } catch (Exception e) {
@@ -76,22 +151,4 @@ public class Application {
     public ApplicationContext getContext() {
         return context;
     }
-
-    public void setMainWindow(MainWindow window) {
-        this.mainWindow = window;
-    }
-
-    public void saveWindowState() {
-        if (mainWindow != null) {
-            Point location = mainWindow.getLocation();
-            Dimension size = mainWindow.getSize();
-            boolean isMaximized = (mainWindow.getExtendedState() & JFrame.MAXIMIZED_BOTH) == JFrame.MAXIMIZED_BOTH;
-            
-            context.getConfiguration().set("window.x", location.x);
-            context.getConfiguration().set("window.y", location.y);
-            context.getConfiguration().set("window.width", size.width);
-            context.getConfiguration().set("window.height", size.height);
-            context.getConfiguration().set("window.maximized", isMaximized);
-        }
-    }
 } 
\ No newline at end of file
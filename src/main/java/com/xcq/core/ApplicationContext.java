@@ -1,26 +1,105 @@
 package com.xcq.core;
 
+import com.xcq.db.ChatDatabase;
 import com.xcq.plugin.PluginManager;
-import com.xcq.theme.ThemeManager;
+import com.xcq.util.ExecutorProvider;
 import com.xcq.xmpp.XMPPClient;
-import javax.swing.JFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
 import com.xcq.ui.ContactWindow;
 
 public class ApplicationContext extends Context {
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationContext.class);
     private final Map<String, Object> context = new HashMap<>();
-    private final PluginManager pluginManager;
+    private final Lazy<PluginManager> pluginManager;
     private Application application;
-    private XMPPClient xmppClient;
     private ContactWindow contactWindow;
+    // 主账号的上下文中记录同时登录的其他账号
+    private final List<ApplicationContext> accounts = new CopyOnWriteArrayList<>();
+    // 关闭其他账号时断开连接、关闭数据库，不在 EDT 中执行
+    private final Lazy<ExecutorService> closeExecutor;
 
     public ApplicationContext() {
         super();
-        this.pluginManager = new PluginManager(this);
-        this.xmppClient = new XMPPClient(this);
+        // XMPPClient 由父类创建，这里不再重复创建
+        this.pluginManager = Lazy.of(() -> new PluginManager(this));
+        this.closeExecutor = Lazy.of(() -> ExecutorProvider.getInstance().newBlockingExecutor("account-close", 2));
+    }
+
+    private ApplicationContext(ApplicationContext primary) {
+        super(primary);
+        // 插件只加载一次，事件来自主账号的上下文
+        this.pluginManager = primary.pluginManager;
+        this.application = primary.application;
+        this.closeExecutor = primary.closeExecutor;
+    }
+
+    public ApplicationContext getPrimary() {
+        return shared != null ? (ApplicationContext) shared : this;
+    }
+
+    // 为再登录一个账号创建上下文，超过 accounts.max 时抛出 IllegalStateException
+    public ApplicationContext openAccount() {
+        ApplicationContext primary = getPrimary();
+        int max = config.get(ConfigKeys.ACCOUNTS_MAX);
+        if (primary.accounts.size() + 1 >= max) {
+            throw new IllegalStateException("最多同时登录 " + max + " 个账号");
+        }
+        ApplicationContext account = new ApplicationContext(primary);
+        primary.accounts.add(account);
+        return account;
+    }
+
+    // 断开其他账号的连接并关闭它的数据库。账号立即从列表中移除，网络和数据库的关闭在后台执行，可以在 EDT 中调用
+    public CompletableFuture<Void> closeAccount(ApplicationContext account) {
+        if (account.isPrimary() || !getPrimary().accounts.remove(account)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> teardown(account), closeExecutor.get())
+            .exceptionally(e -> {
+                logger.error("Error while closing account {}", account.getXmppClient().getAccountJid(), e);
+                return null;
+            });
+    }
+
+    private void teardown(ApplicationContext account) {
+        account.getXmppClient().disconnect();
+        account.getAsyncService().shutdown();
+        account.closeVCardCache();
+        account.stopMaintenance();
+        String jid = account.getXmppClient().getAccountJid();
+        ChatDatabase db = jid != null ? account.getDatabase() : null;
+        if (db != null) {
+            db.close();
+        }
+        logger.info("Closed account {}, {} accounts open", jid, getPrimary().accounts.size() + 1);
+    }
+
+    // 程序退出时调用，等待全部关闭完成
+    public void closeAccounts() {
+        List<CompletableFuture<Void>> closing = new ArrayList<>();
+        for (ApplicationContext account : getPrimary().accounts) {
+            closing.add(closeAccount(account));
+        }
+        CompletableFuture.allOf(closing.toArray(new CompletableFuture<?>[0])).join();
+        if (closeExecutor.isInitialized()) {
+            closeExecutor.get().shutdown();
+        }
+    }
+
+    // 不包括主账号
+    public List<ApplicationContext> getAccounts() {
+        return Collections.unmodifiableList(getPrimary().accounts);
     }
 
     public void setApplication(Application application) {
@@ -40,11 +119,7 @@ public class ApplicationContext extends Context {
     }
 
     public PluginManager getPluginManager() {
-        return pluginManager;
-    }
-
-    public ThemeManager getThemeManager() {
-        return themeManager;
+        return pluginManager.get();
     }
 
     public XMPPClient getXmppClient() {
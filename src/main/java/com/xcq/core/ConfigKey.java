@@ -0,0 +1,63 @@
+package com.xcq.core;
+
+import java.util.function.Function;
+
+// 带类型的配置项，原始值只在配置快照生成后解析一次
+public final class ConfigKey<T> {
+    private final String name;
+    private final T defaultValue;
+    private final Function<Object, T> parser;
+
+    private ConfigKey(String name, T defaultValue, Function<Object, T> parser) {
+        this.name = name;
+        this.defaultValue = defaultValue;
+        this.parser = parser;
+    }
+
+    public static ConfigKey<String> ofString(String name, String defaultValue) {
+        return new ConfigKey<>(name, defaultValue, Object::toString);
+    }
+
+    public static ConfigKey<Integer> ofInt(String name, int defaultValue) {
+        return new ConfigKey<>(name, defaultValue, value -> value instanceof Number
+            ? ((Number) value).intValue()
+            : Integer.valueOf(value.toString().trim()));
+    }
+
+    public static ConfigKey<Double> ofDouble(String name, double defaultValue) {
+        return new ConfigKey<>(name, defaultValue, value -> value instanceof Number
+            ? ((Number) value).doubleValue()
+            : Double.valueOf(value.toString().trim()));
+    }
+
+    public static ConfigKey<Boolean> ofBoolean(String name, boolean defaultValue) {
+        return new ConfigKey<>(name, defaultValue, value -> value instanceof Boolean
+            ? (Boolean) value
+            : Boolean.valueOf(value.toString().trim()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public T getDefaultValue() {
+        return defaultValue;
+    }
+
+    // 将原始值转换为目标类型，缺失或格式错误时返回默认值
+    T parse(Object raw) {
+        if (raw == null) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(raw);
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
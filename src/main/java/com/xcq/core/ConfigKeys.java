@@ -0,0 +1,67 @@
+package com.xcq.core;
+
+// 应用中使用的配置项
+public final class ConfigKeys {
+    // 登录
+    public static final ConfigKey<String> XMPP_SERVER = ConfigKey.ofString("xmpp.server", "");
+    public static final ConfigKey<Integer> XMPP_PORT = ConfigKey.ofInt("xmpp.port", 5222);
+    public static final ConfigKey<String> XMPP_USERNAME = ConfigKey.ofString("xmpp.username", "");
+    public static final ConfigKey<String> XMPP_PASSWORD = ConfigKey.ofString("xmpp.password", "");
+    public static final ConfigKey<Boolean> XMPP_REMEMBER_PASSWORD = ConfigKey.ofBoolean("xmpp.rememberPassword", false);
+    public static final ConfigKey<Boolean> XMPP_TLS = ConfigKey.ofBoolean("xmpp.tls", true);
+    public static final ConfigKey<String> LOGIN_USERNAME = ConfigKey.ofString("login.username", "");
+    public static final ConfigKey<Boolean> LOGIN_REMEMBER = ConfigKey.ofBoolean("login.remember", false);
+
+    // 窗口状态
+    public static final ConfigKey<Integer> WINDOW_X = ConfigKey.ofInt("window.x", 0);
+    public static final ConfigKey<Integer> WINDOW_Y = ConfigKey.ofInt("window.y", 0);
+    public static final ConfigKey<Integer> WINDOW_WIDTH = ConfigKey.ofInt("window.width", 800);
+    public static final ConfigKey<Integer> WINDOW_HEIGHT = ConfigKey.ofInt("window.height", 600);
+    public static final ConfigKey<Boolean> WINDOW_MAXIMIZED = ConfigKey.ofBoolean("window.maximized", false);
+
+    // 字体
+    public static final ConfigKey<String> FONT_FAMILY = ConfigKey.ofString("font.family", "微软雅黑");
+    public static final ConfigKey<Integer> FONT_SIZE = ConfigKey.ofInt("font.size", 14);
+    public static final ConfigKey<Boolean> FONT_BOLD = ConfigKey.ofBoolean("font.bold", false);
+
+    // 图片上传
+    public static final ConfigKey<Boolean> UPLOAD_IMAGE_ORIGINAL = ConfigKey.ofBoolean("upload.image.original", false);
+    public static final ConfigKey<Integer> UPLOAD_IMAGE_MAX_DIMENSION = ConfigKey.ofInt("upload.image.maxDimension", 1920);
+    public static final ConfigKey<Double> UPLOAD_IMAGE_QUALITY = ConfigKey.ofDouble("upload.image.quality", 0.85);
+
+    // 服务器消息存档同步，并发数为同时同步的账号数
+    public static final ConfigKey<Boolean> ARCHIVE_SYNC_ENABLED = ConfigKey.ofBoolean("archive.syncEnabled", true);
+    public static final ConfigKey<Integer> ARCHIVE_SYNC_CONCURRENCY = ConfigKey.ofInt("archive.syncConcurrency", 2);
+    public static final ConfigKey<Integer> ARCHIVE_PAGE_SIZE = ConfigKey.ofInt("archive.pageSize", 100);
+
+    // 离线消息和其他设备的消息副本批量写入，第一条消息到达后最多等待 windowMs 写入一批
+    public static final ConfigKey<Integer> MESSAGE_BATCH_SIZE = ConfigKey.ofInt("message.batchSize", 200);
+    public static final ConfigKey<Integer> MESSAGE_BATCH_WINDOW_MS = ConfigKey.ofInt("message.batchWindowMs", 300);
+    // 消息副本（XEP-0280），与手机等其他设备上的会话保持一致
+    public static final ConfigKey<Boolean> CARBONS_ENABLED = ConfigKey.ofBoolean("message.carbonsEnabled", true);
+
+    // 消息正文超过该字节数时压缩后存入数据库，0 为不压缩；旧消息由后台任务逐步压缩
+    public static final ConfigKey<Integer> DB_COMPRESS_THRESHOLD = ConfigKey.ofInt("db.compressThreshold", 1024);
+    // 超过该月数的已读消息移到按年份划分的归档库（data/chat-<年份>.db），0 为不移动
+    public static final ConfigKey<Integer> DB_HOT_MONTHS = ConfigKey.ofInt("db.hotMonths", 12);
+    // 在线备份到数据库目录下的 backups，间隔为 0 时不备份，保留最近 backupKeep 份
+    public static final ConfigKey<Integer> DB_BACKUP_INTERVAL_HOURS = ConfigKey.ofInt("db.backupIntervalHours", 24);
+    public static final ConfigKey<Integer> DB_BACKUP_KEEP = ConfigKey.ofInt("db.backupKeep", 7);
+
+    // 同时登录的账号数（包括主账号）
+    public static final ConfigKey<Integer> ACCOUNTS_MAX = ConfigKey.ofInt("accounts.max", 4);
+
+    // 联系人资料，头像缓存大小以 KB 计
+    public static final ConfigKey<Integer> VCARD_FETCH_CONCURRENCY = ConfigKey.ofInt("vcard.fetchConcurrency", 3);
+    public static final ConfigKey<Integer> AVATAR_CACHE_KB = ConfigKey.ofInt("vcard.avatarCacheKb", 4096);
+
+    // 插件
+    public static final ConfigKey<Integer> PLUGIN_INTERCEPTOR_BUDGET_MS = ConfigKey.ofInt("plugin.interceptor.budgetMs", 20);
+
+    // 监控，端口为 0 时不开启本机 HTTP 指标端点
+    public static final ConfigKey<Integer> METRICS_HTTP_PORT = ConfigKey.ofInt("metrics.httpPort", 0);
+    public static final ConfigKey<Integer> EDT_WATCHDOG_THRESHOLD_MS = ConfigKey.ofInt("edtWatchdog.thresholdMs", 500);
+    public static final ConfigKey<Boolean> EDT_WATCHDOG_OVERLAY = ConfigKey.ofBoolean("edtWatchdog.overlay", false);
+
+    private ConfigKeys() {}
+}
@@ -2,30 +2,68 @@ package com.xcq.core;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.ToNumberPolicy;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class Configuration {
     private static final Logger logger = LoggerFactory.getLogger(Configuration.class);
     private static final String CONFIG_FILE = "config.json";
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final String TEMPORARY_CONTACTS_KEY = "temporary_contacts";
+    // 最后一次修改后等待的静默时间，期间的多次修改合并为一次写盘
+    private static final long SAVE_DELAY_MS = 500;
+    // 整数按 Long 读入，避免写回时变成 5222.0
+    private static final Gson gson = new GsonBuilder()
+        .setPrettyPrinting()
+        .setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE)
+        .create();
     private static Configuration instance;
-    private Map<String, Object> settings;
-    private Set<String> temporaryContacts;
-    private boolean autoOpenChat = false;  // 默认不自动打开聊天窗口
+
+    // 当前配置快照，读取无锁；所有修改都在 synchronized 中复制后整体替换
+    private volatile Snapshot snapshot;
+    private volatile boolean autoOpenChat = false;  // 默认不自动打开聊天窗口
+    private final List<ConfigurationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService saveExecutor;
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> pendingSave;
+    private boolean dirty = false;
 
     private Configuration() {
-        settings = new HashMap<>();
-        temporaryContacts = new HashSet<>();
+        snapshot = new Snapshot(Collections.emptyMap(), Collections.emptySet(), null);
+        saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "config-writer");
+            t.setDaemon(true);
+            return t;
+        });
         loadSettings();
+        // 进程退出时写出尚未落盘的修改
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "config-flush"));
     }
 
     public static synchronized Configuration getInstance() {
@@ -38,41 +76,88 @@ public class Configuration {
     private void loadSettings() {
         File file = new File(CONFIG_FILE);
         if (file.exists()) {
-            try (FileReader reader = new FileReader(file)) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
                 Type type = new TypeToken<Map<String, Object>>(){}.getType();
                 Map<String, Object> loaded = gson.fromJson(reader, type);
                 if (loaded != null) {
-                    settings = loaded;
                     // 加载临时联系人列表
-                    Object tempContacts = settings.get("temporary_contacts");
-                    if (tempContacts instanceof java.util.Collection) {
-                        temporaryContacts = new HashSet<>((java.util.Collection<String>) tempContacts);
+                    Object tempContacts = loaded.remove(TEMPORARY_CONTACTS_KEY);
+                    Set<String> contacts = new HashSet<>();
+                    if (tempContacts instanceof Collection) {
+                        for (Object contact : (Collection<?>) tempContacts) {
+                            contacts.add(String.valueOf(contact));
+                        }
                     }
+                    snapshot = new Snapshot(loaded, contacts, null);
                 }
-            } catch (IOException e) {
+            } catch (IOException | RuntimeException e) {
                 logger.error("Error loading settings", e);
-                settings = new HashMap<>();
-                temporaryContacts = new HashSet<>();
             }
         }
     }
 
-    public void saveSettings() {
-        try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
+    // 标记配置已修改，由后台线程在静默期后统一写盘
+    public synchronized void saveSettings() {
+        dirty = true;
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+        }
+        pendingSave = saveExecutor.schedule(this::flush, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // 立即将未保存的修改写盘，关闭应用时调用
+    public void flush() {
+        synchronized (writeLock) {
+            Snapshot current;
+            synchronized (this) {
+                if (pendingSave != null) {
+                    pendingSave.cancel(false);
+                    pendingSave = null;
+                }
+                if (!dirty) {
+                    return;
+                }
+                current = snapshot;
+                dirty = false;
+            }
+
+            Map<String, Object> content = new LinkedHashMap<>(current.settings);
             // 保存临时联系人列表
-            settings.put("temporary_contacts", temporaryContacts);
-            gson.toJson(settings, writer);
-        } catch (IOException e) {
-            logger.error("Error saving settings", e);
+            content.put(TEMPORARY_CONTACTS_KEY, new ArrayList<>(current.temporaryContacts));
+            try {
+                writeAtomically(gson.toJson(content));
+                logger.debug("Settings saved to {}", CONFIG_FILE);
+            } catch (IOException e) {
+                logger.error("Error saving settings", e);
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
         }
     }
 
+    // 先写临时文件再原子替换，避免写到一半时崩溃导致配置文件损坏
+    private void writeAtomically(String json) throws IOException {
+        Path target = Paths.get(CONFIG_FILE).toAbsolutePath();
+        Path temp = target.resolveSibling(CONFIG_FILE + ".tmp");
+        Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public <T> T get(ConfigKey<T> key) {
+        return snapshot.get(key);
+    }
+
     public <T> T get(String key, T defaultValue) {
-        Object value = settings.get(key);
+        Object value = snapshot.settings.get(key);
         if (value == null) {
             return defaultValue;
         }
-        
+
         try {
             if (defaultValue instanceof Integer) {
                 if (value instanceof Number) {
@@ -96,43 +181,93 @@ public class Configuration {
         } catch (Exception e) {
             logger.error("Error converting value for key: " + key, e);
         }
-        
+
         return defaultValue;
     }
 
+    public <T> void set(ConfigKey<T> key, T value) {
+        set(key.getName(), value);
+    }
+
     public void set(String key, Object value) {
-        settings.put(key, value);
-        saveSettings();
+        Object oldValue;
+        synchronized (this) {
+            Snapshot current = snapshot;
+            oldValue = current.settings.get(key);
+            Map<String, Object> settings = new HashMap<>(current.settings);
+            settings.put(key, value);
+            snapshot = new Snapshot(settings, current.temporaryContacts, current.without(key));
+            saveSettings();
+        }
+        fireChanged(key, oldValue, value);
+    }
+
+    public void remove(ConfigKey<?> key) {
+        remove(key.getName());
     }
 
     public void remove(String key) {
-        settings.remove(key);
-        saveSettings();
+        Object oldValue;
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (!current.settings.containsKey(key)) {
+                return;
+            }
+            oldValue = current.settings.get(key);
+            Map<String, Object> settings = new HashMap<>(current.settings);
+            settings.remove(key);
+            snapshot = new Snapshot(settings, current.temporaryContacts, current.without(key));
+            saveSettings();
+        }
+        fireChanged(key, oldValue, null);
     }
 
     public void clear() {
-        settings.clear();
-        temporaryContacts.clear();
-        saveSettings();
+        synchronized (this) {
+            snapshot = new Snapshot(Collections.emptyMap(), Collections.emptySet(), null);
+            saveSettings();
+        }
+        fireChanged(null, null, null);
     }
 
     // 临时消息设置相关方法
     public void addTemporaryContact(String jid) {
-        temporaryContacts.add(jid);
-        saveSettings();
+        updateTemporaryContact(jid, true);
     }
 
     public void removeTemporaryContact(String jid) {
-        temporaryContacts.remove(jid);
-        saveSettings();
+        updateTemporaryContact(jid, false);
     }
 
+    private void updateTemporaryContact(String jid, boolean temporary) {
+        Set<String> oldContacts;
+        Set<String> newContacts;
+        synchronized (this) {
+            Snapshot current = snapshot;
+            oldContacts = current.temporaryContacts;
+            if (oldContacts.contains(jid) == temporary) {
+                return;
+            }
+            Set<String> contacts = new HashSet<>(oldContacts);
+            if (temporary) {
+                contacts.add(jid);
+            } else {
+                contacts.remove(jid);
+            }
+            snapshot = new Snapshot(current.settings, contacts, current.parsed);
+            newContacts = snapshot.temporaryContacts;
+            saveSettings();
+        }
+        fireChanged(TEMPORARY_CONTACTS_KEY, oldContacts, newContacts);
+    }
+
+    // 每条消息都会调用，直接读取不可变快照，无锁且不分配对象
     public boolean isTemporaryContact(String jid) {
-        return temporaryContacts.contains(jid);
+        return snapshot.temporaryContacts.contains(jid);
     }
 
     public Set<String> getTemporaryContacts() {
-        return new HashSet<>(temporaryContacts);
+        return snapshot.temporaryContacts;
     }
 
     public boolean isAutoOpenChat() {
@@ -142,4 +277,60 @@ public class Configuration {
     public void setAutoOpenChat(boolean autoOpenChat) {
         this.autoOpenChat = autoOpenChat;
     }
-} 
\ No newline at end of file
+
+    public void addListener(ConfigurationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConfigurationListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireChanged(String key, Object oldValue, Object newValue) {
+        for (ConfigurationListener listener : listeners) {
+            try {
+                listener.onConfigurationChanged(key, oldValue, newValue);
+            } catch (Exception e) {
+                logger.error("Configuration listener failed for key: {}", key, e);
+            }
+        }
+    }
+
+    // 不可变的配置快照，带类型的值在快照内首次读取时解析并缓存
+    private static final class Snapshot {
+        private static final Object NULL_VALUE = new Object();
+
+        final Map<String, Object> settings;
+        final Set<String> temporaryContacts;
+        final ConcurrentHashMap<ConfigKey<?>, Object> parsed;
+
+        Snapshot(Map<String, Object> settings, Set<String> temporaryContacts,
+                 ConcurrentHashMap<ConfigKey<?>, Object> parsed) {
+            this.settings = settings instanceof HashMap
+                ? Collections.unmodifiableMap(settings)
+                : Collections.unmodifiableMap(new HashMap<>(settings));
+            this.temporaryContacts = temporaryContacts instanceof HashSet
+                ? Collections.unmodifiableSet(temporaryContacts)
+                : Collections.unmodifiableSet(new HashSet<>(temporaryContacts));
+            this.parsed = parsed != null ? parsed : new ConcurrentHashMap<>();
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T get(ConfigKey<T> key) {
+            Object value = parsed.get(key);
+            if (value == null) {
+                T parsedValue = key.parse(settings.get(key.getName()));
+                value = parsedValue != null ? parsedValue : NULL_VALUE;
+                parsed.putIfAbsent(key, value);
+            }
+            return value == NULL_VALUE ? null : (T) value;
+        }
+
+        // 复制已解析的值，去掉发生变化的键
+        ConcurrentHashMap<ConfigKey<?>, Object> without(String name) {
+            ConcurrentHashMap<ConfigKey<?>, Object> copy = new ConcurrentHashMap<>(parsed);
+            copy.keySet().removeIf(key -> key.getName().equals(name));
+            return copy;
+        }
+    }
+}
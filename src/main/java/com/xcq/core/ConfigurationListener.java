@@ -0,0 +1,6 @@
+package com.xcq.core;
+
+public interface ConfigurationListener {
+    // 在修改配置的线程上回调，新快照已经生效
+    void onConfigurationChanged(String key, Object oldValue, Object newValue);
+}
@@ -1,6 +1,10 @@
 package com.xcq.core;
 
+import com.xcq.db.ChatDatabase;
+import com.xcq.service.AsyncService;
+import com.xcq.service.VCardCache;
 import com.xcq.xmpp.XMPPClient;
+import com.xcq.xmpp.archive.ArchiveSync;
 import com.xcq.theme.ThemeManager;
 import javax.swing.JFrame;
 
@@ -8,12 +12,65 @@ public class Context {
     protected Configuration config;
     protected XMPPClient xmppClient;
     protected JFrame mainWindow;
-    protected ThemeManager themeManager;
+    // 主题目录的扫描等工作推迟到第一次使用时
+    protected final Lazy<ThemeManager> themeManager;
+    protected final AsyncService asyncService;
+    protected final Lazy<VCardCache> vCardCache;
+    protected final Lazy<ArchiveSync> archiveSync;
+    // 本账号数据库的维护任务，数据库打开后才启动
+    private DatabaseMaintenance maintenance;
+    // 同时登录的其他账号共用主账号的服务；主账号为 null
+    protected final Context shared;
 
     public Context() {
+        this.shared = null;
         this.config = Configuration.getInstance();
         this.xmppClient = new XMPPClient(this);
-        this.themeManager = new ThemeManager();
+        this.themeManager = Lazy.of(ThemeManager::new);
+        this.asyncService = new AsyncService(xmppClient);
+        this.vCardCache = Lazy.of(() -> new VCardCache(xmppClient,
+            config.get(ConfigKeys.VCARD_FETCH_CONCURRENCY), config.get(ConfigKeys.AVATAR_CACHE_KB) * 1024L));
+        this.archiveSync = Lazy.of(() -> new ArchiveSync(
+            config.get(ConfigKeys.ARCHIVE_SYNC_CONCURRENCY), config.get(ConfigKeys.ARCHIVE_PAGE_SIZE)));
+    }
+
+    // 另一个账号的上下文：有自己的连接、发送顺序和数据库，主题、存档同步、vCard 线程和头像缓存与 shared 共用
+    protected Context(Context shared) {
+        this.shared = shared;
+        this.config = shared.config;
+        this.xmppClient = new XMPPClient(this);
+        this.themeManager = shared.themeManager;
+        this.asyncService = new AsyncService(xmppClient);
+        this.vCardCache = Lazy.of(() -> shared.getVCardCache().forClient(xmppClient));
+        this.archiveSync = shared.archiveSync;
+    }
+
+    public boolean isPrimary() {
+        return shared == null;
+    }
+
+    // 本账号的消息数据库，打开失败或其他账号尚未登录时为 null
+    public ChatDatabase getDatabase() {
+        if (shared == null) {
+            return ChatDatabase.getInstance();
+        }
+        String account = xmppClient.getAccountJid();
+        return account != null ? ChatDatabase.forAccount(account) : null;
+    }
+
+    // 为本账号的数据库启动维护任务；数据库未打开时不启动，重复调用无效
+    public synchronized void startMaintenance() {
+        ChatDatabase db = getDatabase();
+        if (maintenance == null && db != null) {
+            maintenance = DatabaseMaintenance.start(db, config);
+        }
+    }
+
+    public synchronized void stopMaintenance() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            maintenance = null;
+        }
     }
 
     public Configuration getConfig() {
@@ -32,7 +89,38 @@ public class Context {
         return mainWindow;
     }
 
+    // 界面中的网络和数据库操作都通过它异步执行
+    public AsyncService getAsyncService() {
+        return asyncService;
+    }
+
+    public VCardCache getVCardCache() {
+        return vCardCache.get();
+    }
+
+    public void closeVCardCache() {
+        if (vCardCache.isInitialized()) {
+            vCardCache.get().shutdown();
+        }
+    }
+
+    public ArchiveSync getArchiveSync() {
+        return archiveSync.get();
+    }
+
+    public void closeArchiveSync() {
+        if (shared == null && archiveSync.isInitialized()) {
+            archiveSync.get().shutdown();
+        }
+    }
+
     public ThemeManager getThemeManager() {
-        return themeManager;
+        return themeManager.get();
+    }
+
+    public void closeThemeManager() {
+        if (shared == null && themeManager.isInitialized()) {
+            themeManager.get().close();
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.xcq.core;
+
+import com.xcq.db.BodyRecompressor;
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ColdMessageMover;
+import com.xcq.db.DatabaseBackup;
+
+// 一个数据库的后台维护任务：压缩旧正文、移动冷消息、在线备份。每个账号的数据库各有一份
+public class DatabaseMaintenance {
+    private final BodyRecompressor bodyRecompressor;
+    private final ColdMessageMover coldMessageMover;
+    private final DatabaseBackup databaseBackup;
+
+    private DatabaseMaintenance(BodyRecompressor bodyRecompressor, ColdMessageMover coldMessageMover,
+                                DatabaseBackup databaseBackup) {
+        this.bodyRecompressor = bodyRecompressor;
+        this.coldMessageMover = coldMessageMover;
+        this.databaseBackup = databaseBackup;
+    }
+
+    // 按配置启动，值为 0 的任务不启动
+    public static DatabaseMaintenance start(ChatDatabase db, Configuration config) {
+        // 压缩旧版本写入的长正文，不等待完成
+        BodyRecompressor recompressor = null;
+        if (config.get(ConfigKeys.DB_COMPRESS_THRESHOLD) > 0) {
+            recompressor = new BodyRecompressor();
+            recompressor.start(db);
+        }
+        // 定期把旧消息移到归档库
+        ColdMessageMover mover = null;
+        int hotMonths = config.get(ConfigKeys.DB_HOT_MONTHS);
+        if (hotMonths > 0) {
+            mover = new ColdMessageMover();
+            mover.start(db, hotMonths);
+        }
+        // 定期在线备份
+        DatabaseBackup backup = null;
+        int backupHours = config.get(ConfigKeys.DB_BACKUP_INTERVAL_HOURS);
+        if (backupHours > 0) {
+            backup = new DatabaseBackup(DatabaseBackup.defaultDirectory(db), config.get(ConfigKeys.DB_BACKUP_KEEP));
+            backup.start(db, backupHours);
+        }
+        return new DatabaseMaintenance(recompressor, mover, backup);
+    }
+
+    // 在关闭数据库之前调用
+    public void shutdown() {
+        if (bodyRecompressor != null) {
+            bodyRecompressor.shutdown();
+        }
+        if (coldMessageMover != null) {
+            coldMessageMover.shutdown();
+        }
+        if (databaseBackup != null) {
+            databaseBackup.shutdown();
+        }
+    }
+}
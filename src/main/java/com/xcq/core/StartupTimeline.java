@@ -0,0 +1,123 @@
+package com.xcq.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+// 记录启动过程中各阶段的耗时，时间均以 JVM 启动时刻为起点
+public final class StartupTimeline {
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimeline.class);
+    public static final String LOGIN_WINDOW_SHOWN = "login-window-shown";
+
+    private static final StartupTimeline instance = new StartupTimeline();
+
+    private final long originNanos;
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> milestones = new ConcurrentHashMap<>();
+
+    private StartupTimeline() {
+        long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        this.originNanos = System.nanoTime() - uptimeMillis * 1_000_000L;
+    }
+
+    public static StartupTimeline getInstance() {
+        return instance;
+    }
+
+    public void record(String name, Runnable task) {
+        record(name, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public <T> T record(String name, Supplier<T> task) {
+        long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            long end = System.nanoTime();
+            Phase phase = new Phase(name, Thread.currentThread().getName(),
+                toMillis(start), toMillis(end));
+            phases.add(phase);
+            logger.info("Startup phase '{}' took {} ms on {}", name, phase.getDurationMillis(), phase.getThreadName());
+        }
+    }
+
+    // 记录一个时间点，例如登录窗口第一次显示
+    public void mark(String milestone) {
+        long at = toMillis(System.nanoTime());
+        if (milestones.putIfAbsent(milestone, at) == null) {
+            logger.info("Startup milestone '{}' reached at {} ms", milestone, at);
+        }
+    }
+
+    public OptionalLong getMilestone(String milestone) {
+        Long at = milestones.get(milestone);
+        return at != null ? OptionalLong.of(at) : OptionalLong.empty();
+    }
+
+    public List<Phase> getPhases() {
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparingLong(Phase::getStartMillis));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    public void logSummary() {
+        String version = StartupTimeline.class.getPackage().getImplementationVersion();
+        StringBuilder summary = new StringBuilder("Startup timeline (version ")
+            .append(version != null ? version : "dev").append("):");
+        for (Phase phase : getPhases()) {
+            summary.append(String.format("%n  %6d ms +%5d ms  %-20s [%s]",
+                phase.getStartMillis(), phase.getDurationMillis(), phase.getName(), phase.getThreadName()));
+        }
+        milestones.entrySet().stream()
+            .sorted(Map.Entry.comparingByValue())
+            .forEach(e -> summary.append(String.format("%n  %6d ms  * %s", e.getValue(), e.getKey())));
+        logger.info(summary.toString());
+    }
+
+    private long toMillis(long nanos) {
+        return (nanos - originNanos) / 1_000_000L;
+    }
+
+    public static final class Phase {
+        private final String name;
+        private final String threadName;
+        private final long startMillis;
+        private final long endMillis;
+
+        Phase(String name, String threadName, long startMillis, long endMillis) {
+            this.name = name;
+            this.threadName = threadName;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        public String getName() { return name; }
+        public String getThreadName() { return threadName; }
+        public long getStartMillis() { return startMillis; }
+        public long getEndMillis() { return endMillis; }
+        public long getDurationMillis() { return endMillis - startMillis; }
+
+        @Override
+        public String toString() {
+            return "Phase{" +
+                   "name='" + name + '\'' +
+                   ", thread='" + threadName + '\'' +
+                   ", start=" + startMillis +
+                   ", duration=" + getDurationMillis() +
+                   '}';
+        }
+    }
+}
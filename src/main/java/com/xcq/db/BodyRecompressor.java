@@ -0,0 +1,48 @@
+package com.xcq.db;
+
+import com.xcq.util.ExecutorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+// 在后台压缩旧版本写入的长正文。分批执行，每批一个事务，批之间暂停，界面的查询不会长时间等待数据库锁；
+// 进度保存在数据库中，中断后下次启动从断点继续。全部完成后空闲页较多时整理数据库文件
+public class BodyRecompressor {
+    private static final Logger logger = LoggerFactory.getLogger(BodyRecompressor.class);
+    private static final int BATCH_SIZE = 200;
+    private static final long PAUSE_MS = 50;
+
+    private final ExecutorService executor = ExecutorProvider.getInstance().newBoundedExecutor("body-recompress", 1);
+
+    // 返回压缩的消息数
+    public CompletableFuture<Integer> start(ChatDatabase db) {
+        return CompletableFuture.supplyAsync(() -> run(db), executor);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private int run(ChatDatabase db) {
+        long start = System.nanoTime();
+        int total = 0;
+        int count;
+        while ((count = db.recompressBodies(BATCH_SIZE)) >= 0) {
+            total += count;
+            try {
+                Thread.sleep(PAUSE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.info("Body recompression interrupted after {} messages", total);
+                return total;
+            }
+        }
+        if (total > 0) {
+            logger.info("Compressed {} stored message bodies in {} ms", total, (System.nanoTime() - start) / 1_000_000);
+            db.compactIfFragmented();
+        }
+        return total;
+    }
+}
@@ -1,45 +1,135 @@
 package com.xcq.db;
 
+import com.xcq.metrics.Metrics;
+import com.xcq.plugin.MessageInterceptor.Stage;
+import com.xcq.plugin.MessagePipeline;
+import com.xcq.util.EdtGuard;
+import com.xcq.util.ExecutorProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ChatDatabase {
     private static final Logger logger = LoggerFactory.getLogger(ChatDatabase.class);
     private static final String DB_NAME = "chat.db";
     private static final String DB_DIR = "data";
     private static final String DB_PATH = DB_DIR + File.separator + DB_NAME;
-    private static final String DB_URL = "jdbc:sqlite:" + DB_PATH;
+    private static final String ACCOUNTS_DIR = DB_DIR + File.separator + "accounts";
     
-    private static final String CREATE_TABLE_SQL = 
-        "CREATE TABLE IF NOT EXISTS messages (" +
-        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-        "sender_jid TEXT NOT NULL," +
-        "receiver_jid TEXT NOT NULL," +
-        "message TEXT NOT NULL," +
-        "is_local BOOLEAN NOT NULL," +
-        "is_read BOOLEAN NOT NULL DEFAULT 0," +
-        "timestamp BIGINT NOT NULL" + 
+    // 消息中的 JID 只保存 jids 表的 id
+    private static final String CREATE_JIDS_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS jids (" +
+        "id INTEGER PRIMARY KEY," +
+        "jid TEXT NOT NULL UNIQUE" +
         ")";
+
+    private static final String CREATE_TABLE_SQL = createMessagesTableSql("messages");
     
     private static final String CREATE_PARTICIPANTS_INDEX_SQL = 
-        "CREATE INDEX IF NOT EXISTS idx_participants ON messages (sender_jid, receiver_jid)";
+        "CREATE INDEX IF NOT EXISTS idx_participants ON messages (sender_id, receiver_id)";
     
     private static final String CREATE_TIMESTAMP_INDEX_SQL = 
         "CREATE INDEX IF NOT EXISTS idx_timestamp ON messages (timestamp)";
 
+    // stanza_id 为服务器存档中的消息 id（XEP-0359），origin_id 为发送方客户端的消息 id，用于同步存档时去重
+    private static final String CREATE_STANZA_ID_INDEX_SQL =
+        "CREATE UNIQUE INDEX IF NOT EXISTS idx_stanza_id ON messages (stanza_id) WHERE stanza_id IS NOT NULL";
+
+    private static final String CREATE_ORIGIN_ID_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS idx_origin_id ON messages (origin_id) WHERE origin_id IS NOT NULL";
+
+    // 每个账号已同步到的服务器存档位置
+    private static final String CREATE_ARCHIVE_SYNC_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS archive_sync (" +
+        "account TEXT PRIMARY KEY," +
+        "last_archive_id TEXT NOT NULL," +
+        "updated_at BIGINT NOT NULL" +
+        ")";
+
+    // 联系人 vCard 缓存，photo_hash 为头像的 SHA-1，与出席信息中的 XEP-0153 哈希比较判断是否过期
+    private static final String CREATE_VCARDS_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS vcards (" +
+        "jid TEXT PRIMARY KEY," +
+        "photo_hash TEXT," +
+        "vcard_xml TEXT NOT NULL," +
+        "updated_at BIGINT NOT NULL" +
+        ")";
+
+    // 数据库维护任务的进度等内部状态
+    private static final String CREATE_DB_STATE_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS db_state (" +
+        "key TEXT PRIMARY KEY," +
+        "value TEXT NOT NULL" +
+        ")";
+
+    // 每个归档库中有哪些会话，jid1 为两方中较小的 id；查询和删除会话时只附加其中有该会话的归档库
+    private static final String CREATE_ARCHIVE_CONVERSATIONS_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS archive_conversations (" +
+        "jid1 INTEGER NOT NULL," +
+        "jid2 INTEGER NOT NULL," +
+        "year INTEGER NOT NULL," +
+        "PRIMARY KEY (jid1, jid2, year)" +
+        ") WITHOUT ROWID";
+
+    private static final String RECOMPRESS_PROGRESS_KEY = "recompress.lastId";
+    // 归档库的会话已记入 archive_conversations，之前的版本创建的归档库第一次用到时补记
+    private static final String ARCHIVE_INDEXED_KEY_PREFIX = "archive.indexed.";
+    // 迁移旧格式时每个事务复制的行数
+    private static final int MIGRATION_BATCH_SIZE = 50_000;
+    private static final int JID_CACHE_SIZE = 4096;
+    // 历史记录的顺序：按时间，相同时按 id
+    private static final Comparator<ChatMessage> HISTORY_ORDER =
+        Comparator.comparing(ChatMessage::getTimestamp).thenComparingLong(ChatMessage::getId);
+    // 同时附加的归档库数，超过时分离最久未用的
+    private static final int MAX_ATTACHED_ARCHIVES = 4;
+    // SQLite 默认最多同时附加 10 个库
+    private static final int ATTACH_LIMIT = 10;
+
     private static ChatDatabase instance;
+    // 同时登录的其他账号，每个账号一个数据库文件
+    private static final Map<String, ChatDatabase> accountInstances = new ConcurrentHashMap<>();
+    private final File dbFile;
     private Connection connection;
     private final ReentrantLock dbLock = new ReentrantLock();
+    // 旧格式的数据库在后台迁移，完成前其他操作在 lockDb() 中等待；不需要迁移时打开后立即就绪
+    private final CountDownLatch ready = new CountDownLatch(1);
+    // 关闭时中止进行中的迁移，下次启动继续
+    private volatile boolean closing;
+    private final JidCache jidCache = new JidCache(JID_CACHE_SIZE);
+    // 正文超过该字节数时压缩存储，0 为不压缩
+    private volatile int compressThreshold;
+    // 较早的已读消息按年份（UTC）移到同目录下的 <库名>-<年份>.db，查询翻到时才附加（ATTACH）。
+    // 归档库中的 JID 仍是本库 jids 表的 id。以下两项由数据库锁保护
+    private final TreeSet<Integer> archiveYears = new TreeSet<>();
+    private final LinkedHashMap<Integer, String> attachedArchives = new LinkedHashMap<>(8, 0.75f, true);
+    private final Set<Integer> indexedArchives = new HashSet<>();
 
-    private ChatDatabase() {
+    private ChatDatabase(File dbFile) {
+        this.dbFile = dbFile;
+        this.compressThreshold = com.xcq.core.Configuration.getInstance().get(com.xcq.core.ConfigKeys.DB_COMPRESS_THRESHOLD);
         try {
-            File dbDir = new File(DB_DIR);
+            File dbDir = dbFile.getAbsoluteFile().getParentFile();
             if (!dbDir.exists()) {
                 if (dbDir.mkdirs()) {
                     logger.info("Created database directory: {}", dbDir.getAbsolutePath());
@@ -48,7 +138,7 @@ public class ChatDatabase {
                 }
             }
             
-            connection = DriverManager.getConnection(DB_URL);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
             try (Statement statement = connection.createStatement()) {
                 statement.execute("PRAGMA synchronous = NORMAL;");
                 statement.execute("PRAGMA journal_mode=WAL;"); 
@@ -58,7 +148,15 @@ public class ChatDatabase {
             
             connection.setAutoCommit(false); 
             
-            initializeSchema();
+            findArchives();
+            if (initializeSchema()) {
+                ready.countDown();
+            } else {
+                // 迁移可能需要很久，不在打开数据库的调用中进行
+                ExecutorService upgrader = ExecutorProvider.getInstance().newBoundedExecutor("db-upgrade", 1);
+                upgrader.execute(this::upgrade);
+                upgrader.shutdown();
+            }
 
         } catch (SQLException e) {
             logger.error("Failed to initialize database connection", e);
@@ -67,20 +165,17 @@ public class ChatDatabase {
         }
     }
     
-    private void initializeSchema() throws SQLException {
+    // 建表；旧版本的数据库需要先迁移，这时不建表并返回 false
+    private boolean initializeSchema() throws SQLException {
         dbLock.lock();
         try (Statement statement = connection.createStatement()) {
-            statement.execute(CREATE_TABLE_SQL);
-            logger.info("Executed: {}", CREATE_TABLE_SQL);
-            
-            statement.execute(CREATE_PARTICIPANTS_INDEX_SQL);
-            logger.info("Executed: {}", CREATE_PARTICIPANTS_INDEX_SQL);
-
-            statement.execute(CREATE_TIMESTAMP_INDEX_SQL);
-            logger.info("Executed: {}", CREATE_TIMESTAMP_INDEX_SQL);
-            
-            connection.commit();
-            logger.info("Database schema initialized successfully at: {}", new File(DB_PATH).getAbsolutePath());
+            statement.execute(CREATE_JIDS_TABLE_SQL);
+            if (hasColumn(statement, "messages", "sender_jid")) {
+                connection.commit();
+                return false;
+            }
+            createTables(statement);
+            return true;
         } catch (SQLException e) {
             logger.error("Error executing database initialization SQL", e);
             rollbackConnection();
@@ -90,7 +185,312 @@ public class ChatDatabase {
         }
     }
 
+    // 在后台迁移旧版本的消息表，完成后放行等待的操作，再回收旧表留下的空闲页
+    private void upgrade() {
+        boolean migrated = false;
+        dbLock.lock();
+        try {
+            if (closing) {
+                return;
+            }
+            migrated = migrateLegacySchema();
+        } finally {
+            dbLock.unlock();
+            ready.countDown();
+        }
+        if (migrated && !closing) {
+            compactIfFragmented();
+        }
+    }
+
+    // 调用方持有数据库锁
+    private boolean migrateLegacySchema() {
+        try (Statement statement = connection.createStatement()) {
+            // 先补齐后来增加的列再迁移
+            addColumnIfMissing(statement, "messages", "stanza_id", "TEXT");
+            addColumnIfMissing(statement, "messages", "origin_id", "TEXT");
+            addColumnIfMissing(statement, "messages", "compressed", "BOOLEAN NOT NULL DEFAULT 0");
+            if (!migrateJidColumns(statement)) {
+                return false;
+            }
+            createTables(statement);
+            return true;
+        } catch (SQLException e) {
+            logger.error("Failed to migrate database {}", dbFile.getAbsolutePath(), e);
+            rollbackConnection();
+            return false;
+        }
+    }
+
+    // 调用方持有数据库锁
+    private void createTables(Statement statement) throws SQLException {
+        statement.execute(CREATE_TABLE_SQL);
+        logger.info("Executed: {}", CREATE_TABLE_SQL);
+        
+        statement.execute(CREATE_PARTICIPANTS_INDEX_SQL);
+        logger.info("Executed: {}", CREATE_PARTICIPANTS_INDEX_SQL);
+
+        statement.execute(CREATE_TIMESTAMP_INDEX_SQL);
+        logger.info("Executed: {}", CREATE_TIMESTAMP_INDEX_SQL);
+
+        statement.execute(CREATE_VCARDS_TABLE_SQL);
+        logger.info("Executed: {}", CREATE_VCARDS_TABLE_SQL);
+
+        statement.execute(CREATE_STANZA_ID_INDEX_SQL);
+        statement.execute(CREATE_ORIGIN_ID_INDEX_SQL);
+        statement.execute(CREATE_ARCHIVE_SYNC_TABLE_SQL);
+        logger.info("Executed: {}", CREATE_ARCHIVE_SYNC_TABLE_SQL);
+        statement.execute(CREATE_DB_STATE_TABLE_SQL);
+        statement.execute(CREATE_ARCHIVE_CONVERSATIONS_TABLE_SQL);
+        
+        connection.commit();
+        logger.info("Database schema initialized successfully at: {}", dbFile.getAbsolutePath());
+    }
+
+    // compressed 为 1 时 message 列是 Deflate 压缩后的 BLOB
+    private static String createMessagesTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "sender_id INTEGER NOT NULL REFERENCES jids (id)," +
+            "receiver_id INTEGER NOT NULL REFERENCES jids (id)," +
+            "message TEXT NOT NULL," +
+            "is_local BOOLEAN NOT NULL," +
+            "is_read BOOLEAN NOT NULL DEFAULT 0," +
+            "timestamp BIGINT NOT NULL," +
+            "stanza_id TEXT," +
+            "origin_id TEXT," +
+            "compressed BOOLEAN NOT NULL DEFAULT 0" +
+            ")";
+    }
+
+    // 旧版本的 messages 表直接保存 JID 字符串。按 id 分批复制到新表，每批一个事务，内存和 WAL 的占用与总行数无关；
+    // 中途退出时 messages_new 保留已复制的部分，下次启动从其中最大的 id 继续。因关闭而中止时返回 false
+    private boolean migrateJidColumns(Statement statement) throws SQLException {
+        long start = System.nanoTime();
+        statement.execute(createMessagesTableSql("messages_new"));
+        statement.execute("INSERT OR IGNORE INTO jids (jid) SELECT sender_jid FROM messages UNION SELECT receiver_jid FROM messages");
+        connection.commit();
+
+        long maxId = queryLong(statement, "SELECT COALESCE(MAX(id), 0) FROM messages");
+        long copiedId = queryLong(statement, "SELECT COALESCE(MAX(id), 0) FROM messages_new");
+        logger.info("Migrating messages to JID ids: {} of {} already copied", copiedId, maxId);
+        String copySql = "INSERT INTO messages_new (id, sender_id, receiver_id, message, is_local, is_read, timestamp, stanza_id, origin_id, compressed) " +
+                         "SELECT m.id, s.id, r.id, m.message, m.is_local, m.is_read, m.timestamp, m.stanza_id, m.origin_id, m.compressed " +
+                         "FROM messages m JOIN jids s ON s.jid = m.sender_jid JOIN jids r ON r.jid = m.receiver_jid " +
+                         "WHERE m.id > ? AND m.id <= ?";
+        long rows = 0;
+        try (PreparedStatement copy = connection.prepareStatement(copySql)) {
+            while (copiedId < maxId) {
+                if (closing) {
+                    logger.info("Migration stopped at id {} of {}, will resume on next start", copiedId, maxId);
+                    return false;
+                }
+                long upTo = Math.min(maxId, copiedId + MIGRATION_BATCH_SIZE);
+                copy.setLong(1, copiedId);
+                copy.setLong(2, upTo);
+                rows += copy.executeUpdate();
+                connection.commit();
+                copiedId = upTo;
+            }
+        }
+
+        statement.execute("DROP TABLE messages");
+        statement.execute("ALTER TABLE messages_new RENAME TO messages");
+        connection.commit();
+        logger.info("Migrated {} messages to JID ids in {} ms", rows, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static boolean hasColumn(Statement statement, String table, String column) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addColumnIfMissing(Statement statement, String table, String column, String type) throws SQLException {
+        if (hasColumn(statement, table, column)) {
+            return;
+        }
+        statement.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+        logger.info("Added column {}.{}", table, column);
+    }
+
+    private void findArchives() {
+        File[] files = dbFile.getAbsoluteFile().getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        Pattern pattern = archiveFilePattern();
+        for (File file : files) {
+            Matcher matcher = pattern.matcher(file.getName());
+            if (matcher.matches()) {
+                archiveYears.add(Integer.parseInt(matcher.group(1)));
+            }
+        }
+        if (!archiveYears.isEmpty()) {
+            logger.info("Found message archives for years {}", archiveYears);
+        }
+    }
+
+    private Pattern archiveFilePattern() {
+        return Pattern.compile(Pattern.quote(baseName()) + "-(\\d{4})\\.db");
+    }
+
+    private String baseName() {
+        String name = dbFile.getName();
+        return name.endsWith(".db") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    private File archiveFile(int year) {
+        return new File(dbFile.getAbsoluteFile().getParentFile(), baseName() + "-" + year + ".db");
+    }
+
+    private static long startOfYear(int year) {
+        return LocalDate.of(year, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    // 附加某一年的归档库，返回其 schema 名；create 为 true 时文件或表不存在则创建。调用方持有数据库锁，且没有未提交的写入
+    private String attachArchive(int year, boolean create) throws SQLException {
+        return attachArchive(year, create, Collections.emptySet());
+    }
+
+    // 同时附加 years 中的归档库（不超过 ATTACH_LIMIT 个），返回年份到 schema 名。之后不再 ATTACH，调用方可以在一个事务中使用它们
+    private Map<Integer, String> attachArchives(Collection<Integer> years) throws SQLException {
+        Map<Integer, String> schemas = new LinkedHashMap<>();
+        for (int year : years) {
+            schemas.put(year, attachArchive(year, false, years));
+        }
+        return schemas;
+    }
+
+    // 腾出位置时不分离 keep 中的归档库
+    private String attachArchive(int year, boolean create, Collection<Integer> keep) throws SQLException {
+        String schema = attachedArchives.get(year);
+        if (schema != null) {
+            return schema;
+        }
+        schema = "archive_" + year;
+        // ATTACH 和 DETACH 不能在事务中执行
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            int room = Math.max(MAX_ATTACHED_ARCHIVES, keep.size());
+            Iterator<Map.Entry<Integer, String>> eldest = attachedArchives.entrySet().iterator();
+            while (attachedArchives.size() >= room && eldest.hasNext()) {
+                Map.Entry<Integer, String> entry = eldest.next();
+                if (!keep.contains(entry.getKey())) {
+                    statement.execute("DETACH DATABASE " + entry.getValue());
+                    eldest.remove();
+                }
+            }
+            try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS " + schema)) {
+                attach.setString(1, archiveFile(year).getPath());
+                attach.execute();
+            }
+            if (create) {
+                statement.execute(createMessagesTableSql(schema + ".messages"));
+                statement.execute("CREATE INDEX IF NOT EXISTS " + schema + ".idx_participants ON messages (sender_id, receiver_id)");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + schema + ".idx_timestamp ON messages (timestamp)");
+                statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + schema + ".idx_stanza_id ON messages (stanza_id) WHERE stanza_id IS NOT NULL");
+                archiveYears.add(year);
+            }
+            attachedArchives.put(year, schema);
+            logger.debug("Attached message archive {}", archiveFile(year).getName());
+            return schema;
+        } finally {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    // 调用方持有数据库锁
+    private void detachArchives() throws SQLException {
+        if (attachedArchives.isEmpty()) {
+            return;
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            for (Iterator<String> it = attachedArchives.values().iterator(); it.hasNext(); ) {
+                statement.execute("DETACH DATABASE " + it.next());
+                it.remove();
+            }
+        } finally {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    // 有两人会话的归档库年份，从早到晚。调用方持有数据库锁，且没有未提交的写入
+    private List<Integer> archiveYearsWith(int user1Id, int user2Id) throws SQLException {
+        List<Integer> years = new ArrayList<>();
+        if (archiveYears.isEmpty()) {
+            return years;
+        }
+        indexArchives();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT year FROM archive_conversations WHERE jid1 = ? AND jid2 = ? ORDER BY year")) {
+            pstmt.setInt(1, Math.min(user1Id, user2Id));
+            pstmt.setInt(2, Math.max(user1Id, user2Id));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int year = rs.getInt(1);
+                    if (archiveYears.contains(year)) {
+                        years.add(year);
+                    }
+                }
+            }
+        }
+        return years;
+    }
+
+    // 把还没记入 archive_conversations 的归档库中的会话补记进去，每个库只做一次。调用方持有数据库锁，且没有未提交的写入
+    private void indexArchives() throws SQLException {
+        for (int year : archiveYears) {
+            if (indexedArchives.contains(year)) {
+                continue;
+            }
+            if (readState(ARCHIVE_INDEXED_KEY_PREFIX + year) == null) {
+                String schema = attachArchive(year, false);
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "INSERT OR IGNORE INTO archive_conversations (jid1, jid2, year) " +
+                        "SELECT DISTINCT MIN(sender_id, receiver_id), MAX(sender_id, receiver_id), ? FROM " + schema + ".messages")) {
+                    pstmt.setInt(1, year);
+                    pstmt.executeUpdate();
+                }
+                writeState(ARCHIVE_INDEXED_KEY_PREFIX + year, "1");
+                connection.commit();
+                logger.info("Indexed conversations in message archive {}", archiveFile(year).getName());
+            }
+            indexedArchives.add(year);
+        }
+    }
+
+    // 获取数据库锁，并记录等待时间；数据库还在迁移时等待迁移完成
+    private void lockDb() {
+        long start = System.nanoTime();
+        if (ready.getCount() > 0) {
+            try {
+                ready.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        dbLock.lock();
+        Metrics.DB_LOCK_WAIT.recordSince(start);
+    }
+
     private void rollbackConnection() {
+        jidCache.clear();
         if (connection != null) {
             try {
                 connection.rollback();
@@ -101,10 +501,16 @@ public class ChatDatabase {
         }
     }
 
-    public static synchronized ChatDatabase getInstance() {
+    // 打开数据库只建表，旧格式的迁移在后台进行；仍不应在 EDT 中调用
+    public static ChatDatabase getInstance() {
+        EdtGuard.checkNotEdt("ChatDatabase.getInstance");
+        return openInstance();
+    }
+
+    private static synchronized ChatDatabase openInstance() {
         if (instance == null) {
             try {
-                 instance = new ChatDatabase();
+                 instance = new ChatDatabase(new File(DB_PATH));
             } catch (RuntimeException e) {
                  logger.error("Failed to create ChatDatabase instance", e);
                  return null; 
@@ -113,23 +519,154 @@ public class ChatDatabase {
         return instance;
     }
 
+    // 主账号使用 data/chat.db，同时登录的其他账号使用 data/accounts/<账号>/chat.db；打开失败时返回 null
+    public static ChatDatabase forAccount(String account) {
+        return accountInstances.computeIfAbsent(account, a -> {
+            File dir = new File(ACCOUNTS_DIR, a.replaceAll("[^A-Za-z0-9@._-]", "_"));
+            try {
+                return new ChatDatabase(new File(dir, DB_NAME));
+            } catch (RuntimeException e) {
+                logger.error("Failed to open database for account {}", a, e);
+                return null;
+            }
+        });
+    }
+
+    // 打开指定文件上的独立实例，不影响全局实例；供基准测试等场景使用
+    public static ChatDatabase open(File dbFile) {
+        return new ChatDatabase(dbFile);
+    }
+
+    public File getFile() {
+        return dbFile;
+    }
+
+    // 已有的归档库文件，按年份排列
+    public List<File> getArchiveFiles() {
+        List<File> files = new ArrayList<>();
+        lockDb();
+        try {
+            for (int year : archiveYears) {
+                files.add(archiveFile(year));
+            }
+        } finally {
+            dbLock.unlock();
+        }
+        return files;
+    }
+
+    // 只影响之后写入的消息
+    public void setCompressThreshold(int bytes) {
+        this.compressThreshold = bytes;
+    }
+
+    // 超过阈值的正文返回压缩后的 byte[]，否则原样返回
+    private Object encodeBody(String body) {
+        byte[] compressed = MessageBodies.compress(body, compressThreshold);
+        return compressed != null ? compressed : body;
+    }
+
+    private static void bindBody(PreparedStatement pstmt, int bodyIndex, int compressedIndex, Object body) throws SQLException {
+        if (body instanceof byte[]) {
+            pstmt.setBytes(bodyIndex, (byte[]) body);
+            pstmt.setBoolean(compressedIndex, true);
+        } else {
+            pstmt.setString(bodyIndex, (String) body);
+            pstmt.setBoolean(compressedIndex, false);
+        }
+    }
+
+    // 压缩的正文暂不解压，在 ChatMessage.getMessage() 第一次调用时解压。调用方持有数据库锁
+    private ChatMessage readMessage(ResultSet rs) throws SQLException {
+        String senderJid = jidOf(rs.getInt("sender_id"));
+        Timestamp timestamp = new Timestamp(rs.getLong("timestamp"));
+        if (rs.getBoolean("compressed")) {
+            return new ChatMessage(rs.getLong("id"), senderJid, rs.getBytes("message"), timestamp,
+                rs.getBoolean("is_local"), rs.getBoolean("is_read"));
+        }
+        return new ChatMessage(rs.getLong("id"), senderJid, rs.getString("message"), timestamp,
+            rs.getBoolean("is_local"), rs.getBoolean("is_read"));
+    }
+
+    // JID 在 jids 表中的 id；没有记录时 create 为 true 则插入，否则返回 -1，查询时不匹配任何消息。调用方持有数据库锁
+    private int jidId(String jid, boolean create) throws SQLException {
+        Integer cached = jidCache.idOf(jid);
+        if (cached != null) {
+            return cached;
+        }
+        try (PreparedStatement select = connection.prepareStatement("SELECT id FROM jids WHERE jid = ?")) {
+            select.setString(1, jid);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    jidCache.put(jid, rs.getInt(1));
+                    return rs.getInt(1);
+                }
+            }
+        }
+        if (!create) {
+            return -1;
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO jids (jid) VALUES (?)")) {
+            insert.setString(1, jid);
+            insert.executeUpdate();
+        }
+        int id;
+        try (Statement statement = connection.createStatement()) {
+            id = (int) queryLong(statement, "SELECT last_insert_rowid()");
+        }
+        jidCache.put(jid, id);
+        return id;
+    }
+
+    // 调用方持有数据库锁
+    private String jidOf(int id) throws SQLException {
+        String cached = jidCache.jidOf(id);
+        if (cached != null) {
+            return cached;
+        }
+        try (PreparedStatement select = connection.prepareStatement("SELECT jid FROM jids WHERE id = ?")) {
+            select.setInt(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Unknown JID id " + id);
+                }
+                jidCache.put(rs.getString(1), id);
+                return rs.getString(1);
+            }
+        }
+    }
+
     public void saveMessage(String senderJid, String receiverJid, String message, boolean isLocal) {
+        saveMessage(senderJid, receiverJid, message, isLocal, null, null);
+    }
+
+    // originId 为消息的 id 属性，stanzaId 为服务器分配的存档 id，未知时为 null
+    public void saveMessage(String senderJid, String receiverJid, String message, boolean isLocal,
+                            String originId, String stanzaId) {
+        EdtGuard.checkNotEdt("ChatDatabase.saveMessage");
         if (com.xcq.core.Configuration.getInstance().isTemporaryContact(isLocal ? receiverJid : senderJid)) {
              logger.debug("Temporary contact message not saved: {} <-> {}", senderJid, receiverJid);
              return;
         }
+        message = MessagePipeline.getInstance().process(Stage.PERSIST, senderJid, receiverJid, message);
+        Object body = encodeBody(message);
 
-        String sql = "INSERT INTO messages (sender_jid, receiver_jid, message, is_local, timestamp, is_read) VALUES (?, ?, ?, ?, ?, ?)";
-        dbLock.lock();
+        // 存档同步可能已经写入了同一条消息
+        String sql = "INSERT OR IGNORE INTO messages (sender_id, receiver_id, message, is_local, timestamp, is_read, origin_id, stanza_id, compressed) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        lockDb();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, senderJid);
-            pstmt.setString(2, receiverJid);
-            pstmt.setString(3, message);
+            pstmt.setInt(1, jidId(senderJid, true));
+            pstmt.setInt(2, jidId(receiverJid, true));
+            bindBody(pstmt, 3, 9, body);
             pstmt.setBoolean(4, isLocal);
             pstmt.setLong(5, System.currentTimeMillis());
             pstmt.setBoolean(6, isLocal);
+            pstmt.setString(7, originId);
+            pstmt.setString(8, stanzaId);
+            long start = System.nanoTime();
             pstmt.executeUpdate();
             connection.commit();
+            Metrics.DB_WRITE.recordSince(start);
             logger.debug("Message saved: {} -> {}: {}", senderJid, receiverJid, message.length() > 20 ? message.substring(0, 20) + "..." : message);
         } catch (SQLException e) {
             logger.error("Error saving message", e);
@@ -140,31 +677,24 @@ public class ChatDatabase {
     }
 
     public List<ChatMessage> getChatHistory(String currentUserJid, String contactJid) {
+        EdtGuard.checkNotEdt("ChatDatabase.getChatHistory");
         List<ChatMessage> messages = new ArrayList<>();
-        String sql = "SELECT sender_jid, receiver_jid, message, timestamp, is_read, " +
-                     "(sender_jid = ?) AS is_local " +
-                     "FROM messages " +
-                     "WHERE (sender_jid = ? AND receiver_jid = ?) " +
-                     "OR (sender_jid = ? AND receiver_jid = ?) " +
-                     "ORDER BY timestamp ASC";
-        
-        dbLock.lock();
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, currentUserJid);
-            pstmt.setString(2, currentUserJid);
-            pstmt.setString(3, contactJid);
-            pstmt.setString(4, contactJid);
-            pstmt.setString(5, currentUserJid);
-            
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                messages.add(new ChatMessage(
-                    rs.getString("sender_jid"),
-                    rs.getString("message"),
-                    new Timestamp(rs.getLong("timestamp")),
-                    rs.getBoolean("is_local"),
-                    rs.getBoolean("is_read")
-                ));
+        lockDb();
+        try {
+            int selfId = jidId(currentUserJid, false);
+            int contactId = jidId(contactJid, false);
+            if (selfId >= 0 && contactId >= 0) {
+                // 只附加有该会话的归档库，按年份从早到晚，其中的消息一般早于本库
+                List<Integer> years = archiveYearsWith(selfId, contactId);
+                for (int i = 0; i < years.size(); i += ATTACH_LIMIT) {
+                    for (String schema : attachArchives(years.subList(i, Math.min(i + ATTACH_LIMIT, years.size()))).values()) {
+                        queryHistory(schema + ".messages", selfId, contactId, Long.MAX_VALUE, Long.MAX_VALUE, -1, messages);
+                    }
+                }
+                queryHistory("messages", selfId, contactId, Long.MAX_VALUE, Long.MAX_VALUE, -1, messages);
+                if (!years.isEmpty()) {
+                    messages.sort(HISTORY_ORDER);
+                }
             }
             logger.info("Retrieved {} messages between {} and {}", 
                 messages.size(), currentUserJid, contactJid);
@@ -176,19 +706,112 @@ public class ChatDatabase {
         return messages;
     }
 
-    public void deleteChatHistory(String user1Jid, String user2Jid) {
-        String sql = "DELETE FROM messages " +
-                     "WHERE (sender_jid = ? AND receiver_jid = ?) " +
-                     "OR (sender_jid = ? AND receiver_jid = ?)";
-        
-        dbLock.lock();
+    // 返回 (beforeTimestamp, beforeId) 之前最近的 limit 条消息，按时间正序排列，时间相同的按 id。
+    // 翻页时传入已显示的最早一条的时间和 id，与它同一毫秒的消息不会被跳过（存档时间常只精确到秒）；从最新处开始时两者都传 Long.MAX_VALUE。
+    // 本库中已有 limit 条晚于某一年的消息时，不再附加该年及更早的归档库
+    public List<ChatMessage> getChatHistoryBefore(String currentUserJid, String contactJid, long beforeTimestamp, long beforeId, int limit) {
+        EdtGuard.checkNotEdt("ChatDatabase.getChatHistoryBefore");
+        List<ChatMessage> messages = new ArrayList<>();
+        lockDb();
+        try {
+            int selfId = jidId(currentUserJid, false);
+            int contactId = jidId(contactJid, false);
+            if (selfId >= 0 && contactId >= 0 && limit > 0) {
+                queryHistory("messages", selfId, contactId, beforeTimestamp, beforeId, limit, messages);
+                List<Integer> years = archiveYearsWith(selfId, contactId);
+                Collections.reverse(years);
+                for (int year : years) {
+                    if (startOfYear(year) > beforeTimestamp) {
+                        continue;
+                    }
+                    if (messages.size() >= limit && messages.get(limit - 1).getTimestamp().getTime() >= startOfYear(year + 1)) {
+                        break;
+                    }
+                    queryHistory(attachArchive(year, false) + ".messages", selfId, contactId, beforeTimestamp, beforeId, limit, messages);
+                    messages.sort(HISTORY_ORDER.reversed());
+                    if (messages.size() > limit) {
+                        messages.subList(limit, messages.size()).clear();
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading chat history between {} and {}", currentUserJid, contactJid, e);
+        } finally {
+            dbLock.unlock();
+        }
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    // 把 table 中 (beforeTimestamp, beforeId) 之前的会话消息加入 into：limit 为 -1 时按时间正序取全部，否则按时间倒序取最近的 limit 条。调用方持有数据库锁
+    private void queryHistory(String table, int selfId, int contactId, long beforeTimestamp, long beforeId, int limit,
+                              List<ChatMessage> into) throws SQLException {
+        String sql = "SELECT id, sender_id, message, compressed, timestamp, is_read, (sender_id = ?) AS is_local " +
+                     "FROM " + table + " " +
+                     "WHERE ((sender_id = ? AND receiver_id = ?) OR (sender_id = ? AND receiver_id = ?)) " +
+                     "AND (timestamp < ? OR (timestamp = ? AND id < ?)) " +
+                     (limit < 0 ? "ORDER BY timestamp ASC, id ASC" : "ORDER BY timestamp DESC, id DESC LIMIT ?");
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, user1Jid);
-            pstmt.setString(2, user2Jid);
-            pstmt.setString(3, user2Jid);
-            pstmt.setString(4, user1Jid);
-            int deletedRows = pstmt.executeUpdate();
-            connection.commit();
+            bindConversation(pstmt, selfId, contactId);
+            pstmt.setLong(6, beforeTimestamp);
+            pstmt.setLong(7, beforeTimestamp);
+            pstmt.setLong(8, beforeId);
+            if (limit >= 0) {
+                pstmt.setInt(9, limit);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    into.add(readMessage(rs));
+                }
+            }
+        }
+    }
+
+    // 绑定历史查询的前五个参数：本人 id 以及两个方向的发送者和接收者
+    private static void bindConversation(PreparedStatement pstmt, int selfId, int contactId) throws SQLException {
+        pstmt.setInt(1, selfId);
+        pstmt.setInt(2, selfId);
+        pstmt.setInt(3, contactId);
+        pstmt.setInt(4, contactId);
+        pstmt.setInt(5, selfId);
+    }
+
+    public void deleteChatHistory(String user1Jid, String user2Jid) {
+        EdtGuard.checkNotEdt("ChatDatabase.deleteChatHistory");
+        lockDb();
+        try {
+            int user1Id = jidId(user1Jid, false);
+            int user2Id = jidId(user2Jid, false);
+            if (user1Id < 0 || user2Id < 0) {
+                return;
+            }
+            // ATTACH 会提交，所以先附加要用的归档库再开始删除，本库和这些归档库在一个事务中删除。
+            // 归档库多于一次能附加的数量时（极少见）按组提交，本库在最后一组中删除
+            List<Integer> years = archiveYearsWith(user1Id, user2Id);
+            int deletedRows = 0;
+            int i = 0;
+            do {
+                List<Integer> group = years.subList(i, Math.min(i + ATTACH_LIMIT, years.size()));
+                Map<Integer, String> schemas = attachArchives(group);
+                for (String schema : schemas.values()) {
+                    deletedRows += deleteConversation(schema + ".messages", user1Id, user2Id);
+                }
+                if (!group.isEmpty()) {
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "DELETE FROM archive_conversations WHERE jid1 = ? AND jid2 = ? AND year BETWEEN ? AND ?")) {
+                        pstmt.setInt(1, Math.min(user1Id, user2Id));
+                        pstmt.setInt(2, Math.max(user1Id, user2Id));
+                        pstmt.setInt(3, group.get(0));
+                        pstmt.setInt(4, group.get(group.size() - 1));
+                        pstmt.executeUpdate();
+                    }
+                }
+                i += ATTACH_LIMIT;
+                if (i >= years.size()) {
+                    deletedRows += deleteConversation("messages", user1Id, user2Id);
+                }
+                connection.commit();
+            } while (i < years.size());
             logger.info("Deleted {} messages between {} and {}", deletedRows, user1Jid, user2Jid);
         } catch (SQLException e) {
             logger.error("Error deleting chat history", e);
@@ -198,12 +821,39 @@ public class ChatDatabase {
         }
     }
 
+    // 调用方持有数据库锁并负责提交
+    private int deleteConversation(String table, int user1Id, int user2Id) throws SQLException {
+        String sql = "DELETE FROM " + table + " " +
+                     "WHERE (sender_id = ? AND receiver_id = ?) " +
+                     "OR (sender_id = ? AND receiver_id = ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, user1Id);
+            pstmt.setInt(2, user2Id);
+            pstmt.setInt(3, user2Id);
+            pstmt.setInt(4, user1Id);
+            return pstmt.executeUpdate();
+        }
+    }
+
     public void deleteAllChatHistory() {
+        EdtGuard.checkNotEdt("ChatDatabase.deleteAllChatHistory");
         String sql = "DELETE FROM messages";
-        dbLock.lock();
+        lockDb();
         try (Statement stmt = connection.createStatement()) {
             int deletedRows = stmt.executeUpdate(sql);
+            stmt.executeUpdate("DELETE FROM archive_conversations");
+            stmt.executeUpdate("DELETE FROM db_state WHERE key LIKE '" + ARCHIVE_INDEXED_KEY_PREFIX + "%'");
             connection.commit();
+            // 归档库整个删除
+            detachArchives();
+            for (int year : archiveYears) {
+                File file = archiveFile(year);
+                if (!file.delete()) {
+                    logger.warn("Failed to delete message archive {}", file.getAbsolutePath());
+                }
+            }
+            archiveYears.clear();
+            indexedArchives.clear();
             logger.info("Deleted all {} messages from history", deletedRows);
         } catch (SQLException e) {
             logger.error("Error deleting all chat history", e);
@@ -214,6 +864,8 @@ public class ChatDatabase {
     }
 
     public void close() {
+        closing = true;
+        // 不等待迁移完成，迁移在下一批之前停下
         dbLock.lock();
         try {
             if (connection != null && !connection.isClosed()) {
@@ -224,21 +876,30 @@ public class ChatDatabase {
             logger.error("Error closing database connection", e);
         } finally {
             connection = null;
-            instance = null;  
+            attachedArchives.clear();
+            accountInstances.values().remove(this);
+            synchronized (ChatDatabase.class) {
+                if (instance == this) {
+                    instance = null;
+                }
+            }
             dbLock.unlock();
         }
     }
 
     public void markMessagesAsRead(String currentUserJid, String contactJid) {
+        EdtGuard.checkNotEdt("ChatDatabase.markMessagesAsRead");
         String sql = "UPDATE messages SET is_read = 1 " +
-                    "WHERE sender_jid = ? AND receiver_jid = ? AND is_read = 0";
+                    "WHERE sender_id = ? AND receiver_id = ? AND is_read = 0";
         
-        dbLock.lock();
+        lockDb();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, contactJid);
-            pstmt.setString(2, currentUserJid);
+            pstmt.setInt(1, jidId(contactJid, false));
+            pstmt.setInt(2, jidId(currentUserJid, false));
+            long start = System.nanoTime();
             int updatedRows = pstmt.executeUpdate();
             connection.commit();
+            Metrics.DB_WRITE.recordSince(start);
             if (updatedRows > 0) {
                  logger.debug("{} messages marked as read from {} to {}", updatedRows, contactJid, currentUserJid);
             }
@@ -251,13 +912,14 @@ public class ChatDatabase {
     }
 
     public int getUnreadMessageCount(String userJid) {
+        EdtGuard.checkNotEdt("ChatDatabase.getUnreadMessageCount");
         String sql = "SELECT COUNT(*) as count FROM messages " +
-                    "WHERE receiver_jid = ? AND is_read = 0";
+                    "WHERE receiver_id = ? AND is_read = 0";
         
         int count = 0;
-        dbLock.lock();
+        lockDb();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, userJid);
+            pstmt.setInt(1, jidId(userJid, false));
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
                 count = rs.getInt("count");
@@ -271,14 +933,15 @@ public class ChatDatabase {
     }
 
     public int getUnreadMessageCountFromContact(String currentUserJid, String contactJid) {
+        EdtGuard.checkNotEdt("ChatDatabase.getUnreadMessageCountFromContact");
         String sql = "SELECT COUNT(*) as count FROM messages " +
-                     "WHERE receiver_jid = ? AND sender_jid = ? AND is_read = 0";
+                     "WHERE receiver_id = ? AND sender_id = ? AND is_read = 0";
         
         int count = 0;
-        dbLock.lock();
+        lockDb();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, currentUserJid);
-            pstmt.setString(2, contactJid);
+            pstmt.setInt(1, jidId(currentUserJid, false));
+            pstmt.setInt(2, jidId(contactJid, false));
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
                 count = rs.getInt("count");
@@ -291,14 +954,424 @@ public class ChatDatabase {
         return count;
     }
 
+    // 在一个事务中保存一页存档消息并记录同步位置，返回新写入的条数，失败时返回 -1。
+    // 已有相同 stanza_id 的消息被跳过；本机发送时只记录了 origin_id 的消息补上 stanza_id；
+    // 没有 stanza_id 的消息（离线消息、消息副本）按发送者和 origin_id 去重
+    public int saveArchivedMessages(String account, List<ArchivedMessage> page, String lastArchiveId) {
+        EdtGuard.checkNotEdt("ChatDatabase.saveArchivedMessages");
+        return writeArchivedMessages(account, page, lastArchiveId, null, false);
+    }
+
+    // 保存翻阅历史时从存档补取的一页旧消息，全部记为已读，返回新写入的条数，失败时返回 -1
+    public int saveBackfilledMessages(List<ArchivedMessage> page) {
+        EdtGuard.checkNotEdt("ChatDatabase.saveBackfilledMessages");
+        return writeArchivedMessages(null, page, null, null, true);
+    }
+
+    // 在一个事务中保存一批消息，返回其中不重复的消息（包括临时会话中不保存的），保存失败时原样返回整批
+    public List<ArchivedMessage> saveNewMessages(List<ArchivedMessage> batch) {
+        EdtGuard.checkNotEdt("ChatDatabase.saveNewMessages");
+        boolean[] fresh = new boolean[batch.size()];
+        if (writeArchivedMessages(null, batch, null, fresh, false) < 0) {
+            return batch;
+        }
+        List<ArchivedMessage> result = new ArrayList<>(batch.size());
+        for (int i = 0; i < fresh.length; i++) {
+            if (fresh[i]) {
+                result.add(batch.get(i));
+            }
+        }
+        return result;
+    }
+
+    // fresh 不为 null 时标记 page 中哪些消息不是重复的；read 为 false 时只有自己发送的消息记为已读
+    private int writeArchivedMessages(String account, List<ArchivedMessage> page, String lastArchiveId, boolean[] fresh,
+                                      boolean read) {
+        // 插件处理在加锁前完成
+        List<Integer> accepted = new ArrayList<>(page.size());
+        List<Object> bodies = new ArrayList<>(page.size());
+        com.xcq.core.Configuration config = com.xcq.core.Configuration.getInstance();
+        for (int i = 0; i < page.size(); i++) {
+            ArchivedMessage m = page.get(i);
+            if (config.isTemporaryContact(m.isLocal() ? m.getReceiverJid() : m.getSenderJid())) {
+                if (fresh != null) {
+                    fresh[i] = true;
+                }
+                continue;
+            }
+            accepted.add(i);
+            bodies.add(encodeBody(MessagePipeline.getInstance().process(Stage.PERSIST, m.getSenderJid(), m.getReceiverJid(), m.getBody())));
+        }
+
+        String attachSql = "UPDATE messages SET stanza_id = ? WHERE origin_id = ? AND sender_id = ? AND stanza_id IS NULL";
+        String existsSql = "SELECT 1 FROM messages WHERE origin_id = ? AND sender_id = ? LIMIT 1";
+        String insertSql = "INSERT OR IGNORE INTO messages (sender_id, receiver_id, message, is_local, timestamp, is_read, origin_id, stanza_id, compressed) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String syncSql = "INSERT OR REPLACE INTO archive_sync (account, last_archive_id, updated_at) VALUES (?, ?, ?)";
+        int inserted = 0;
+        lockDb();
+        long start = System.nanoTime();
+        try (PreparedStatement attach = connection.prepareStatement(attachSql);
+             PreparedStatement exists = connection.prepareStatement(existsSql);
+             PreparedStatement insert = connection.prepareStatement(insertSql);
+             PreparedStatement sync = connection.prepareStatement(syncSql)) {
+            for (int i = 0; i < accepted.size(); i++) {
+                ArchivedMessage m = page.get(accepted.get(i));
+                int senderId = jidId(m.getSenderJid(), true);
+                if (m.getOriginId() != null && m.getStanzaId() != null) {
+                    attach.setString(1, m.getStanzaId());
+                    attach.setString(2, m.getOriginId());
+                    attach.setInt(3, senderId);
+                    if (attach.executeUpdate() > 0) {
+                        continue;
+                    }
+                } else if (m.getOriginId() != null) {
+                    exists.setString(1, m.getOriginId());
+                    exists.setInt(2, senderId);
+                    try (ResultSet rs = exists.executeQuery()) {
+                        if (rs.next()) {
+                            continue;
+                        }
+                    }
+                }
+                insert.setInt(1, senderId);
+                insert.setInt(2, jidId(m.getReceiverJid(), true));
+                bindBody(insert, 3, 9, bodies.get(i));
+                insert.setBoolean(4, m.isLocal());
+                insert.setLong(5, m.getTimestamp());
+                insert.setBoolean(6, read || m.isLocal());
+                insert.setString(7, m.getOriginId());
+                insert.setString(8, m.getStanzaId());
+                int count = insert.executeUpdate();
+                if (fresh != null) {
+                    fresh[accepted.get(i)] = count > 0;
+                }
+                inserted += count;
+            }
+            if (account != null && lastArchiveId != null) {
+                sync.setString(1, account);
+                sync.setString(2, lastArchiveId);
+                sync.setLong(3, System.currentTimeMillis());
+                sync.executeUpdate();
+            }
+            connection.commit();
+            Metrics.DB_WRITE.recordSince(start);
+        } catch (SQLException e) {
+            logger.error("Error saving {} archived messages", page.size(), e);
+            rollbackConnection();
+            inserted = -1;
+        } finally {
+            dbLock.unlock();
+        }
+        return inserted;
+    }
+
+    // 尚未同步过时返回 null
+    public String getLastArchiveId(String account) {
+        EdtGuard.checkNotEdt("ChatDatabase.getLastArchiveId");
+        String sql = "SELECT last_archive_id FROM archive_sync WHERE account = ?";
+        lockDb();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, account);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("last_archive_id");
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading archive sync state for {}", account, e);
+        } finally {
+            dbLock.unlock();
+        }
+        return null;
+    }
+
+    // 压缩上次进度之后最多 limit 条未压缩的长正文，进度与更新在同一事务中保存。
+    // 返回本批压缩的条数，已处理到表尾或出错时返回 -1
+    public int recompressBodies(int limit) {
+        EdtGuard.checkNotEdt("ChatDatabase.recompressBodies");
+        int threshold = compressThreshold;
+        if (threshold <= 0) {
+            return -1;
+        }
+        String selectSql = "SELECT id, message FROM messages WHERE id > ? AND compressed = 0 " +
+                           "AND length(CAST(message AS BLOB)) >= ? ORDER BY id LIMIT ?";
+        String updateSql = "UPDATE messages SET message = ?, compressed = 1 WHERE id = ? AND compressed = 0";
+        long afterId;
+        List<Long> ids = new ArrayList<>(limit);
+        List<String> bodies = new ArrayList<>(limit);
+        lockDb();
+        try (PreparedStatement select = connection.prepareStatement(selectSql)) {
+            String progress = readState(RECOMPRESS_PROGRESS_KEY);
+            afterId = progress != null ? Long.parseLong(progress) : 0;
+            select.setLong(1, afterId);
+            select.setInt(2, threshold);
+            select.setInt(3, limit);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("id"));
+                    bodies.add(rs.getString("message"));
+                }
+            }
+        } catch (SQLException | NumberFormatException e) {
+            logger.error("Error loading message bodies to compress", e);
+            return -1;
+        } finally {
+            dbLock.unlock();
+        }
+        if (ids.isEmpty()) {
+            return -1;
+        }
+
+        // 压缩在锁外进行
+        List<byte[]> compressed = new ArrayList<>(ids.size());
+        for (String body : bodies) {
+            compressed.add(MessageBodies.compress(body, threshold));
+        }
+        int count = 0;
+        lockDb();
+        long start = System.nanoTime();
+        try (PreparedStatement update = connection.prepareStatement(updateSql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                if (compressed.get(i) == null) {
+                    continue;
+                }
+                update.setBytes(1, compressed.get(i));
+                update.setLong(2, ids.get(i));
+                count += update.executeUpdate();
+            }
+            writeState(RECOMPRESS_PROGRESS_KEY, Long.toString(ids.get(ids.size() - 1)));
+            connection.commit();
+            Metrics.DB_WRITE.recordSince(start);
+        } catch (SQLException e) {
+            logger.error("Error compressing {} message bodies after id {}", ids.size(), afterId, e);
+            rollbackConnection();
+            return -1;
+        } finally {
+            dbLock.unlock();
+        }
+        return count;
+    }
+
+    // 空闲页超过文件的四分之一时执行 VACUUM，期间其他数据库操作等待
+    public void compactIfFragmented() {
+        EdtGuard.checkNotEdt("ChatDatabase.compactIfFragmented");
+        lockDb();
+        try (Statement statement = connection.createStatement()) {
+            long pages;
+            long free;
+            try (ResultSet rs = statement.executeQuery("PRAGMA page_count")) {
+                pages = rs.next() ? rs.getLong(1) : 0;
+            }
+            try (ResultSet rs = statement.executeQuery("PRAGMA freelist_count")) {
+                free = rs.next() ? rs.getLong(1) : 0;
+            }
+            if (pages == 0 || free * 4 < pages) {
+                return;
+            }
+            long start = System.nanoTime();
+            // VACUUM 不能在事务中执行
+            connection.setAutoCommit(true);
+            try {
+                statement.execute("VACUUM");
+            } finally {
+                connection.setAutoCommit(false);
+            }
+            logger.info("Vacuumed {}: {} of {} pages were free, took {} ms",
+                dbFile.getName(), free, pages, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            logger.error("Error compacting database {}", dbFile.getAbsolutePath(), e);
+        } finally {
+            dbLock.unlock();
+        }
+    }
+
+    // 把 cutoff 之前最早一年中最多 limit 条已读消息移到该年的归档库，返回移动的条数，没有可移动的消息或出错时返回 -1。
+    // 先记入 archive_conversations，再在归档库中提交，最后从本库删除；中途中断时记录或消息暂时多出一份，下次移动时按 id 跳过已有的并从本库删除
+    public int archiveOldMessages(long cutoff, int limit) {
+        EdtGuard.checkNotEdt("ChatDatabase.archiveOldMessages");
+        String columns = "id, sender_id, receiver_id, message, is_local, is_read, timestamp, stanza_id, origin_id, compressed";
+        String batch = "SELECT id FROM messages WHERE is_read = 1 AND timestamp < ? ORDER BY timestamp LIMIT ?";
+        int year = 0;
+        lockDb();
+        try (PreparedStatement oldest = connection.prepareStatement("SELECT MIN(timestamp) FROM messages WHERE is_read = 1 AND timestamp < ?")) {
+            oldest.setLong(1, cutoff);
+            try (ResultSet rs = oldest.executeQuery()) {
+                rs.next();
+                long timestamp = rs.getLong(1);
+                if (rs.wasNull()) {
+                    return -1;
+                }
+                year = LocalDate.ofEpochDay(Math.floorDiv(timestamp, 86_400_000L)).getYear();
+            }
+            long upTo = Math.min(cutoff, startOfYear(year + 1));
+            if (archiveYears.contains(year)) {
+                indexArchives();
+            }
+            String schema = attachArchive(year, true);
+            if (indexedArchives.add(year)) {
+                // 新建的归档库，之后移入的会话都会记入
+                writeState(ARCHIVE_INDEXED_KEY_PREFIX + year, "1");
+            }
+            long start = System.nanoTime();
+            try (PreparedStatement index = connection.prepareStatement(
+                     "INSERT OR IGNORE INTO archive_conversations (jid1, jid2, year) " +
+                     "SELECT DISTINCT MIN(sender_id, receiver_id), MAX(sender_id, receiver_id), ? FROM messages WHERE id IN (" + batch + ")");
+                 PreparedStatement copy = connection.prepareStatement(
+                     "INSERT OR IGNORE INTO " + schema + ".messages (" + columns + ") SELECT " + columns +
+                     " FROM messages WHERE id IN (" + batch + ")");
+                 PreparedStatement delete = connection.prepareStatement("DELETE FROM messages WHERE id IN (" + batch + ")")) {
+                index.setInt(1, year);
+                index.setLong(2, upTo);
+                index.setInt(3, limit);
+                index.executeUpdate();
+                connection.commit();
+                copy.setLong(1, upTo);
+                copy.setInt(2, limit);
+                copy.executeUpdate();
+                connection.commit();
+                delete.setLong(1, upTo);
+                delete.setInt(2, limit);
+                int moved = delete.executeUpdate();
+                connection.commit();
+                Metrics.DB_WRITE.recordSince(start);
+                return moved;
+            }
+        } catch (SQLException e) {
+            logger.error("Error moving messages to the {} archive", year, e);
+            rollbackConnection();
+            return -1;
+        } finally {
+            dbLock.unlock();
+        }
+    }
+
+    // 调用方持有数据库锁
+    private String readState(String key) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT value FROM db_state WHERE key = ?")) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString("value") : null;
+            }
+        }
+    }
+
+    // 调用方持有数据库锁并负责提交
+    private void writeState(String key, String value) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("INSERT OR REPLACE INTO db_state (key, value) VALUES (?, ?)")) {
+            pstmt.setString(1, key);
+            pstmt.setString(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public void saveVCard(String jid, String photoHash, String vcardXml) {
+        EdtGuard.checkNotEdt("ChatDatabase.saveVCard");
+        String sql = "INSERT OR REPLACE INTO vcards (jid, photo_hash, vcard_xml, updated_at) VALUES (?, ?, ?, ?)";
+        lockDb();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, jid);
+            pstmt.setString(2, photoHash);
+            pstmt.setString(3, vcardXml);
+            pstmt.setLong(4, System.currentTimeMillis());
+            long start = System.nanoTime();
+            pstmt.executeUpdate();
+            connection.commit();
+            Metrics.DB_WRITE.recordSince(start);
+        } catch (SQLException e) {
+            logger.error("Error saving vCard for {}", jid, e);
+            rollbackConnection();
+        } finally {
+            dbLock.unlock();
+        }
+    }
+
+    // 没有缓存时返回 null
+    public CachedVCard getVCard(String jid) {
+        EdtGuard.checkNotEdt("ChatDatabase.getVCard");
+        String sql = "SELECT photo_hash, vcard_xml, updated_at FROM vcards WHERE jid = ?";
+        lockDb();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, jid);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new CachedVCard(jid, rs.getString("photo_hash"), rs.getString("vcard_xml"),
+                        rs.getLong("updated_at"));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading cached vCard for {}", jid, e);
+        } finally {
+            dbLock.unlock();
+        }
+        return null;
+    }
+
+    // 从服务器存档取得的一条消息
+    public static class ArchivedMessage {
+        private final String stanzaId;
+        private final String originId;
+        private final String senderJid;
+        private final String receiverJid;
+        private final String body;
+        private final long timestamp;
+        private final boolean isLocal;
+
+        public ArchivedMessage(String stanzaId, String originId, String senderJid, String receiverJid,
+                               String body, long timestamp, boolean isLocal) {
+            this.stanzaId = stanzaId;
+            this.originId = originId;
+            this.senderJid = senderJid;
+            this.receiverJid = receiverJid;
+            this.body = body;
+            this.timestamp = timestamp;
+            this.isLocal = isLocal;
+        }
+
+        public String getStanzaId() { return stanzaId; }
+        public String getOriginId() { return originId; }
+        public String getSenderJid() { return senderJid; }
+        public String getReceiverJid() { return receiverJid; }
+        public String getBody() { return body; }
+        public long getTimestamp() { return timestamp; }
+        public boolean isLocal() { return isLocal; }
+    }
+
+    public static class CachedVCard {
+        private final String jid;
+        private final String photoHash;
+        private final String vcardXml;
+        private final long updatedAt;
+
+        public CachedVCard(String jid, String photoHash, String vcardXml, long updatedAt) {
+            this.jid = jid;
+            this.photoHash = photoHash;
+            this.vcardXml = vcardXml;
+            this.updatedAt = updatedAt;
+        }
+
+        public String getJid() { return jid; }
+        public String getPhotoHash() { return photoHash; }
+        public String getVcardXml() { return vcardXml; }
+        public long getUpdatedAt() { return updatedAt; }
+    }
+
     public static class ChatMessage {
+        // 数据库中的 id，不是从数据库读出的消息为 0
+        private final long id;
         private final String senderJid;
-        private final String message;
+        private String message;
+        // 尚未解压的正文，解压后置为 null
+        private byte[] compressedMessage;
         private final Timestamp timestamp;
         private final boolean isLocal;
         private final boolean isRead;
 
         public ChatMessage(String senderJid, String message, Timestamp timestamp, boolean isLocal, boolean isRead) {
+            this(0, senderJid, message, timestamp, isLocal, isRead);
+        }
+
+        public ChatMessage(long id, String senderJid, String message, Timestamp timestamp, boolean isLocal, boolean isRead) {
+            this.id = id;
             this.senderJid = senderJid;
             this.message = message;
             this.timestamp = timestamp;
@@ -306,17 +1379,32 @@ public class ChatDatabase {
             this.isRead = isRead;
         }
 
+        ChatMessage(long id, String senderJid, byte[] compressedMessage, Timestamp timestamp, boolean isLocal, boolean isRead) {
+            this(id, senderJid, (String) null, timestamp, isLocal, isRead);
+            this.compressedMessage = compressedMessage;
+        }
+
+        public long getId() { return id; }
         public String getSenderJid() { return senderJid; }
-        public String getMessage() { return message; }
+
+        // 压缩存储的正文在第一次取用（显示）时解压
+        public synchronized String getMessage() {
+            if (message == null && compressedMessage != null) {
+                message = MessageBodies.decompress(compressedMessage);
+                compressedMessage = null;
+            }
+            return message;
+        }
         public Timestamp getTimestamp() { return timestamp; }
         public boolean isLocal() { return isLocal; }
         public boolean isRead() { return isRead; }
 
         @Override
         public String toString() {
+            String text = getMessage();
             return "ChatMessage{" +
                    "senderJid='" + senderJid + '\'' +
-                   ", message='" + (message.length() > 30 ? message.substring(0, 30) + "..." : message) + '\'' +
+                   ", message='" + (text.length() > 30 ? text.substring(0, 30) + "..." : text) + '\'' +
                    ", timestamp=" + timestamp +
                    ", isLocal=" + isLocal +
                    ", isRead=" + isRead +
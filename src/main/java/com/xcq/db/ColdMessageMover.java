@@ -0,0 +1,54 @@
+package com.xcq.db;
+
+import com.xcq.util.ExecutorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 定期把超过 hotMonths 个月的已读消息移到按年份划分的归档库，主数据库保持较小，WAL 检查点、备份和 VACUUM 都更快。
+// 分批执行，每批两个短事务，批之间暂停；移动了消息后空闲页较多时整理主数据库文件
+public class ColdMessageMover {
+    private static final Logger logger = LoggerFactory.getLogger(ColdMessageMover.class);
+    private static final int BATCH_SIZE = 500;
+    private static final long PAUSE_MS = 50;
+    // 启动后稍等再开始，不与登录和存档同步争抢数据库锁
+    private static final long INITIAL_DELAY_MINUTES = 5;
+    private static final long PERIOD_HOURS = 24;
+
+    private final ScheduledExecutorService executor = ExecutorProvider.getInstance().newScheduler("cold-message-mover");
+
+    public void start(ChatDatabase db, int hotMonths) {
+        executor.scheduleWithFixedDelay(() -> run(db, hotMonths), INITIAL_DELAY_MINUTES, PERIOD_HOURS * 60, TimeUnit.MINUTES);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // 返回移动的消息数
+    private int run(ChatDatabase db, int hotMonths) {
+        long start = System.nanoTime();
+        long cutoff = ZonedDateTime.now().minusMonths(hotMonths).toInstant().toEpochMilli();
+        int total = 0;
+        int count;
+        while ((count = db.archiveOldMessages(cutoff, BATCH_SIZE)) >= 0) {
+            total += count;
+            try {
+                Thread.sleep(PAUSE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.info("Moving old messages interrupted after {} messages", total);
+                return total;
+            }
+        }
+        if (total > 0) {
+            logger.info("Moved {} messages older than {} months to archives in {} ms",
+                total, hotMonths, (System.nanoTime() - start) / 1_000_000);
+            db.compactIfFragmented();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,234 @@
+package com.xcq.db;
+
+import com.xcq.metrics.Metrics;
+import com.xcq.util.ExecutorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConnection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// 用 SQLite 在线备份接口定期把数据库复制到数据库目录下的 backups/<时间>/，不需要停止程序。
+// 备份使用单独的连接，在一个读事务中按快照复制，WAL 模式下不阻塞 saveMessage 和历史查询，也不会因为期间的写入重新开始；
+// 每步复制少量页后暂停。复制完成后检查完整性并核对消息数，通过后才从 .tmp 目录改名，保留最近 keep 份
+public class DatabaseBackup {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseBackup.class);
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final Pattern NAME_PATTERN = Pattern.compile("\\d{8}-\\d{6}");
+    private static final String TMP_SUFFIX = ".tmp";
+    // 每步 256 页（默认页大小下 1 MB），步之间暂停
+    private static final int PAGES_PER_STEP = 256;
+    private static final long STEP_PAUSE_MS = 20;
+    // 源库正被写入锁定时的重试
+    private static final int BUSY_RETRY_MS = 100;
+    private static final int BUSY_RETRIES = 50;
+    // 启动后至少等待这么久，不与登录和存档同步争抢磁盘
+    private static final long INITIAL_DELAY_MINUTES = 10;
+
+    private final File backupDir;
+    private final int keep;
+    private final ScheduledExecutorService executor = ExecutorProvider.getInstance().newScheduler("db-backup");
+
+    public DatabaseBackup(File backupDir, int keep) {
+        this.backupDir = backupDir;
+        this.keep = Math.max(1, keep);
+    }
+
+    // 数据库目录下的 backups
+    public static File defaultDirectory(ChatDatabase db) {
+        return new File(db.getFile().getAbsoluteFile().getParentFile(), "backups");
+    }
+
+    // 距上次备份已超过间隔时在启动后不久备份，之后每隔 intervalHours 小时备份一次
+    public void start(ChatDatabase db, int intervalHours) {
+        long interval = TimeUnit.HOURS.toMinutes(intervalHours);
+        File latest = latestBackup();
+        long age = latest == null ? interval
+            : Duration.between(LocalDateTime.parse(latest.getName(), NAME_FORMAT), LocalDateTime.now()).toMinutes();
+        long delay = Math.max(INITIAL_DELAY_MINUTES, interval - age);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                backup(db);
+            } catch (Exception e) {
+                logger.error("Database backup failed", e);
+            }
+        }, delay, interval, TimeUnit.MINUTES);
+        logger.info("Database backup scheduled every {} hours, next in {} minutes", intervalHours, delay);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // 备份数据库和所有归档库，返回这次备份的目录。未改动的归档库与上一份备份共用文件（硬链接）
+    public File backup(ChatDatabase db) throws SQLException, IOException {
+        long start = System.nanoTime();
+        File previous = latestBackup();
+        String name = LocalDateTime.now().format(NAME_FORMAT);
+        File tmpDir = new File(backupDir, name + TMP_SUFFIX);
+        File target = new File(backupDir, name);
+        if (!tmpDir.mkdirs()) {
+            throw new IOException("Cannot create backup directory " + tmpDir.getAbsolutePath());
+        }
+        try {
+            File dbFile = db.getFile();
+            File copy = new File(tmpDir, dbFile.getName());
+            long messages = copyDatabase(dbFile, copy, true);
+            verify(copy, messages);
+            for (File archive : db.getArchiveFiles()) {
+                File archiveCopy = new File(tmpDir, archive.getName());
+                if (!linkUnchanged(archive, previous, archiveCopy)) {
+                    copyDatabase(archive, archiveCopy, false);
+                    verify(archiveCopy, -1);
+                }
+            }
+            if (!tmpDir.renameTo(target)) {
+                throw new IOException("Cannot rename " + tmpDir.getAbsolutePath() + " to " + target.getName());
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            Metrics.DB_BACKUP_FAILURES.increment();
+            deleteRecursively(tmpDir);
+            throw e;
+        }
+        Metrics.DB_BACKUP.recordSince(start);
+        logger.info("Backed up {} to {} in {} ms", db.getFile().getName(), target.getAbsolutePath(),
+            (System.nanoTime() - start) / 1_000_000);
+        rotate();
+        return target;
+    }
+
+    // 把 source 复制到 dest。snapshot 为 true 时在读事务中复制，返回快照中的消息数供核对；
+    // 归档库不使用 WAL，长时间的读事务会挡住归档任务的写入，因此逐步加锁，期间被修改时从头复制，返回 -1
+    private static long copyDatabase(File source, File dest, boolean snapshot) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + source.getPath())) {
+            long messages = -1;
+            if (snapshot) {
+                connection.setAutoCommit(false);
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM messages")) {
+                    rs.next();
+                    messages = rs.getLong(1);
+                }
+            }
+            int rc = connection.unwrap(SQLiteConnection.class).getDatabase().backup("main", dest.getPath(),
+                (remaining, pageCount) -> pause(), BUSY_RETRY_MS, BUSY_RETRIES, PAGES_PER_STEP);
+            if (snapshot) {
+                connection.rollback();
+            }
+            if (rc != 0) {
+                throw new SQLException("Backup of " + source.getName() + " failed with SQLite code " + rc);
+            }
+            return messages;
+        }
+    }
+
+    private static void pause() {
+        if (Thread.currentThread().isInterrupted()) {
+            // 正在退出，尽快复制完
+            return;
+        }
+        try {
+            Thread.sleep(STEP_PAUSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 检查副本的完整性，expectedMessages 不为 -1 时核对消息数；副本改为不使用 WAL，备份只有一个文件
+    private static void verify(File copy, long expectedMessages) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + copy.getPath());
+             Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("PRAGMA integrity_check")) {
+                String result = rs.next() ? rs.getString(1) : null;
+                if (!"ok".equals(result)) {
+                    throw new SQLException("Backup " + copy.getName() + " failed integrity check: " + result);
+                }
+            }
+            if (expectedMessages >= 0) {
+                try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM messages")) {
+                    long count = rs.next() ? rs.getLong(1) : -1;
+                    if (count != expectedMessages) {
+                        throw new SQLException("Backup " + copy.getName() + " has " + count +
+                            " messages, expected " + expectedMessages);
+                    }
+                }
+            }
+            statement.execute("PRAGMA journal_mode = DELETE");
+        }
+    }
+
+    // 上一份备份之后没有改动过的归档库直接链接到上一份中的文件；文件系统不支持硬链接时返回 false
+    private static boolean linkUnchanged(File archive, File previous, File dest) {
+        if (previous == null) {
+            return false;
+        }
+        File old = new File(previous, archive.getName());
+        if (!old.isFile() || archive.lastModified() > old.lastModified()) {
+            return false;
+        }
+        try {
+            Files.createLink(dest.toPath(), old.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("Cannot link {} from previous backup", archive.getName(), e);
+            return false;
+        }
+    }
+
+    // 最近的一份完整备份，没有时返回 null
+    private File latestBackup() {
+        File[] backups = listBackups();
+        return backups.length == 0 ? null : backups[backups.length - 1];
+    }
+
+    // 按时间从早到晚
+    private File[] listBackups() {
+        File[] backups = backupDir.listFiles(f -> f.isDirectory() && NAME_PATTERN.matcher(f.getName()).matches());
+        if (backups == null) {
+            return new File[0];
+        }
+        Arrays.sort(backups);
+        return backups;
+    }
+
+    // 只保留最近 keep 份，并清理中断时留下的 .tmp 目录
+    private void rotate() {
+        File[] backups = listBackups();
+        for (int i = 0; i < backups.length - keep; i++) {
+            deleteRecursively(backups[i]);
+            logger.info("Removed old backup {}", backups[i].getName());
+        }
+        File[] partial = backupDir.listFiles(f -> f.isDirectory() && f.getName().endsWith(TMP_SUFFIX));
+        if (partial != null) {
+            for (File dir : partial) {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete {}", file.getAbsolutePath());
+        }
+    }
+}
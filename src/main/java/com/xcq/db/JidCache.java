@@ -0,0 +1,44 @@
+package com.xcq.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// jids 表中 JID 与 id 的双向缓存，按最近使用淘汰。只在持有数据库锁时访问
+final class JidCache {
+    private final Map<String, Integer> ids;
+    private final Map<Integer, String> jids;
+
+    JidCache(int capacity) {
+        this.ids = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.jids = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    Integer idOf(String jid) {
+        return ids.get(jid);
+    }
+
+    String jidOf(int id) {
+        return jids.get(id);
+    }
+
+    void put(String jid, int id) {
+        ids.put(jid, id);
+        jids.put(id, jid);
+    }
+
+    // 事务回滚后新插入的 id 可能已经不存在
+    void clear() {
+        ids.clear();
+        jids.clear();
+    }
+}
@@ -0,0 +1,59 @@
+package com.xcq.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// 消息正文的压缩存储。超过阈值的正文用 Deflate 压缩后以 BLOB 写入 message 列，compressed 列记为 1
+final class MessageBodies {
+    private static final Logger logger = LoggerFactory.getLogger(MessageBodies.class);
+    // 压缩后至少要小这么多才值得存为压缩格式
+    private static final double MIN_SAVING = 0.1;
+    static final String UNREADABLE = "[消息内容已损坏]";
+
+    private MessageBodies() {}
+
+    // 正文不足 threshold 字节、阈值为 0 或压缩后没有明显变小时返回 null，按原文存储
+    static byte[] compress(String body, int threshold) {
+        if (threshold <= 0 || body == null || body.length() < threshold / 4) {
+            return null;
+        }
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < threshold) {
+            return null;
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.size() <= raw.length * (1 - MIN_SAVING) ? out.toByteArray() : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(byte[] data) {
+        Inflater inflater = new Inflater(true);
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data), inflater)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.error("Failed to decompress message body of {} bytes", data.length, e);
+            return UNREADABLE;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.xcq.metrics;
+
+public interface CounterMXBean {
+    String getHelp();
+
+    long getCount();
+}
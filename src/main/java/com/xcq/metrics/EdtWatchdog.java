@@ -0,0 +1,218 @@
+package com.xcq.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// EDT 响应监视：定期向事件队列投递心跳任务并记录排队延迟；
+// 心跳超过阈值仍未执行时采样 EDT 的调用栈，卡顿结束后按调用位置汇总，定期输出到日志
+public final class EdtWatchdog {
+    private static final Logger logger = LoggerFactory.getLogger(EdtWatchdog.class);
+    private static final long HEARTBEAT_INTERVAL_MS = 200;
+    private static final long REPORT_INTERVAL_MS = 60_000;
+    // 一次卡顿中最多采样的次数
+    private static final int MAX_SAMPLES_PER_STALL = 5;
+    private static final int MAX_STACK_DEPTH = 25;
+
+    private final long thresholdNanos;
+    private final ScheduledExecutorService scheduler;
+    // 以下字段只在 edt-watchdog 线程中访问
+    private final Map<String, SlowTaskStats> slowTasks = new HashMap<>();
+    private long heartbeatPostedAt;
+    private boolean heartbeatPending;
+    private int samplesThisStall;
+    private StackTraceElement[] firstSample;
+    private long lastReportAt = System.nanoTime();
+
+    private volatile Thread edtThread;
+    private volatile long lastLagMillis;
+    private volatile long stallCount;
+    // 以下两项只在 EDT 中访问
+    private JWindow overlay;
+    private javax.swing.Timer overlayRefresh;
+
+    private EdtWatchdog(long thresholdMs) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "edt-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static EdtWatchdog start(long thresholdMs, boolean showOverlay) {
+        EdtWatchdog watchdog = new EdtWatchdog(thresholdMs);
+        watchdog.scheduler.scheduleWithFixedDelay(watchdog::tick,
+            HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (showOverlay) {
+            SwingUtilities.invokeLater(watchdog::showOverlay);
+        }
+        logger.info("EDT watchdog started (threshold {} ms)", thresholdMs);
+        return watchdog;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        SwingUtilities.invokeLater(() -> {
+            if (overlayRefresh != null) {
+                overlayRefresh.stop();
+                overlayRefresh = null;
+            }
+            if (overlay != null) {
+                overlay.dispose();
+                overlay = null;
+            }
+        });
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        if (heartbeatPending) {
+            // 上一个心跳还在排队：超过阈值后采样 EDT 当前在做什么
+            if (now - heartbeatPostedAt >= thresholdNanos * (samplesThisStall + 1)
+                && samplesThisStall < MAX_SAMPLES_PER_STALL) {
+                sample();
+            }
+        } else {
+            postHeartbeat(now);
+        }
+        if (now - lastReportAt >= TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MS)) {
+            report();
+            lastReportAt = now;
+        }
+    }
+
+    private void postHeartbeat(long postedAt) {
+        heartbeatPending = true;
+        heartbeatPostedAt = postedAt;
+        SwingUtilities.invokeLater(() -> {
+            edtThread = Thread.currentThread();
+            long lag = System.nanoTime() - postedAt;
+            Metrics.EDT_QUEUE_LAG.record(lag, TimeUnit.NANOSECONDS);
+            lastLagMillis = TimeUnit.NANOSECONDS.toMillis(lag);
+            scheduler.execute(() -> heartbeatCompleted(lag));
+        });
+    }
+
+    private void heartbeatCompleted(long lag) {
+        heartbeatPending = false;
+        if (lag >= thresholdNanos) {
+            stallCount++;
+            Metrics.EDT_STALLS.increment();
+            Metrics.EDT_STALL_DURATION.record(lag, TimeUnit.NANOSECONDS);
+            String location = firstSample != null ? describe(firstSample) : "<no sample>";
+            slowTasks.computeIfAbsent(location, key -> new SlowTaskStats(firstSample)).add(lag);
+            logger.warn("EDT blocked for {} ms in {}", TimeUnit.NANOSECONDS.toMillis(lag), location);
+        }
+        samplesThisStall = 0;
+        firstSample = null;
+    }
+
+    private void sample() {
+        Thread edt = edtThread;
+        if (edt == null) {
+            return;
+        }
+        StackTraceElement[] stack = edt.getStackTrace();
+        samplesThisStall++;
+        if (firstSample == null) {
+            firstSample = stack;
+            if (logger.isDebugEnabled()) {
+                logger.debug("EDT blocked for more than {} ms:{}",
+                    TimeUnit.NANOSECONDS.toMillis(thresholdNanos), format(stack));
+            }
+        }
+    }
+
+    // 取第一个应用自己的栈帧作为卡顿位置，找不到时使用栈顶
+    private static String describe(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().startsWith("com.xcq.")) {
+                return frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+            }
+        }
+        return stack.length > 0 ? stack[0].toString() : "<empty stack>";
+    }
+
+    private static String format(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(stack.length, MAX_STACK_DEPTH); i++) {
+            sb.append("\n\tat ").append(stack[i]);
+        }
+        if (stack.length > MAX_STACK_DEPTH) {
+            sb.append("\n\t... ").append(stack.length - MAX_STACK_DEPTH).append(" more");
+        }
+        return sb.toString();
+    }
+
+    private void report() {
+        if (slowTasks.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, SlowTaskStats>> entries = new ArrayList<>(slowTasks.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().totalNanos, a.getValue().totalNanos));
+        StringBuilder sb = new StringBuilder("Slow EDT tasks in the last ")
+            .append(REPORT_INTERVAL_MS / 1000).append(" s:");
+        for (Map.Entry<String, SlowTaskStats> entry : entries) {
+            SlowTaskStats stats = entry.getValue();
+            sb.append("\n  ").append(entry.getKey())
+                .append(": ").append(stats.count).append(" times, total ")
+                .append(TimeUnit.NANOSECONDS.toMillis(stats.totalNanos)).append(" ms, max ")
+                .append(TimeUnit.NANOSECONDS.toMillis(stats.maxNanos)).append(" ms");
+            if (stats.sample != null) {
+                sb.append(format(stats.sample).replace("\n\t", "\n\t\t"));
+            }
+        }
+        logger.warn(sb.toString());
+        slowTasks.clear();
+    }
+
+    // 调试用的浮动窗口，显示最近一次心跳延迟和累计卡顿次数
+    private void showOverlay() {
+        overlay = new JWindow();
+        overlay.setFocusableWindowState(false);
+        overlay.setAlwaysOnTop(true);
+        JLabel label = new JLabel();
+        label.setOpaque(true);
+        label.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        label.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        overlay.setContentPane(label);
+        overlayRefresh = new javax.swing.Timer(500, e -> {
+            long lag = lastLagMillis;
+            label.setText(String.format("EDT %d ms | 卡顿 %d", lag, stallCount));
+            label.setBackground(TimeUnit.MILLISECONDS.toNanos(lag) >= thresholdNanos
+                ? new Color(255, 200, 200) : new Color(220, 255, 220));
+            overlay.pack();
+            Rectangle bounds = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+            overlay.setLocation(bounds.x + bounds.width - overlay.getWidth() - 4, bounds.y + 4);
+        });
+        overlayRefresh.start();
+        overlay.setVisible(true);
+    }
+
+    private static final class SlowTaskStats {
+        private final StackTraceElement[] sample;
+        private int count;
+        private long totalNanos;
+        private long maxNanos;
+
+        SlowTaskStats(StackTraceElement[] sample) {
+            this.sample = sample;
+        }
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+    }
+}
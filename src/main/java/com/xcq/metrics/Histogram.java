@@ -0,0 +1,114 @@
+package com.xcq.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// 固定桶边界的直方图，记录时只做一次二分查找和几次原子累加
+public class Histogram implements Metric, HistogramMXBean {
+    private final String name;
+    private final String help;
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final AtomicLong maxBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    Histogram(String name, String help, double[] bounds) {
+        this.name = name;
+        this.help = help;
+        this.bounds = bounds.clone();
+        // 最后一个桶对应 +Inf
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int index = Arrays.binarySearch(bounds, value);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        count.increment();
+        sum.add(value);
+        long bits;
+        while (value > Double.longBitsToDouble(bits = maxBits.get())) {
+            if (maxBits.compareAndSet(bits, Double.doubleToLongBits(value))) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getHelp() {
+        return help;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getSum() {
+        return sum.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    @Override
+    public double getMax() {
+        return Double.longBitsToDouble(maxBits.get());
+    }
+
+    @Override
+    public double getP50() {
+        return quantile(0.5);
+    }
+
+    @Override
+    public double getP99() {
+        return quantile(0.99);
+    }
+
+    // 返回包含该分位数的桶的上边界，落在最后一个桶时返回最大值
+    public double quantile(double q) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return bounds[i];
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{le=\"").append(bounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[bounds.length].sum();
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sum.sum()).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,18 @@
+package com.xcq.metrics;
+
+public interface HistogramMXBean {
+    String getHelp();
+
+    long getCount();
+
+    double getSum();
+
+    double getMean();
+
+    double getMax();
+
+    // 由桶边界估算的分位数
+    double getP50();
+
+    double getP99();
+}
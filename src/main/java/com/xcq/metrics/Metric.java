@@ -0,0 +1,13 @@
+package com.xcq.metrics;
+
+// 所有指标的公共部分，同时作为 JMX 管理接口
+public interface Metric {
+    String getName();
+
+    String getHelp();
+
+    // 计数器为累计值，直方图和计时器为观测次数
+    long getCount();
+
+    void writePrometheus(StringBuilder out);
+}
@@ -0,0 +1,66 @@
+package com.xcq.metrics;
+
+// 应用中使用的指标
+public final class Metrics {
+    private static final MetricsRegistry registry = MetricsRegistry.getInstance();
+
+    // 消息
+    public static final Timer MESSAGE_RECEIVE_TO_RENDER = registry.timer("xcq_message_receive_to_render_seconds",
+        "Time from receiving a chat message to inserting it into an open chat window");
+    public static final Counter MESSAGES_RECEIVED = registry.counter("xcq_messages_received_total",
+        "Chat messages received");
+    public static final Counter MESSAGES_BATCHED = registry.counter("xcq_messages_batched_total",
+        "Offline and carbon-copied messages written through the batch path");
+    public static final Counter CARBON_COPIES = registry.counter("xcq_carbon_copies_total",
+        "Message Carbons copies received from the account's other devices");
+
+    public static final Counter ARCHIVE_MESSAGES_SYNCED = registry.counter("xcq_archive_messages_synced_total",
+        "Messages written to ChatDatabase by server archive sync");
+    public static final Timer ARCHIVE_PAGE_FETCH = registry.timer("xcq_archive_page_fetch_seconds",
+        "Round trip of one server archive (MAM) page query");
+
+    // 数据库
+    public static final Timer DB_WRITE = registry.timer("xcq_db_write_seconds",
+        "Duration of ChatDatabase write statements including commit");
+    public static final Timer DB_LOCK_WAIT = registry.timer("xcq_db_lock_wait_seconds",
+        "Time spent waiting for the ChatDatabase lock");
+    public static final Timer DB_BACKUP = registry.timer("xcq_db_backup_seconds",
+        "Duration of online database backups including verification");
+    public static final Counter DB_BACKUP_FAILURES = registry.counter("xcq_db_backup_failures_total",
+        "Online database backups that failed or did not pass verification");
+
+    // 界面
+    public static final Timer EDT_QUEUE_LAG = registry.timer("xcq_edt_queue_lag_seconds",
+        "Delay between posting a heartbeat task to the Swing event queue and its execution");
+    public static final Counter EDT_STALLS = registry.counter("xcq_edt_stalls_total",
+        "Heartbeats delayed past the EDT watchdog threshold");
+    public static final Counter EDT_BLOCKING_CALLS = registry.counter("xcq_edt_blocking_calls_total",
+        "Network or database calls made on the event dispatch thread");
+    public static final Timer EDT_STALL_DURATION = registry.timer("xcq_edt_stall_seconds",
+        "Duration of EDT stalls detected by the watchdog");
+
+    // 联系人资料
+    public static final Counter VCARD_CACHE_HITS = registry.counter("xcq_vcard_cache_hits_total",
+        "vCards served from the local cache without contacting the server");
+    public static final Counter VCARD_FETCHES = registry.counter("xcq_vcard_fetches_total",
+        "vCards fetched from the server");
+
+    // 上传
+    public static final Counter UPLOAD_BYTES = registry.counter("xcq_upload_bytes_total",
+        "Bytes uploaded by FileUploader");
+    public static final Timer UPLOAD_DURATION = registry.timer("xcq_upload_seconds",
+        "Duration of file uploads");
+    public static final Histogram UPLOAD_THROUGHPUT = registry.histogram("xcq_upload_throughput_bytes_per_second",
+        "Throughput of individual file uploads",
+        16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024, 64 * 1024 * 1024);
+    public static final Counter UPLOAD_FAILURES = registry.counter("xcq_upload_failures_total",
+        "Failed file uploads");
+
+    // 连接
+    public static final Counter XMPP_RECONNECTS = registry.counter("xcq_xmpp_reconnects_total",
+        "Successful XMPP re-authentications after the first login");
+    public static final Counter XMPP_CONNECTION_ERRORS = registry.counter("xcq_xmpp_connection_errors_total",
+        "XMPP connections closed because of an error");
+
+    private Metrics() {}
+}
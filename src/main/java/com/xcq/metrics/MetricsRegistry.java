@@ -0,0 +1,82 @@
+package com.xcq.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// 进程内的指标注册表，每个指标同时注册为 JMX MBean（com.xcq:type=Metrics,name=...）
+public final class MetricsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    // 按名称排序，导出结果稳定
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public Counter counter(String name, String help) {
+        return register(name, Counter.class, n -> new Counter(n, help), CounterMXBean.class);
+    }
+
+    public Timer timer(String name, String help) {
+        return register(name, Timer.class, n -> new Timer(n, help), HistogramMXBean.class);
+    }
+
+    public Histogram histogram(String name, String help, double... bounds) {
+        return register(name, Histogram.class, n -> new Histogram(n, help, bounds), HistogramMXBean.class);
+    }
+
+    public Collection<Metric> getMetrics() {
+        return Collections.unmodifiableCollection(new ArrayList<>(metrics.values()));
+    }
+
+    // Prometheus 文本格式
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics.values()) {
+            metric.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    // 同名指标只创建一次，重复获取返回已有实例
+    private <T extends Metric> T register(String name, Class<T> type, Function<String, T> factory, Class<?> mbeanInterface) {
+        Metric metric = metrics.computeIfAbsent(name, n -> {
+            T created = factory.apply(n);
+            registerMBean(created, mbeanInterface);
+            return created;
+        });
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void registerMBean(Metric metric, Class<?> mbeanInterface) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.xcq:type=Metrics,name=" + metric.getName());
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new StandardMBean(metric, (Class) mbeanInterface, true), objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to register metric {} with JMX", metric.getName(), e);
+        }
+    }
+}
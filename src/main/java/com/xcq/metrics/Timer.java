@@ -0,0 +1,44 @@
+package com.xcq.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// 以秒为单位记录耗时的直方图
+public final class Timer extends Histogram {
+    // 100 微秒到 10 秒
+    static final double[] DEFAULT_BOUNDS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+        0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    Timer(String name, String help) {
+        super(name, help, DEFAULT_BOUNDS);
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        observe(unit.toNanos(duration) / 1e9);
+    }
+
+    // 记录从 startNanos（System.nanoTime()）到现在的耗时
+    public void recordSince(long startNanos) {
+        observe((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    public void time(Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            recordSince(start);
+        }
+    }
+
+    public <T> T time(Supplier<T> task) {
+        long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            recordSince(start);
+        }
+    }
+}
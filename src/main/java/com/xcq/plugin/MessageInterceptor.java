@@ -0,0 +1,14 @@
+package com.xcq.plugin;
+
+// 插件的消息处理钩子，通过 MessagePipeline.register() 注册
+public interface MessageInterceptor {
+    enum Stage {
+        INBOUND,   // 收到消息后、分发给界面之前
+        OUTBOUND,  // 发送到服务器之前
+        PERSIST    // 写入数据库之前
+    }
+
+    // 返回修改后的消息正文，返回 null 表示不修改。
+    // 连续多次超出时间预算的拦截器会被转为异步执行，此时只能观察消息，返回值被忽略；回到预算内后恢复同步
+    String intercept(Stage stage, String from, String to, String body);
+}
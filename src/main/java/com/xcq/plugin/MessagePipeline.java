@@ -0,0 +1,254 @@
+package com.xcq.plugin;
+
+import com.xcq.core.ConfigKeys;
+import com.xcq.core.Configuration;
+import com.xcq.plugin.MessageInterceptor.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// 消息处理管道：按顺序调用插件注册的拦截器，并对每个拦截器计时。
+// 拦截器在调用线程中直接执行；连续多次超出预算的拦截器转为异步观察模式，此时它对正文的修改不再生效，
+// 在异步线程中连续多次回到预算内后恢复同步。连续出错或异步队列积压的拦截器会被停用
+public class MessagePipeline {
+    private static final Logger logger = LoggerFactory.getLogger(MessagePipeline.class);
+    private static final int ASYNC_QUEUE_CAPACITY = 200;
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    // 偶尔一次超时（类加载、GC）不降级
+    static final int MAX_CONSECUTIVE_OVERRUNS = 3;
+    static final int RESTORE_AFTER_FAST_CALLS = 20;
+
+    private static MessagePipeline instance;
+
+    private final Map<Stage, List<Registration>> registrations = new EnumMap<>(Stage.class);
+    // 每条消息经过管道前调用，插件管理器用它按需激活插件
+    private volatile Consumer<Stage> beforeProcess;
+
+    MessagePipeline() {
+        for (Stage stage : Stage.values()) {
+            registrations.put(stage, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    public static synchronized MessagePipeline getInstance() {
+        if (instance == null) {
+            instance = new MessagePipeline();
+        }
+        return instance;
+    }
+
+    public void register(String pluginName, Stage stage, MessageInterceptor interceptor) {
+        registrations.get(stage).add(new Registration(pluginName, stage, interceptor));
+        logger.info("Plugin {} registered a {} interceptor", pluginName, stage);
+    }
+
+    public void unregister(String pluginName) {
+        for (List<Registration> list : registrations.values()) {
+            for (Registration registration : list) {
+                if (registration.pluginName.equals(pluginName)) {
+                    list.remove(registration);
+                    registration.shutdown();
+                }
+            }
+        }
+    }
+
+    public void setBeforeProcess(Consumer<Stage> hook) {
+        this.beforeProcess = hook;
+    }
+
+    public boolean hasInterceptors(Stage stage) {
+        return !registrations.get(stage).isEmpty();
+    }
+
+    // 依次执行该阶段的拦截器，返回最终的消息正文
+    public String process(Stage stage, String from, String to, String body) {
+        Consumer<Stage> hook = beforeProcess;
+        if (hook != null) {
+            hook.accept(stage);
+        }
+        if (registrations.get(stage).isEmpty()) {
+            return body;
+        }
+        return process(stage, from, to, body, Configuration.getInstance().get(ConfigKeys.PLUGIN_INTERCEPTOR_BUDGET_MS));
+    }
+
+    String process(Stage stage, String from, String to, String body, long budgetMs) {
+        List<Registration> list = registrations.get(stage);
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        String current = body;
+        for (Registration registration : list) {
+            current = registration.invoke(from, to, current, budgetNanos);
+            if (registration.mode == Mode.DISABLED) {
+                list.remove(registration);
+            }
+        }
+        return current;
+    }
+
+    public List<InterceptorStats> getStats() {
+        List<InterceptorStats> stats = new ArrayList<>();
+        for (List<Registration> list : registrations.values()) {
+            for (Registration registration : list) {
+                stats.add(registration.snapshot());
+            }
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    public enum Mode { SYNC, ASYNC, DISABLED }
+
+    private static final class Registration {
+        private final String pluginName;
+        private final Stage stage;
+        private final MessageInterceptor interceptor;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        // 不同会话的消息可能在多个线程中同时经过拦截器
+        private volatile Mode mode = Mode.SYNC;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        // 同步模式下连续超出预算的次数；异步模式下连续在预算内的次数
+        private final AtomicInteger streak = new AtomicInteger();
+
+        Registration(String pluginName, Stage stage, MessageInterceptor interceptor) {
+            this.pluginName = pluginName;
+            this.stage = stage;
+            this.interceptor = interceptor;
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(ASYNC_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "plugin-" + pluginName + "-" + stage.name().toLowerCase());
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
+
+        String invoke(String from, String to, String body, long budgetNanos) {
+            Mode current = mode;
+            if (current == Mode.SYNC) {
+                String changed = timed(from, to, body, budgetNanos);
+                return changed != null ? changed : body;
+            }
+            if (current == Mode.ASYNC) {
+                try {
+                    // 只观察，结果丢弃
+                    executor.execute(() -> timed(from, to, body, budgetNanos));
+                } catch (RejectedExecutionException e) {
+                    disable("async queue is full");
+                }
+            }
+            return body;
+        }
+
+        // 出错时返回 null
+        private String timed(String from, String to, String body, long budgetNanos) {
+            long start = System.nanoTime();
+            String result;
+            try {
+                result = interceptor.intercept(stage, from, to, body);
+                consecutiveFailures.set(0);
+            } catch (Exception e) {
+                logger.error("Plugin {} {} interceptor failed", pluginName, stage, e);
+                int failures = consecutiveFailures.incrementAndGet();
+                if (failures >= MAX_CONSECUTIVE_FAILURES) {
+                    disable(failures + " consecutive failures");
+                }
+                result = null;
+            }
+            long elapsed = System.nanoTime() - start;
+            calls.incrementAndGet();
+            totalNanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            adjustMode(elapsed > budgetNanos, budgetNanos);
+            return result;
+        }
+
+        private void adjustMode(boolean overrun, long budgetNanos) {
+            Mode current = mode;
+            if (current == Mode.SYNC) {
+                if (!overrun) {
+                    streak.set(0);
+                } else if (streak.incrementAndGet() >= MAX_CONSECUTIVE_OVERRUNS
+                        && transition(Mode.SYNC, Mode.ASYNC)) {
+                    logger.warn("Plugin {} {} interceptor exceeded {} ms budget {} times in a row, " +
+                            "switching to async mode; its changes to messages are ignored until it speeds up",
+                        pluginName, stage, TimeUnit.NANOSECONDS.toMillis(budgetNanos), MAX_CONSECUTIVE_OVERRUNS);
+                }
+            } else if (current == Mode.ASYNC) {
+                if (overrun) {
+                    streak.set(0);
+                } else if (streak.incrementAndGet() >= RESTORE_AFTER_FAST_CALLS
+                        && transition(Mode.ASYNC, Mode.SYNC)) {
+                    logger.info("Plugin {} {} interceptor is back within budget, switching to sync mode",
+                        pluginName, stage);
+                }
+            }
+        }
+
+        // 模式只按 from -> to 改变，避免已停用的拦截器被恢复
+        private synchronized boolean transition(Mode from, Mode to) {
+            if (mode != from) {
+                return false;
+            }
+            mode = to;
+            streak.set(0);
+            return true;
+        }
+
+        private void disable(String reason) {
+            if (transition(Mode.SYNC, Mode.DISABLED) || transition(Mode.ASYNC, Mode.DISABLED)) {
+                logger.warn("Plugin {} {} interceptor disabled: {}", pluginName, stage, reason);
+                executor.shutdownNow();
+            }
+        }
+
+        synchronized void shutdown() {
+            mode = Mode.DISABLED;
+            executor.shutdownNow();
+        }
+
+        InterceptorStats snapshot() {
+            return new InterceptorStats(pluginName, stage, mode, calls.get(),
+                totalNanos.get() / 1_000, maxNanos.get() / 1_000);
+        }
+    }
+
+    public static final class InterceptorStats {
+        private final String pluginName;
+        private final Stage stage;
+        private final Mode mode;
+        private final long calls;
+        private final long totalMicros;
+        private final long maxMicros;
+
+        InterceptorStats(String pluginName, Stage stage, Mode mode, long calls, long totalMicros, long maxMicros) {
+            this.pluginName = pluginName;
+            this.stage = stage;
+            this.mode = mode;
+            this.calls = calls;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public String getPluginName() { return pluginName; }
+        public Stage getStage() { return stage; }
+        public Mode getMode() { return mode; }
+        public long getCalls() { return calls; }
+        public long getAverageMicros() { return calls == 0 ? 0 : totalMicros / calls; }
+        public long getMaxMicros() { return maxMicros; }
+    }
+}
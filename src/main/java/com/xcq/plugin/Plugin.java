@@ -2,14 +2,19 @@ package com.xcq.plugin;
 
 import com.xcq.core.ApplicationContext;
 
+// 插件通过 META-INF/services/com.xcq.plugin.Plugin 声明实现类，实现类需要无参构造函数
 public interface Plugin {
     String getName();
     String getVersion();
     String getAuthor();
     String getDescription();
-    
+
+    // 在 onEnable 之前调用，传入应用上下文
+    default void initialize(ApplicationContext context) {
+    }
+
     void onEnable();
     void onDisable();
     
     ApplicationContext getContext();
-} 
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.xcq.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+// 从插件 jar 的 MANIFEST.MF 中读取的元数据，读取时不加载任何插件类
+public class PluginDescriptor {
+    public static final String ATTR_NAME = "XCQ-Plugin-Name";
+    public static final String ATTR_VERSION = "XCQ-Plugin-Version";
+    public static final String ATTR_AUTHOR = "XCQ-Plugin-Author";
+    public static final String ATTR_DESCRIPTION = "XCQ-Plugin-Description";
+    // startup：启动时激活；lazy（默认）：收到指定事件时激活，未指定事件时在第一个事件（通常是登录）时激活
+    public static final String ATTR_ACTIVATION = "XCQ-Plugin-Activation";
+    // 逗号分隔的事件名，例如 login,message
+    public static final String ATTR_ACTIVATION_EVENTS = "XCQ-Plugin-Activation-Events";
+
+    public enum Activation { STARTUP, LAZY }
+
+    private final File file;
+    private final String name;
+    private final String version;
+    private final String author;
+    private final String description;
+    private final Activation activation;
+    private final Set<String> activationEvents;
+
+    private PluginDescriptor(File file, String name, String version, String author, String description,
+                             Activation activation, Set<String> activationEvents) {
+        this.file = file;
+        this.name = name;
+        this.version = version;
+        this.author = author;
+        this.description = description;
+        this.activation = activation;
+        this.activationEvents = activationEvents;
+    }
+
+    public static PluginDescriptor read(File jarFile) throws IOException {
+        try (JarFile jar = new JarFile(jarFile)) {
+            Manifest manifest = jar.getManifest();
+            Attributes attributes = manifest != null ? manifest.getMainAttributes() : new Attributes();
+            String fileName = jarFile.getName().replaceFirst("\\.jar$", "");
+
+            String activationValue = value(attributes, ATTR_ACTIVATION, "lazy");
+            Activation activation = "startup".equalsIgnoreCase(activationValue) ? Activation.STARTUP : Activation.LAZY;
+
+            Set<String> events = new LinkedHashSet<>();
+            String eventsValue = value(attributes, ATTR_ACTIVATION_EVENTS, "");
+            Arrays.stream(eventsValue.split(","))
+                .map(String::trim)
+                .filter(e -> !e.isEmpty())
+                .forEach(events::add);
+
+            return new PluginDescriptor(jarFile,
+                value(attributes, ATTR_NAME, fileName),
+                value(attributes, ATTR_VERSION, "unknown"),
+                value(attributes, ATTR_AUTHOR, "unknown"),
+                value(attributes, ATTR_DESCRIPTION, ""),
+                activation,
+                Collections.unmodifiableSet(events));
+        }
+    }
+
+    private static String value(Attributes attributes, String key, String defaultValue) {
+        String value = attributes.getValue(key);
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    public File getFile() { return file; }
+    public String getName() { return name; }
+    public String getVersion() { return version; }
+    public String getAuthor() { return author; }
+    public String getDescription() { return description; }
+    public Activation getActivation() { return activation; }
+    public Set<String> getActivationEvents() { return activationEvents; }
+
+    @Override
+    public String toString() {
+        return name + " " + version + " (" + file.getName() + ")";
+    }
+}
@@ -0,0 +1,97 @@
+package com.xcq.plugin;
+
+import com.xcq.core.ApplicationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+// 单个插件的加载状态，每个插件使用独立的类加载器
+public class PluginHandle {
+    private static final Logger logger = LoggerFactory.getLogger(PluginHandle.class);
+
+    public enum State { DISCOVERED, ACTIVE, FAILED, DISABLED }
+
+    private final PluginDescriptor descriptor;
+    private final ApplicationContext context;
+    private volatile State state = State.DISCOVERED;
+    private volatile Plugin plugin;
+    private URLClassLoader classLoader;
+
+    PluginHandle(PluginDescriptor descriptor, ApplicationContext context) {
+        this.descriptor = descriptor;
+        this.context = context;
+    }
+
+    // 加载插件类并调用 onEnable，已激活或失败过的插件不会重复处理
+    synchronized Plugin activate() {
+        if (state != State.DISCOVERED) {
+            return plugin;
+        }
+        long start = System.nanoTime();
+        try {
+            URL jarUrl = descriptor.getFile().toURI().toURL();
+            classLoader = new URLClassLoader("plugin-" + descriptor.getName(),
+                new URL[]{jarUrl}, PluginManager.class.getClassLoader());
+
+            Iterator<Plugin> providers = ServiceLoader.load(Plugin.class, classLoader).iterator();
+            if (!providers.hasNext()) {
+                throw new IllegalStateException("No " + Plugin.class.getName()
+                    + " provider declared in META-INF/services of " + descriptor.getFile().getName());
+            }
+            Plugin instance = providers.next();
+            instance.initialize(context);
+            instance.onEnable();
+            plugin = instance;
+            state = State.ACTIVE;
+            logger.info("Plugin {} activated in {} ms", descriptor, (System.nanoTime() - start) / 1_000_000);
+        } catch (Throwable e) {
+            logger.error("Failed to activate plugin {}", descriptor, e);
+            state = State.FAILED;
+            closeClassLoader();
+        }
+        return plugin;
+    }
+
+    synchronized void deactivate() {
+        if (state == State.ACTIVE && plugin != null) {
+            try {
+                plugin.onDisable();
+            } catch (Exception e) {
+                logger.error("Error disabling plugin {}", descriptor, e);
+            }
+        }
+        MessagePipeline.getInstance().unregister(descriptor.getName());
+        plugin = null;
+        state = State.DISABLED;
+        closeClassLoader();
+    }
+
+    private void closeClassLoader() {
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                logger.warn("Error closing class loader of plugin {}", descriptor, e);
+            }
+            classLoader = null;
+        }
+    }
+
+    public PluginDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // 已激活时返回插件实例，否则返回 null，不会触发激活
+    public Plugin getPlugin() {
+        return plugin;
+    }
+}
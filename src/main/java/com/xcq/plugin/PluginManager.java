@@ -1,59 +1,203 @@
 package com.xcq.plugin;
 
 import com.xcq.core.ApplicationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PluginManager {
+    private static final Logger logger = LoggerFactory.getLogger(PluginManager.class);
+    // 插件激活事件
+    public static final String EVENT_LOGIN = "login";
+    public static final String EVENT_MESSAGE = "message";
+    // 没有声明激活事件的 lazy 插件在发生第一个事件（通常是登录）时激活
+    private static final String ANY_EVENT = "*";
+    // 启动时等待插件加载的最长时间，超时的插件在后台继续加载
+    private static final long STARTUP_TIMEOUT_MS = 5000;
+
     private final ApplicationContext context;
     private final File pluginDir;
-    private final List<Plugin> loadedPlugins;
+    private final List<PluginHandle> handles = new CopyOnWriteArrayList<>();
+    // 事件名 -> 等待该事件激活的插件
+    private final Map<String, List<PluginHandle>> pendingByEvent = new ConcurrentHashMap<>();
+    // 已经发生过的事件；之后才发现的插件（启动阶段未完成或加载超时）如果等待这些事件则立即激活
+    private final Set<String> firedEvents = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
 
     public PluginManager(ApplicationContext context) {
         this.context = context;
         this.pluginDir = new File("plugins");
-        this.loadedPlugins = new java.util.ArrayList<>();
-        
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+            Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors())),
+            r -> {
+                Thread t = new Thread(r, "plugin-loader-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
         if (!pluginDir.exists()) {
             pluginDir.mkdirs();
         }
+        // 第一条消息经过管道前同步激活等待 message 事件的插件，它们在 onEnable 中注册的拦截器能处理这条消息
+        MessagePipeline.getInstance().setBeforeProcess(stage -> {
+            if (stage == MessageInterceptor.Stage.INBOUND) {
+                fireEventAndWait(EVENT_MESSAGE);
+            }
+        });
     }
 
+    // 并行读取所有插件的元数据，并激活声明为 startup 的插件；最多等待 STARTUP_TIMEOUT_MS
     public void loadPlugins() {
         File[] pluginFiles = pluginDir.listFiles((dir, name) -> name.endsWith(".jar"));
-        if (pluginFiles != null) {
-            for (File pluginFile : pluginFiles) {
-                try {
-                    Plugin plugin = loadPlugin(pluginFile);
-                    if (plugin != null) {
-                        loadedPlugins.add(plugin);
-                        plugin.onEnable();
+        if (pluginFiles == null || pluginFiles.length == 0) {
+            return;
+        }
+
+        List<CompletableFuture<?>> tasks = new ArrayList<>();
+        for (File pluginFile : pluginFiles) {
+            tasks.add(CompletableFuture.supplyAsync(() -> loadPlugin(pluginFile), executor)
+                .thenAccept(handle -> {
+                    if (handle != null && handle.getDescriptor().getActivation() == PluginDescriptor.Activation.STARTUP) {
+                        handle.activate();
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to load plugin {}", pluginFile.getName(), e);
+                    return null;
+                }));
+        }
+
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+                .get(STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Plugin loading exceeded {} ms, remaining plugins continue in background", STARTUP_TIMEOUT_MS);
+        } catch (Exception e) {
+            logger.error("Error while loading plugins", e);
+        }
+        logger.info("Discovered {} plugins", handles.size());
+    }
+
+    public void unloadPlugins() {
+        for (PluginHandle handle : handles) {
+            handle.deactivate();
+        }
+        handles.clear();
+        pendingByEvent.clear();
+        firedEvents.clear();
+        MessagePipeline.getInstance().setBeforeProcess(null);
+    }
+
+    private PluginHandle loadPlugin(File pluginFile) {
+        try {
+            PluginDescriptor descriptor = PluginDescriptor.read(pluginFile);
+            PluginHandle handle = new PluginHandle(descriptor, context);
+            handles.add(handle);
+            logger.info("Discovered plugin {} (activation: {})", descriptor, descriptor.getActivation());
+            if (descriptor.getActivation() == PluginDescriptor.Activation.LAZY && !waitForEvents(handle)) {
+                handle.activate();
+            }
+            return handle;
+        } catch (Exception e) {
+            logger.error("Failed to read plugin manifest from {}", pluginFile.getName(), e);
+            return null;
+        }
+    }
+
+    // 把插件登记到它等待的事件下；其中有事件已经发生过时不登记，返回 false
+    private boolean waitForEvents(PluginHandle handle) {
+        Set<String> events = handle.getDescriptor().getActivationEvents();
+        if (events.isEmpty()) {
+            events = Collections.singleton(ANY_EVENT);
+        }
+        synchronized (pendingByEvent) {
+            for (String event : events) {
+                if (firedEvents.contains(event)) {
+                    return false;
                 }
             }
+            for (String event : events) {
+                pendingByEvent.computeIfAbsent(event, e -> new CopyOnWriteArrayList<>()).add(handle);
+            }
         }
+        return true;
     }
 
-    public void unloadPlugins() {
-        for (Plugin plugin : loadedPlugins) {
-            try {
-                plugin.onDisable();
-            } catch (Exception e) {
-                e.printStackTrace();
+    // 通知发生了某个事件，在后台激活等待该事件的插件；事件已发生过时开销很小
+    public void fireEvent(String event) {
+        for (PluginHandle handle : takeWaiting(event)) {
+            executor.execute(handle::activate);
+        }
+    }
+
+    // 在调用线程中激活等待该事件的插件，返回时它们的 onEnable 已执行完；不要在 EDT 中调用
+    public void fireEventAndWait(String event) {
+        for (PluginHandle handle : takeWaiting(event)) {
+            handle.activate();
+        }
+    }
+
+    private List<PluginHandle> takeWaiting(String event) {
+        if (firedEvents.contains(event)) {
+            return Collections.emptyList();
+        }
+        List<PluginHandle> waiting = new ArrayList<>();
+        synchronized (pendingByEvent) {
+            if (!firedEvents.add(event)) {
+                return Collections.emptyList();
+            }
+            List<PluginHandle> handles = pendingByEvent.remove(event);
+            if (handles != null) {
+                waiting.addAll(handles);
+            }
+            if (firedEvents.add(ANY_EVENT)) {
+                handles = pendingByEvent.remove(ANY_EVENT);
+                if (handles != null) {
+                    waiting.addAll(handles);
+                }
             }
         }
-        loadedPlugins.clear();
+        return waiting;
     }
 
-    private Plugin loadPlugin(File pluginFile) {
-        // TODO: 实现插件加载逻辑
-        return null;
+    // 按名称获取插件，未激活的插件在此时激活
+    public Optional<Plugin> getPlugin(String name) {
+        for (PluginHandle handle : handles) {
+            if (handle.getDescriptor().getName().equals(name)) {
+                return Optional.ofNullable(handle.activate());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public List<PluginHandle> getPluginHandles() {
+        return Collections.unmodifiableList(handles);
     }
 
     public List<Plugin> getLoadedPlugins() {
-        return java.util.Collections.unmodifiableList(loadedPlugins);
+        List<Plugin> active = new ArrayList<>();
+        for (PluginHandle handle : handles) {
+            Plugin plugin = handle.getPlugin();
+            if (plugin != null) {
+                active.add(plugin);
+            }
+        }
+        return Collections.unmodifiableList(active);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package com.xcq.service;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.ChatMessage;
+import com.xcq.util.ExecutorProvider;
+import com.xcq.xmpp.XMPPClient;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.roster.Roster;
+import org.jivesoftware.smack.roster.RosterEntry;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jxmpp.jid.BareJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+// 界面使用的异步服务：网络和数据库操作在专用线程上执行，返回的 Future 在 EDT 中完成，
+// 界面代码可以直接在回调里更新组件
+public class AsyncService {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncService.class);
+
+    private final XMPPClient xmppClient;
+    // 发送类操作按提交顺序执行，保证消息和状态的先后次序
+    private final ExecutorService sendExecutor = ExecutorProvider.getInstance().newBoundedExecutor("xmpp-send", 1);
+    // SQLite 只有一个连接，数据库操作排队执行即可
+    private final ExecutorService dbExecutor = ExecutorProvider.getInstance().newBoundedExecutor("db-io", 1);
+
+    public AsyncService(XMPPClient xmppClient) {
+        this.xmppClient = xmppClient;
+    }
+
+    // XMPP
+
+    // 完成时得到消息的 id
+    public CompletableFuture<String> sendMessage(String to, String text) {
+        return supply(sendExecutor, () -> xmppClient.sendMessage(to, text));
+    }
+
+    public CompletableFuture<Void> sendPresence(Presence presence) {
+        return run(sendExecutor, () -> connection().sendStanza(presence));
+    }
+
+    public CompletableFuture<Void> acceptSubscription(String jid) {
+        return run(sendExecutor, () -> xmppClient.acceptSubscription(jid));
+    }
+
+    public CompletableFuture<Void> rejectSubscription(String jid) {
+        return run(sendExecutor, () -> xmppClient.rejectSubscription(jid));
+    }
+
+    // group 为 null 时添加到未分组
+    public CompletableFuture<Void> addContact(BareJid jid, String group) {
+        return run(sendExecutor, () -> {
+            Roster roster = Roster.getInstanceFor(connection());
+            if (group != null) {
+                roster.createGroup(group);
+                roster.createEntry(jid, null, new String[]{group});
+            } else {
+                roster.createEntry(jid, null, new String[0]);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> removeContact(RosterEntry entry) {
+        return run(sendExecutor, () -> Roster.getInstanceFor(connection()).removeEntry(entry));
+    }
+
+    public CompletableFuture<Void> renameContact(RosterEntry entry, String name) {
+        return run(sendExecutor, () -> entry.setName(name));
+    }
+
+    // 排在已提交的发送之后；断开前先写入批量接收中尚未保存的消息
+    public CompletableFuture<Void> disconnect() {
+        return run(sendExecutor, xmppClient::disconnect);
+    }
+
+    // 数据库
+
+    public CompletableFuture<List<ChatMessage>> getChatHistory(String currentUserJid, String contactJid) {
+        return supply(dbExecutor, () -> database().getChatHistory(currentUserJid, contactJid));
+    }
+
+    public CompletableFuture<Void> saveMessage(String senderJid, String receiverJid, String message, boolean isLocal,
+                                               String originId) {
+        return run(dbExecutor, () -> database().saveMessage(senderJid, receiverJid, message, isLocal, originId, null));
+    }
+
+    public CompletableFuture<Void> markMessagesAsRead(String currentUserJid, String contactJid) {
+        return run(dbExecutor, () -> database().markMessagesAsRead(currentUserJid, contactJid));
+    }
+
+    public CompletableFuture<Void> deleteChatHistory(String user1Jid, String user2Jid) {
+        return run(dbExecutor, () -> database().deleteChatHistory(user1Jid, user2Jid));
+    }
+
+    public CompletableFuture<Void> deleteAllChatHistory() {
+        return run(dbExecutor, () -> database().deleteAllChatHistory());
+    }
+
+    public void shutdown() {
+        sendExecutor.shutdown();
+        dbExecutor.shutdown();
+    }
+
+    private XMPPTCPConnection connection() throws SmackException.NotConnectedException {
+        if (!xmppClient.isConnected()) {
+            throw new SmackException.NotConnectedException("Not connected to XMPP server");
+        }
+        return xmppClient.getConnection();
+    }
+
+    private ChatDatabase database() {
+        ChatDatabase db = xmppClient.getDatabase();
+        if (db == null) {
+            throw new IllegalStateException("数据库不可用");
+        }
+        return db;
+    }
+
+    private static CompletableFuture<Void> run(Executor executor, BlockingTask task) {
+        return supply(executor, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private static <T> CompletableFuture<T> supply(Executor executor, BlockingCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            T value;
+            try {
+                value = call.call();
+            } catch (Throwable e) {
+                logger.debug("Async operation failed", e);
+                SwingUtilities.invokeLater(() -> result.completeExceptionally(e));
+                return;
+            }
+            SwingUtilities.invokeLater(() -> result.complete(value));
+        });
+        return result;
+    }
+
+    // 从 CompletableFuture 的异常中取出实际的原因，便于显示给用户
+    public static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    @FunctionalInterface
+    private interface BlockingTask {
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface BlockingCall<T> {
+        T call() throws Exception;
+    }
+}
@@ -0,0 +1,333 @@
+package com.xcq.service;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.CachedVCard;
+import com.xcq.metrics.Metrics;
+import com.xcq.util.ExecutorProvider;
+import com.xcq.xmpp.XMPPClient;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.packet.ExtensionElement;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.StandardExtensionElement;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smackx.vcardtemp.VCardManager;
+import org.jivesoftware.smackx.vcardtemp.packet.VCard;
+import org.jivesoftware.smackx.vcardtemp.provider.VCardProvider;
+import org.jxmpp.jid.impl.JidCreate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+// 联系人 vCard 和头像缓存。
+// vCard 保存在数据库中，联系人出席信息里的头像哈希（XEP-0153）变化时才重新从服务器获取；
+// 缩放后的头像保存在按内存大小限制的 LRU 中，供联系人列表直接绘制
+public class VCardCache {
+    private static final Logger logger = LoggerFactory.getLogger(VCardCache.class);
+    private static final String UPDATE_ELEMENT = "x";
+    private static final String UPDATE_NAMESPACE = "vcard-temp:x:update";
+    // 没有头像时的哈希，与 XEP-0153 中空的 photo 元素一致
+    private static final String NO_PHOTO = "";
+    public static final int AVATAR_SIZE = 24;
+
+    private final XMPPClient xmppClient;
+    // 同时进行的 vCard 请求数量有限，登录后大量联系人同时上线时不会占满连接
+    private final ExecutorService fetchExecutor;
+    // 其他账号的缓存共用同一个线程池和头像 LRU，由创建它们的缓存负责关闭
+    private final boolean ownsExecutor;
+    // 出席信息中公布的头像哈希
+    private final Map<String, String> advertisedHashes = new ConcurrentHashMap<>();
+    // 同一联系人的并发请求合并为一个
+    private final Map<String, CompletableFuture<VCard>> pending = new ConcurrentHashMap<>();
+    // 已请求过头像的联系人及请求时的哈希，失败或没有头像时不会在每次重绘时重复请求；头像被 LRU 淘汰时删除，下次绘制时重新加载
+    private final Map<String, String> requestedAvatars = new ConcurrentHashMap<>();
+    private final Consumer<String> evictionListener = requestedAvatars::remove;
+    private final AvatarLru avatars;
+    private final List<AvatarListener> listeners = new CopyOnWriteArrayList<>();
+
+    public VCardCache(XMPPClient xmppClient, int concurrency, long maxAvatarBytes) {
+        this.xmppClient = xmppClient;
+        this.avatars = new AvatarLru(maxAvatarBytes);
+        this.avatars.addEvictionListener(evictionListener);
+        this.ownsExecutor = true;
+        this.fetchExecutor = ExecutorProvider.getInstance().newBoundedExecutor("vcard-fetch", concurrency);
+    }
+
+    private VCardCache(XMPPClient xmppClient, VCardCache shared) {
+        this.xmppClient = xmppClient;
+        this.avatars = shared.avatars;
+        this.avatars.addEvictionListener(evictionListener);
+        this.fetchExecutor = shared.fetchExecutor;
+        this.ownsExecutor = false;
+    }
+
+    // 同时登录的其他账号使用：vCard 通过该账号的连接获取，线程和头像内存与本缓存共用
+    public VCardCache forClient(XMPPClient client) {
+        return new VCardCache(client, this);
+    }
+
+    // 本地缓存未过期时直接返回，否则从服务器获取；返回的 Future 在 EDT 中完成
+    public CompletableFuture<VCard> getVCard(String jid) {
+        CompletableFuture<VCard> result = new CompletableFuture<>();
+        load(jid).whenComplete((card, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(card);
+            }
+        }));
+        return result;
+    }
+
+    // 在 EDT 中调用；头像未缓存时返回 null 并在后台加载，加载完成后通知监听器
+    public Icon getAvatar(String jid) {
+        String advertised = advertisedHashes.get(jid);
+        Avatar avatar = avatars.get(jid);
+        if (avatar != null && (advertised == null || advertised.equals(avatar.hash))) {
+            return avatar.icon;
+        }
+        requestAvatar(jid, String.valueOf(advertised));
+        return avatar != null ? avatar.icon : null;
+    }
+
+    // 由花名册的出席信息回调调用，可以在任意线程中执行
+    public void onPresence(Presence presence) {
+        if (presence.getFrom() == null) {
+            return;
+        }
+        ExtensionElement extension = presence.getExtensionElement(UPDATE_ELEMENT, UPDATE_NAMESPACE);
+        if (!(extension instanceof StandardExtensionElement)) {
+            return;
+        }
+        StandardExtensionElement photo = ((StandardExtensionElement) extension).getFirstElement("photo");
+        if (photo == null) {
+            // 对方客户端还没有读取到自己的头像，不能据此判断
+            return;
+        }
+        String text = photo.getText();
+        String hash = text == null ? NO_PHOTO : text.trim().toLowerCase(Locale.ROOT);
+        String jid = presence.getFrom().asBareJid().toString();
+        String previous = advertisedHashes.put(jid, hash);
+        if (previous != null && !previous.equals(hash)) {
+            logger.debug("Avatar of {} changed", jid);
+            requestedAvatars.remove(jid);
+            notifyListeners(jid);
+        }
+    }
+
+    public void addAvatarListener(AvatarListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeAvatarListener(AvatarListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void shutdown() {
+        avatars.removeEvictionListener(evictionListener);
+        if (ownsExecutor) {
+            fetchExecutor.shutdownNow();
+        }
+    }
+
+    private void requestAvatar(String jid, String key) {
+        if (key.equals(requestedAvatars.put(jid, key))) {
+            return;
+        }
+        load(jid).thenAcceptAsync(card -> {
+            Icon icon = scale(card.getAvatar());
+            if (icon != null) {
+                avatars.put(jid, new Avatar(photoHash(card), icon));
+            } else {
+                avatars.remove(jid);
+            }
+            notifyListeners(jid);
+        }, fetchExecutor).exceptionally(e -> {
+            logger.debug("Failed to load avatar for {}", jid, e);
+            return null;
+        });
+    }
+
+    private CompletableFuture<VCard> load(String jid) {
+        CompletableFuture<VCard> future = new CompletableFuture<>();
+        CompletableFuture<VCard> existing = pending.putIfAbsent(jid, future);
+        if (existing != null) {
+            return existing;
+        }
+        fetchExecutor.execute(() -> {
+            try {
+                VCard card = fetch(jid);
+                pending.remove(jid, future);
+                future.complete(card);
+            } catch (Throwable e) {
+                pending.remove(jid, future);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private VCard fetch(String jid) throws Exception {
+        ChatDatabase db = xmppClient.getDatabase();
+        CachedVCard cached = db != null ? db.getVCard(jid) : null;
+        String advertised = advertisedHashes.get(jid);
+        if (cached != null && (advertised == null || advertised.equals(cached.getPhotoHash()))) {
+            VCard card = parse(cached);
+            if (card != null) {
+                Metrics.VCARD_CACHE_HITS.increment();
+                return card;
+            }
+        }
+
+        try {
+            if (!xmppClient.isConnected()) {
+                throw new SmackException.NotConnectedException("Not connected to XMPP server");
+            }
+            VCard card = VCardManager.getInstanceFor(xmppClient.getConnection())
+                .loadVCard(JidCreate.entityBareFrom(jid));
+            Metrics.VCARD_FETCHES.increment();
+            if (db != null) {
+                db.saveVCard(jid, photoHash(card), card.getChildElementXML().toString());
+            }
+            return card;
+        } catch (Exception e) {
+            // 服务器不可用时退回到过期的缓存
+            VCard card = cached != null ? parse(cached) : null;
+            if (card != null) {
+                logger.debug("Using stale vCard for {}", jid, e);
+                return card;
+            }
+            throw e;
+        }
+    }
+
+    private static VCard parse(CachedVCard cached) {
+        try {
+            return new VCardProvider().parse(PacketParserUtils.getParserFor(cached.getVcardXml()));
+        } catch (Exception e) {
+            logger.warn("Discarding unreadable cached vCard for {}", cached.getJid(), e);
+            return null;
+        }
+    }
+
+    private static String photoHash(VCard card) {
+        return card.getAvatar() == null ? NO_PHOTO : card.getAvatarHash().toLowerCase(Locale.ROOT);
+    }
+
+    // 居中裁剪为正方形后缩放
+    private static Icon scale(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(data));
+            if (source == null) {
+                return null;
+            }
+            int side = Math.min(source.getWidth(), source.getHeight());
+            int x = (source.getWidth() - side) / 2;
+            int y = (source.getHeight() - side) / 2;
+            BufferedImage scaled = new BufferedImage(AVATAR_SIZE, AVATAR_SIZE, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, AVATAR_SIZE, AVATAR_SIZE, x, y, x + side, y + side, null);
+            g.dispose();
+            return new ImageIcon(scaled);
+        } catch (IOException e) {
+            logger.debug("Failed to decode avatar", e);
+            return null;
+        }
+    }
+
+    private void notifyListeners(String jid) {
+        SwingUtilities.invokeLater(() -> {
+            for (AvatarListener listener : listeners) {
+                listener.onAvatarChanged(jid);
+            }
+        });
+    }
+
+    public interface AvatarListener {
+        void onAvatarChanged(String jid);
+    }
+
+    private static final class Avatar {
+        final String hash;
+        final Icon icon;
+        final long bytes;
+
+        Avatar(String hash, Icon icon) {
+            this.hash = hash;
+            this.icon = icon;
+            this.bytes = 4L * icon.getIconWidth() * icon.getIconHeight();
+        }
+    }
+
+    // 按占用字节数淘汰最久未使用的头像，淘汰时以 JID 通知共用它的各个缓存
+    private static final class AvatarLru {
+        private final long maxBytes;
+        private final LinkedHashMap<String, Avatar> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+        private long bytes;
+
+        AvatarLru(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Avatar get(String jid) {
+            return entries.get(jid);
+        }
+
+        synchronized void put(String jid, Avatar avatar) {
+            Avatar old = entries.put(jid, avatar);
+            if (old != null) {
+                bytes -= old.bytes;
+            }
+            bytes += avatar.bytes;
+            Iterator<Map.Entry<String, Avatar>> it = entries.entrySet().iterator();
+            // 刚放入的头像总是保留，否则淘汰通知会让它在下次绘制时被反复加载
+            while (bytes > maxBytes && entries.size() > 1) {
+                Map.Entry<String, Avatar> eldest = it.next();
+                bytes -= eldest.getValue().bytes;
+                it.remove();
+                for (Consumer<String> listener : evictionListeners) {
+                    listener.accept(eldest.getKey());
+                }
+            }
+        }
+
+        void addEvictionListener(Consumer<String> listener) {
+            evictionListeners.add(listener);
+        }
+
+        void removeEvictionListener(Consumer<String> listener) {
+            evictionListeners.remove(listener);
+        }
+
+        synchronized void remove(String jid) {
+            Avatar old = entries.remove(jid);
+            if (old != null) {
+                bytes -= old.bytes;
+            }
+        }
+    }
+}
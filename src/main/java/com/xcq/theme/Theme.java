@@ -2,29 +2,52 @@ package com.xcq.theme;
 
 import java.awt.*;
 
-public class Theme {
-    private String name = "default";
-    private Color backgroundColor = new Color(245, 245, 245);
-    private Color inputBackgroundColor = Color.WHITE;
-    private Color textColor = Color.BLACK;
-    private Color buttonColor = new Color(230, 230, 230);
-    private Font font = new Font("微软雅黑", Font.PLAIN, 12);
+// 不可变的主题对象，颜色和字体来自 ThemeResources 的共享缓存
+public final class Theme {
+    public static final String DEFAULT_NAME = "default";
+    private static final String DEFAULT_FONT_FAMILY = "微软雅黑";
+
+    private final String name;
+    private final Color backgroundColor;
+    private final Color inputBackgroundColor;
+    private final Color textColor;
+    private final Color buttonColor;
+    private final String fontFamily;
+    private final int fontSize;
+    // 聊天记录区域
+    private final int chatFontSize;
+    private final Color timeColor;
+    private final Color mySenderColor;
+    private final Color contactSenderColor;
+    private final Color systemColor;
+
+    private Theme(Builder builder) {
+        this.name = builder.name;
+        this.backgroundColor = builder.backgroundColor;
+        this.inputBackgroundColor = builder.inputBackgroundColor;
+        this.textColor = builder.textColor;
+        this.buttonColor = builder.buttonColor;
+        this.fontFamily = builder.fontFamily;
+        this.fontSize = builder.fontSize;
+        this.chatFontSize = builder.chatFontSize;
+        this.timeColor = builder.timeColor;
+        this.mySenderColor = builder.mySenderColor;
+        this.contactSenderColor = builder.contactSenderColor;
+        this.systemColor = builder.systemColor;
+    }
 
-    public Theme() {
+    public static Theme defaultTheme() {
+        return builder(DEFAULT_NAME).build();
     }
 
-    public Theme(String name) {
-        this.name = name;
+    public static Builder builder(String name) {
+        return new Builder(name);
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public Color getBackgroundColor() {
         return backgroundColor;
     }
@@ -41,27 +64,118 @@ public class Theme {
         return buttonColor;
     }
 
+    public String getFontFamily() {
+        return fontFamily;
+    }
+
+    public int getFontSize() {
+        return fontSize;
+    }
+
     public Font getFont() {
-        return font;
+        return ThemeResources.getFont(fontFamily, Font.PLAIN, fontSize);
+    }
+
+    // 按样式和字号派生主题字体，同样来自共享缓存
+    public Font getFont(int style, int size) {
+        return ThemeResources.getFont(fontFamily, style, size);
+    }
+
+    public int getChatFontSize() {
+        return chatFontSize;
     }
 
-    public void setBackgroundColor(Color backgroundColor) {
-        this.backgroundColor = backgroundColor;
+    public Color getTimeColor() {
+        return timeColor;
     }
 
-    public void setInputBackgroundColor(Color inputBackgroundColor) {
-        this.inputBackgroundColor = inputBackgroundColor;
+    public Color getMySenderColor() {
+        return mySenderColor;
     }
 
-    public void setTextColor(Color textColor) {
-        this.textColor = textColor;
+    public Color getContactSenderColor() {
+        return contactSenderColor;
     }
 
-    public void setButtonColor(Color buttonColor) {
-        this.buttonColor = buttonColor;
+    public Color getSystemColor() {
+        return systemColor;
     }
 
-    public void setFont(Font font) {
-        this.font = font;
+    public static final class Builder {
+        private final String name;
+        private Color backgroundColor = ThemeResources.getColor(245, 245, 245);
+        private Color inputBackgroundColor = Color.WHITE;
+        private Color textColor = Color.BLACK;
+        private Color buttonColor = ThemeResources.getColor(230, 230, 230);
+        private String fontFamily = DEFAULT_FONT_FAMILY;
+        private int fontSize = 12;
+        private int chatFontSize = 14;
+        private Color timeColor = Color.GRAY;
+        private Color mySenderColor = ThemeResources.getColor(0, 128, 0);
+        private Color contactSenderColor = Color.BLUE;
+        private Color systemColor = Color.DARK_GRAY;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder backgroundColor(Color color) {
+            this.backgroundColor = color;
+            return this;
+        }
+
+        public Builder inputBackgroundColor(Color color) {
+            this.inputBackgroundColor = color;
+            return this;
+        }
+
+        public Builder textColor(Color color) {
+            this.textColor = color;
+            return this;
+        }
+
+        public Builder buttonColor(Color color) {
+            this.buttonColor = color;
+            return this;
+        }
+
+        public Builder fontFamily(String fontFamily) {
+            this.fontFamily = fontFamily;
+            return this;
+        }
+
+        public Builder fontSize(int fontSize) {
+            this.fontSize = fontSize;
+            return this;
+        }
+
+        public Builder chatFontSize(int chatFontSize) {
+            this.chatFontSize = chatFontSize;
+            return this;
+        }
+
+        public Builder timeColor(Color color) {
+            this.timeColor = color;
+            return this;
+        }
+
+        public Builder mySenderColor(Color color) {
+            this.mySenderColor = color;
+            return this;
+        }
+
+        public Builder contactSenderColor(Color color) {
+            this.contactSenderColor = color;
+            return this;
+        }
+
+        public Builder systemColor(Color color) {
+            this.systemColor = color;
+            return this;
+        }
+
+        public Theme build() {
+            return new Theme(this);
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,31 +1,70 @@
 package com.xcq.theme;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
 import java.awt.*;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 public class ThemeManager {
     private static final Logger logger = LoggerFactory.getLogger(ThemeManager.class);
+    // 聊天记录使用的样式名
+    public static final String STYLE_REGULAR = "regular";
+    public static final String STYLE_TIME = "time";
+    public static final String STYLE_SENDER = "sender";
+    public static final String STYLE_MY_SENDER = "mySender";
+    public static final String STYLE_CONTACT_SENDER = "contactSender";
+    public static final String STYLE_SYSTEM = "system";
+    // 编辑器保存文件时会连续产生多个事件，等待这段时间后再统一重新加载
+    private static final long RELOAD_DELAY_MS = 300;
+
     private final File themeDir;
     private final Map<String, Theme> themes;
-    private Theme currentTheme;
+    // 主题文件名到其中的主题名，文件删除或改名时据此卸载主题
+    private final Map<String, String> themeNamesByFile = new ConcurrentHashMap<>();
+    // 主题可能在后台线程中加载，界面线程同时读取
+    private volatile Theme currentTheme;
+    // 所有聊天窗口共享的样式，切换主题时原地更新，已打开的文档随之刷新；只在 EDT 中修改
+    private final StyleContext chatStyles = new StyleContext();
+    private final List<ThemeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile WatchService watchService;
 
     public ThemeManager() {
         this.themeDir = new File("themes");
-        this.themes = new HashMap<>();
-        this.currentTheme = new Theme("default");
-        
+        this.themes = new ConcurrentHashMap<>();
+        this.currentTheme = Theme.defaultTheme();
+
         if (!themeDir.exists()) {
             themeDir.mkdirs();
         }
-        
+
         // 添加默认主题
-        themes.put("default", currentTheme);
+        themes.put(Theme.DEFAULT_NAME, currentTheme);
+        createChatStyles();
+        applyChatStyles(currentTheme);
     }
 
     public void loadThemes() {
@@ -33,37 +72,53 @@ public class ThemeManager {
         File[] themeFiles = themeDir.listFiles((dir, name) -> name.endsWith(".json"));
         if (themeFiles != null) {
             for (File themeFile : themeFiles) {
-                try {
-                    Theme theme = loadTheme(themeFile);
-                    if (theme != null) {
-                        themes.put(theme.getName(), theme);
-                    }
-                } catch (Exception e) {
-                    logger.error("Failed to load theme from file: " + themeFile.getName(), e);
-                }
+                reload(themeFile);
             }
         }
+        startWatching();
     }
 
     private Theme loadTheme(File themeFile) {
-        try {
-            // TODO: 实现从JSON文件加载主题的逻辑
-            return null;
+        try (Reader reader = Files.newBufferedReader(themeFile.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            String fileName = themeFile.getName();
+            String name = json.has("name") ? json.get("name").getAsString()
+                : fileName.substring(0, fileName.length() - ".json".length());
+
+            Theme.Builder builder = Theme.builder(name);
+            if (json.has("backgroundColor")) builder.backgroundColor(color(json, "backgroundColor"));
+            if (json.has("inputBackgroundColor")) builder.inputBackgroundColor(color(json, "inputBackgroundColor"));
+            if (json.has("textColor")) builder.textColor(color(json, "textColor"));
+            if (json.has("buttonColor")) builder.buttonColor(color(json, "buttonColor"));
+            if (json.has("fontFamily")) builder.fontFamily(json.get("fontFamily").getAsString());
+            if (json.has("fontSize")) builder.fontSize(json.get("fontSize").getAsInt());
+            if (json.has("chatFontSize")) builder.chatFontSize(json.get("chatFontSize").getAsInt());
+            if (json.has("timeColor")) builder.timeColor(color(json, "timeColor"));
+            if (json.has("mySenderColor")) builder.mySenderColor(color(json, "mySenderColor"));
+            if (json.has("contactSenderColor")) builder.contactSenderColor(color(json, "contactSenderColor"));
+            if (json.has("systemColor")) builder.systemColor(color(json, "systemColor"));
+            Theme theme = builder.build();
+            logger.info("Loaded theme {} from {}", name, fileName);
+            return theme;
         } catch (Exception e) {
             logger.error("Failed to load theme from file: " + themeFile.getName(), e);
             return null;
         }
     }
 
+    private static Color color(JsonObject json, String key) {
+        return ThemeResources.parseColor(json.get(key).getAsString());
+    }
+
     public void setTheme(String themeName) {
         Theme theme = themes.get(themeName);
         if (theme != null) {
-            this.currentTheme = theme;
             logger.info("Theme changed to: {}", themeName);
         } else {
             logger.warn("Theme not found: {}, using default theme", themeName);
-            this.currentTheme = themes.get("default");
+            theme = themes.get(Theme.DEFAULT_NAME);
         }
+        setCurrentTheme(theme);
     }
 
     public Theme getCurrentTheme() {
@@ -77,7 +132,165 @@ public class ThemeManager {
     public void setCurrentTheme(Theme theme) {
         if (theme != null) {
             this.currentTheme = theme;
+            SwingUtilities.invokeLater(() -> {
+                applyChatStyles(theme);
+                for (ThemeListener listener : listeners) {
+                    listener.onThemeChanged(theme);
+                }
+            });
             logger.info("Theme updated");
         }
     }
-} 
\ No newline at end of file
+
+    // 聊天窗口用它创建文档，所有窗口共享同一组样式
+    public StyleContext getChatStyles() {
+        return chatStyles;
+    }
+
+    // 监听器在 EDT 中收到通知
+    public void addThemeListener(ThemeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeThemeListener(ThemeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void close() {
+        WatchService service = watchService;
+        watchService = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.debug("Error closing theme watcher", e);
+            }
+        }
+    }
+
+    private void createChatStyles() {
+        Style def = chatStyles.getStyle(StyleContext.DEFAULT_STYLE);
+        Style regular = chatStyles.addStyle(STYLE_REGULAR, def);
+        chatStyles.addStyle(STYLE_TIME, regular);
+        Style sender = chatStyles.addStyle(STYLE_SENDER, regular);
+        StyleConstants.setBold(sender, true);
+        chatStyles.addStyle(STYLE_MY_SENDER, sender);
+        chatStyles.addStyle(STYLE_CONTACT_SENDER, sender);
+        Style system = chatStyles.addStyle(STYLE_SYSTEM, regular);
+        StyleConstants.setItalic(system, true);
+    }
+
+    private void applyChatStyles(Theme theme) {
+        Style regular = chatStyles.getStyle(STYLE_REGULAR);
+        StyleConstants.setFontFamily(regular, theme.getFontFamily());
+        StyleConstants.setFontSize(regular, theme.getChatFontSize());
+        StyleConstants.setForeground(regular, theme.getTextColor());
+
+        Style time = chatStyles.getStyle(STYLE_TIME);
+        StyleConstants.setForeground(time, theme.getTimeColor());
+        StyleConstants.setFontSize(time, Math.max(8, theme.getChatFontSize() - 4));
+
+        StyleConstants.setForeground(chatStyles.getStyle(STYLE_MY_SENDER), theme.getMySenderColor());
+        StyleConstants.setForeground(chatStyles.getStyle(STYLE_CONTACT_SENDER), theme.getContactSenderColor());
+
+        Style system = chatStyles.getStyle(STYLE_SYSTEM);
+        StyleConstants.setForeground(system, theme.getSystemColor());
+        StyleConstants.setFontSize(system, Math.max(8, theme.getChatFontSize() - 2));
+    }
+
+    // 监视主题目录，修改过的主题文件重新加载，删除的卸载；若是当前主题则立即应用到已打开的窗口
+    private synchronized void startWatching() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            WatchService service = themeDir.toPath().getFileSystem().newWatchService();
+            themeDir.toPath().register(service,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = service;
+            Thread watcher = new Thread(() -> watch(service), "theme-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            logger.warn("Theme hot reload unavailable", e);
+        }
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<Path> changed = new HashSet<>();
+                collectChanges(key, changed);
+                // 合并短时间内的后续事件
+                WatchKey next;
+                while ((next = service.poll(RELOAD_DELAY_MS, TimeUnit.MILLISECONDS)) != null) {
+                    collectChanges(next, changed);
+                }
+                for (Path file : changed) {
+                    reload(themeDir.toPath().resolve(file).toFile());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Theme watcher stopped");
+        }
+    }
+
+    private static void collectChanges(WatchKey key, Set<Path> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path && event.context().toString().endsWith(".json")) {
+                changed.add((Path) event.context());
+            }
+        }
+        key.reset();
+    }
+
+    private void reload(File themeFile) {
+        if (!themeFile.isFile()) {
+            unload(themeFile.getName());
+            return;
+        }
+        Theme theme = loadTheme(themeFile);
+        if (theme == null) {
+            return;
+        }
+        String previous = themeNamesByFile.put(themeFile.getName(), theme.getName());
+        themes.put(theme.getName(), theme);
+        if (previous != null && !previous.equals(theme.getName())) {
+            // 文件中的主题改了名
+            removeTheme(previous);
+        }
+        if (theme.getName().equals(currentTheme.getName())) {
+            setCurrentTheme(theme);
+        }
+    }
+
+    // 主题文件被删除或改名（改名时新文件另有一个创建事件）
+    private void unload(String fileName) {
+        String name = themeNamesByFile.remove(fileName);
+        if (name != null) {
+            removeTheme(name);
+        }
+    }
+
+    // 没有其他文件提供该主题时卸载它：内置的默认主题恢复原样，正在使用的主题换成默认主题
+    private void removeTheme(String name) {
+        if (themeNamesByFile.containsValue(name)) {
+            return;
+        }
+        if (name.equals(Theme.DEFAULT_NAME)) {
+            themes.put(name, Theme.defaultTheme());
+        } else {
+            themes.remove(name);
+        }
+        logger.info("Unloaded theme {}", name);
+        if (name.equals(currentTheme.getName())) {
+            setCurrentTheme(themes.get(Theme.DEFAULT_NAME));
+        }
+    }
+
+    public interface ThemeListener {
+        void onThemeChanged(Theme theme);
+    }
+}
@@ -0,0 +1,40 @@
+package com.xcq.theme;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 所有窗口共享的字体和颜色缓存，相同参数只创建一次
+public final class ThemeResources {
+    private static final Map<String, Font> fonts = new ConcurrentHashMap<>();
+    private static final Map<Integer, Color> colors = new ConcurrentHashMap<>();
+
+    private ThemeResources() {}
+
+    public static Font getFont(String family, int style, int size) {
+        return fonts.computeIfAbsent(family + '/' + style + '/' + size, key -> new Font(family, style, size));
+    }
+
+    public static Color getColor(int r, int g, int b) {
+        return getColor(new Color(r, g, b).getRGB());
+    }
+
+    public static Color getColor(int argb) {
+        return colors.computeIfAbsent(argb, key -> new Color(key, true));
+    }
+
+    // 解析 #RRGGBB 或 #AARRGGBB 格式的颜色
+    public static Color parseColor(String value) {
+        String hex = value.trim();
+        if (hex.startsWith("#")) {
+            hex = hex.substring(1);
+        }
+        if (hex.length() == 6) {
+            return getColor(0xFF000000 | Integer.parseInt(hex, 16));
+        }
+        if (hex.length() == 8) {
+            return getColor((int) Long.parseLong(hex, 16));
+        }
+        throw new IllegalArgumentException("Invalid color: " + value);
+    }
+}
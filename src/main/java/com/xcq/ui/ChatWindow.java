@@ -1,17 +1,25 @@
 package com.xcq.ui;
 
 import com.xcq.core.ApplicationContext;
+import com.xcq.core.ConfigKeys;
 import com.xcq.core.Configuration;
 import com.xcq.db.ChatDatabase;
 import com.xcq.db.ChatDatabase.ChatMessage;
+import com.xcq.service.AsyncService;
+import com.xcq.metrics.Metrics;
+import com.xcq.theme.Theme;
+import com.xcq.theme.ThemeManager;
 import com.xcq.ui.components.EmojiPanel;
 import com.xcq.ui.components.ImageMessageComponent;
 import com.xcq.util.FileUploader;
+import com.xcq.util.ImageCompressor;
+import com.xcq.util.NotificationManager;
+import com.xcq.util.SoundService;
 import com.xcq.xmpp.XMPPClient;
+import com.xcq.xmpp.archive.HistoryBackfill;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.sound.sampled.*;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.text.*;
@@ -35,12 +43,21 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
     private final JTextArea inputArea;
     private final StyledDocument doc;
     private final DateTimeFormatter timeFormatter;
-    private Clip notificationSound;
     private boolean isListenerRegistered = false;
     private long lastMessageTimestamp = 0; // 用于防止重复显示消息
     private boolean historyLoaded = false;
+    // 每次加载的历史消息条数
+    private static final int HISTORY_PAGE_SIZE = 100;
+    private HistoryBackfill historyBackfill;
+    // 已显示的最早一条消息的时间，向上翻页时从这里继续
+    private long oldestShownTimestamp = Long.MAX_VALUE;
+    // 与时间一起作为翻页位置，同一毫秒的消息按 id 区分
+    private long oldestShownId = Long.MAX_VALUE;
+    private boolean loadingOlderHistory = false;
+    private boolean olderHistoryExhausted = false;
     private XMPPClient.MessageListener listener;
-    private boolean isWindowActive = false;
+    private final ThemeManager.ThemeListener themeListener;
+    private volatile boolean isWindowActive = false;
     private boolean isDisposed = false;
     private JPanel bottomPanel;
     private JToolBar toolBar;
@@ -51,9 +68,6 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         this.contactName = contactName != null ? contactName : contactJid;
         this.timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-        // 初始化提示音
-        initNotificationSound();
-
         // 设置窗口属性
         setTitle("与 " + this.contactName + " 聊天中");
         setSize(600, 500);
@@ -78,17 +92,29 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
 
         // 创建聊天区域
-        chatArea = new JTextPane();
+        // 样式由 ThemeManager 统一维护，所有聊天窗口共享
+        ThemeManager themeManager = context.getThemeManager();
+        chatArea = new JTextPane(new DefaultStyledDocument(themeManager.getChatStyles()));
         chatArea.setEditable(false);
         doc = chatArea.getStyledDocument();
 
-        // 设置样式
-        addStylesToDocument(doc);
-
         JScrollPane chatScrollPane = new JScrollPane(chatArea);
         chatScrollPane.setPreferredSize(new Dimension(500, 300));
         mainPanel.add(chatScrollPane, BorderLayout.CENTER);
 
+        // 滚动到顶部时加载更早的记录；内容不足一屏时没有滚动条，向上滚动滚轮也触发
+        JScrollBar verticalBar = chatScrollPane.getVerticalScrollBar();
+        verticalBar.addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == verticalBar.getMinimum()) {
+                loadOlderHistory(verticalBar);
+            }
+        });
+        chatScrollPane.addMouseWheelListener(e -> {
+            if (e.getWheelRotation() < 0 && verticalBar.getValue() == verticalBar.getMinimum()) {
+                loadOlderHistory(verticalBar);
+            }
+        });
+
         // 创建底部面板（包含工具栏和输入区域）
         bottomPanel = new JPanel(new BorderLayout(0, 5));
 
@@ -98,7 +124,11 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
 
         // 创建输入区域
         inputArea = new JTextArea();
-        inputArea.setFont(new Font("微软雅黑", Font.PLAIN, 14)); // 稍大字体
+        Theme theme = themeManager.getCurrentTheme();
+        inputArea.setFont(theme.getFont(Font.PLAIN, theme.getChatFontSize())); // 稍大字体
+        // 聊天记录的样式会随主题自动刷新，输入框字体需要单独更新
+        themeListener = changed -> inputArea.setFont(changed.getFont(Font.PLAIN, changed.getChatFontSize()));
+        themeManager.addThemeListener(themeListener);
         inputArea.setLineWrap(true);
         inputArea.setWrapStyleWord(true);
 
@@ -158,23 +188,27 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
                 JOptionPane.WARNING_MESSAGE);
 
             if (result == JOptionPane.YES_OPTION) {
-                 ChatDatabase db = ChatDatabase.getInstance();
-                 if (db != null) {
-                    String currentUserJid = getCurrentUserJid();
-                    if (currentUserJid != null) {
-                        db.deleteChatHistory(currentUserJid, contactJid);
-                        chatArea.setText(""); // 清空显示区域
-                        historyLoaded = false; // 重置历史加载状态，虽然已清空，但逻辑上一致
-                        JOptionPane.showMessageDialog(this,
-                            "聊天记录已删除",
-                            "提示",
-                            JOptionPane.INFORMATION_MESSAGE);
-                    } else {
-                        showErrorDialog("无法获取当前用户信息，无法删除记录。");
-                    }
-                 } else {
-                     showErrorDialog("数据库连接失败，无法删除记录。");
-                 }
+                String currentUserJid = getCurrentUserJid();
+                if (currentUserJid != null) {
+                    context.getAsyncService().deleteChatHistory(currentUserJid, contactJid)
+                        .thenRun(() -> {
+                            chatArea.setText(""); // 清空显示区域
+                            historyLoaded = false; // 重置历史加载状态，虽然已清空，但逻辑上一致
+                            // 不再从服务器存档取回已删除的记录
+                            olderHistoryExhausted = true;
+                            JOptionPane.showMessageDialog(this,
+                                "聊天记录已删除",
+                                "提示",
+                                JOptionPane.INFORMATION_MESSAGE);
+                        })
+                        .exceptionally(ex -> {
+                            logger.error("Failed to delete chat history with {}", contactJid, ex);
+                            showErrorDialog("删除聊天记录失败: " + AsyncService.unwrap(ex).getMessage());
+                            return null;
+                        });
+                } else {
+                    showErrorDialog("无法获取当前用户信息，无法删除记录。");
+                }
             }
         });
         menu.add(deleteHistoryItem);
@@ -205,10 +239,10 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         setJMenuBar(menuBar);
     }
     
-    // 辅助方法获取当前用户JID
+    // 辅助方法获取当前用户JID（不含资源，与数据库中保存的一致）
     private String getCurrentUserJid() {
         if (context != null && context.getXmppClient() != null && context.getXmppClient().isConnected()) {
-            return context.getXmppClient().getConnection().getUser().toString();
+            return context.getXmppClient().getConnection().getUser().asBareJid().toString();
         } 
         logger.warn("Could not get current user JID: XMPP client not connected or context is null.");
         return null;
@@ -230,8 +264,11 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         
         // 设置按钮提示文本
         emojiButton.setToolTipText("表情");
-        imageButton.setToolTipText("图片");
-        fileButton.setToolTipText("文件");
+        imageButton.setToolTipText("图片（可多选）");
+        fileButton.setToolTipText("文件（可多选）");
+
+        imageButton.addActionListener(e -> selectAndUploadImage());
+        fileButton.addActionListener(e -> selectAndUploadFile());
         
         // 添加按钮到工具栏
         toolBar.add(emojiButton);
@@ -252,6 +289,7 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
     private void selectAndUploadImage() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("选择要发送的图片");
+        fileChooser.setMultiSelectionEnabled(true);
         fileChooser.setFileFilter(new javax.swing.filechooser.FileFilter() {
             public boolean accept(File f) {
                 if (f.isDirectory()) return true;
@@ -264,41 +302,55 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
             }
         });
 
+        // 默认压缩后发送，勾选"原图"时发送原始文件
+        Configuration config = context.getConfiguration();
+        JCheckBox originalCheck = new JCheckBox("发送原图");
+        originalCheck.setSelected(config.get(ConfigKeys.UPLOAD_IMAGE_ORIGINAL));
+        fileChooser.setAccessory(originalCheck);
+
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            uploadAndSendFile(file, "[图片上传中...]");
+            boolean sendOriginal = originalCheck.isSelected();
+            if (sendOriginal != config.get(ConfigKeys.UPLOAD_IMAGE_ORIGINAL)) {
+                config.set(ConfigKeys.UPLOAD_IMAGE_ORIGINAL, sendOriginal);
+            }
+            for (File file : fileChooser.getSelectedFiles()) {
+                uploadAndSendFile(file, "[图片上传中: " + file.getName() + "]", !sendOriginal);
+            }
         }
     }
 
     private void selectAndUploadFile() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("选择要发送的文件");
+        fileChooser.setMultiSelectionEnabled(true);
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            uploadAndSendFile(file, "[文件上传中: " + file.getName() + "]");
+            for (File file : fileChooser.getSelectedFiles()) {
+                uploadAndSendFile(file, "[文件上传中: " + file.getName() + "]", false);
+            }
         }
     }
 
-    private void uploadAndSendFile(File file, String uploadingMessage) {
+    private void uploadAndSendFile(File file, String uploadingMessage, boolean compressImage) {
         // 显示上传中消息 (作为系统消息)
         appendSystemMessage(uploadingMessage);
 
-        // 异步上传文件
-        FileUploader.uploadFile(file, this).thenAcceptAsync(url -> {
+        // 异步压缩并上传文件，多个文件之间并行进行
+        ImageCompressor.prepareForUpload(file, !compressImage)
+            .thenCompose(prepared -> FileUploader.uploadFile(prepared, this)
+                .whenComplete((url, ex) -> ImageCompressor.release(file, prepared)))
+            .thenAcceptAsync(url -> {
             if (url != null) {
                 // 发送文件URL
-                try {
-                    context.getXmppClient().sendMessage(contactJid, url);
+                context.getAsyncService().sendMessage(contactJid, url)
                     // 界面上直接显示发送的文件URL
-                    appendMessage("我", getCurrentUserJid(), url, System.currentTimeMillis(), true);
-                } catch (Exception e) {
-                    logger.error("Error sending file URL: {}", url, e);
-                    SwingUtilities.invokeLater(() -> {
-                        showErrorDialog("发送文件失败: " + e.getMessage());
+                    .thenRun(() -> appendMessage("我", getCurrentUserJid(), url, System.currentTimeMillis(), true))
+                    .exceptionally(e -> {
+                        logger.error("Error sending file URL: {}", url, e);
+                        showErrorDialog("发送文件失败: " + AsyncService.unwrap(e).getMessage());
                         // 可以考虑移除之前的"上传中"消息或添加失败消息
                         // appendSystemMessage("[文件发送失败: " + file.getName() + "]");
+                        return null;
                     });
-                }
             } else {
                  SwingUtilities.invokeLater(() -> {
                       showErrorDialog("文件上传失败: " + file.getName());
@@ -308,49 +360,34 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         }, SwingUtilities::invokeLater); // 确保回调在EDT执行
     }
 
-    private void addStylesToDocument(StyledDocument doc) {
-        Style def = StyleContext.getDefaultStyleContext().getStyle(StyleContext.DEFAULT_STYLE);
-
-        Style regular = doc.addStyle("regular", def);
-        StyleConstants.setFontFamily(regular, "微软雅黑");
-        StyleConstants.setFontSize(regular, 14);
-
-        Style timeStyle = doc.addStyle("time", regular);
-        StyleConstants.setForeground(timeStyle, Color.GRAY);
-        StyleConstants.setFontSize(timeStyle, 10);
-
-        Style senderStyle = doc.addStyle("sender", regular);
-        StyleConstants.setBold(senderStyle, true);
-
-        Style mySenderStyle = doc.addStyle("mySender", senderStyle);
-        StyleConstants.setForeground(mySenderStyle, new Color(0, 128, 0)); // 深绿色
-
-        Style contactSenderStyle = doc.addStyle("contactSender", senderStyle);
-        StyleConstants.setForeground(contactSenderStyle, Color.BLUE);
-        
-        Style systemStyle = doc.addStyle("system", regular);
-        StyleConstants.setForeground(systemStyle, Color.DARK_GRAY);
-        StyleConstants.setItalic(systemStyle, true);
-        StyleConstants.setFontSize(systemStyle, 12);
-    }
-    
     // 重构 appendMessage 以处理时间戳和发送者样式
     public void appendMessage(String senderName, String senderJid, String content, long timestamp, boolean isSentByMe) {
+        appendMessage(senderName, senderJid, content, timestamp, isSentByMe, 0);
+    }
+
+    // receivedAt 不为 0 时记录从收到消息到显示完成的耗时
+    private void appendMessage(String senderName, String senderJid, String content, long timestamp, boolean isSentByMe, long receivedAt) {
+        appendMessage(senderName, senderJid, content, timestamp, isSentByMe, receivedAt, true);
+    }
+
+    // live 为 false 时按原始时间显示离线消息，不做防重和逐条提示
+    private void appendMessage(String senderName, String senderJid, String content, long timestamp, boolean isSentByMe,
+                               long receivedAt, boolean live) {
         SwingUtilities.invokeLater(() -> {
             if (isDisposed) return; // 如果窗口已销毁，则不处理
             try {
                 // 防重处理
-                if (timestamp > 0 && timestamp - lastMessageTimestamp < 100 && senderJid != null && senderJid.equals(this.contactJid)) {
+                if (live && timestamp > 0 && timestamp - lastMessageTimestamp < 100 && senderJid != null && senderJid.equals(this.contactJid)) {
                     logger.warn("Skipping potentially duplicate message within 100ms: {}", content);
                     return;
                 }
-                if (timestamp > 0) {
+                if (live && timestamp > 0) {
                     lastMessageTimestamp = timestamp;
                 }
 
                 // 如果是收到的消息且窗口不在前台，触发通知
-                if (!isSentByMe && !isWindowActive) {
-                    playNotificationSound(); // 播放声音
+                if (live && !isSentByMe && !isWindowActive) {
+                    SoundService.getInstance().play(SoundService.MESSAGE); // 播放声音
                     // 获取 ContactWindow 并触发联系人闪烁
                     ContactWindow contactWindow = context.getContactWindow();
                     if (contactWindow != null) {
@@ -363,27 +400,30 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
                 String timeStr = messageTime.format(timeFormatter);
                 
                 // 添加时间戳
-                doc.insertString(doc.getLength(), "[" + timeStr + "] ", doc.getStyle("time"));
+                doc.insertString(doc.getLength(), "[" + timeStr + "] ", doc.getStyle(ThemeManager.STYLE_TIME));
                 
                 // 添加发送者名称和样式
-                Style senderStyleToUse = isSentByMe ? doc.getStyle("mySender") : doc.getStyle("contactSender");
+                Style senderStyleToUse = isSentByMe ? doc.getStyle(ThemeManager.STYLE_MY_SENDER) : doc.getStyle(ThemeManager.STYLE_CONTACT_SENDER);
                 doc.insertString(doc.getLength(), senderName + ": ", senderStyleToUse);
                 
                 // 处理消息内容 (图片或文本)
                 if (isImageUrl(content)) {
                     // 插入换行符，让图片在新行显示
-                    doc.insertString(doc.getLength(), "\n", doc.getStyle("regular")); 
+                    doc.insertString(doc.getLength(), "\n", doc.getStyle(ThemeManager.STYLE_REGULAR)); 
                     ImageMessageComponent imageComponent = new ImageMessageComponent(content);
                     chatArea.setCaretPosition(doc.getLength());
                     chatArea.insertComponent(imageComponent);
-                    doc.insertString(doc.getLength(), "\n", doc.getStyle("regular")); // 图片后再加一个换行
+                    doc.insertString(doc.getLength(), "\n", doc.getStyle(ThemeManager.STYLE_REGULAR)); // 图片后再加一个换行
                 } else {
                     // 普通文本消息
-                    doc.insertString(doc.getLength(), content + "\n", doc.getStyle("regular"));
+                    doc.insertString(doc.getLength(), content + "\n", doc.getStyle(ThemeManager.STYLE_REGULAR));
                 }
                 
                 // 滚动到底部
                 chatArea.setCaretPosition(doc.getLength());
+                if (receivedAt != 0) {
+                    Metrics.MESSAGE_RECEIVE_TO_RENDER.recordSince(receivedAt);
+                }
                 
             } catch (BadLocationException e) {
                 logger.error("Error appending message to chat area", e);
@@ -399,8 +439,8 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
              if (isDisposed) return;
              try {
                  String timeStr = LocalDateTime.now().format(timeFormatter);
-                 doc.insertString(doc.getLength(), "[" + timeStr + "] ", doc.getStyle("time"));
-                 doc.insertString(doc.getLength(), message + "\n", doc.getStyle("system"));
+                 doc.insertString(doc.getLength(), "[" + timeStr + "] ", doc.getStyle(ThemeManager.STYLE_TIME));
+                 doc.insertString(doc.getLength(), message + "\n", doc.getStyle(ThemeManager.STYLE_SYSTEM));
                  chatArea.setCaretPosition(doc.getLength());
              } catch (BadLocationException e) {
                  logger.error("Error appending system message", e);
@@ -424,23 +464,56 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
 
     private void registerMessageListener() {
         if (!isListenerRegistered && context != null && context.getXmppClient() != null) {
-            listener = (from, message) -> {
-                // 确保消息来自当前聊天对象
-                if (from != null && from.equals(contactJid)) {
-                    // 使用 appendMessage 方法处理
-                    appendMessage(contactName, from, message, System.currentTimeMillis(), false);
-                    
-                     // 保存收到的消息到数据库 (如果不是临时会话)
-                    if (!Configuration.getInstance().isTemporaryContact(contactJid)) {
-                        ChatDatabase db = ChatDatabase.getInstance();
-                        String currentUserJid = getCurrentUserJid();
-                        if (db != null && currentUserJid != null) {
-                            // 注意：isLocal 应该是 false 因为这是收到的消息
-                            db.saveMessage(from, currentUserJid, message, false); 
-                        } else {
-                             logger.warn("Database or currentUserJid is null, message from {} not saved.", from);
+            listener = new XMPPClient.MessageListener() {
+                @Override
+                public void onMessageReceived(String from, String message) {
+                    onMessageReceived(from, message, 0);
+                }
+
+                @Override
+                public void onMessageReceived(String from, String message, long receivedAt) {
+                    // 确保消息来自当前聊天对象
+                    if (from != null && from.equals(contactJid)) {
+                        // 使用 appendMessage 方法处理
+                        appendMessage(contactName, from, message, System.currentTimeMillis(), false, receivedAt);
+
+                        // 窗口不在前台时显示系统通知
+                        if (!isWindowActive) {
+                            NotificationManager.getInstance().notifyMessage(from, contactName);
+                        }
+                        // 收到的消息已由 XMPPClient 保存到数据库
+                    }
+                }
+
+                @Override
+                public void onMessageBatch(String from, List<ChatDatabase.ArchivedMessage> messages) {
+                    if (from == null || !from.equals(contactJid)) {
+                        return;
+                    }
+                    int incoming = 0;
+                    for (ChatDatabase.ArchivedMessage message : messages) {
+                        boolean mine = message.isLocal();
+                        if (!mine) {
+                            incoming++;
                         }
+                        appendMessage(mine ? "我" : contactName, message.getSenderJid(), message.getBody(),
+                            message.getTimestamp(), mine, 0, false);
                     }
+                    if (incoming == 0) {
+                        return;
+                    }
+                    int count = incoming;
+                    // 整批只提示一次
+                    SwingUtilities.invokeLater(() -> {
+                        if (!isWindowActive && !isDisposed) {
+                            SoundService.getInstance().play(SoundService.MESSAGE);
+                            ContactWindow contactWindow = context.getContactWindow();
+                            if (contactWindow != null) {
+                                contactWindow.startContactBlinking(from);
+                            }
+                            NotificationManager.getInstance().notifyMessage(from, contactName, count);
+                        }
+                    });
                 }
             };
             context.getXmppClient().addMessageListener(listener);
@@ -460,78 +533,121 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         logger.info("Attempting to load chat history for contact: {}", contactJid);
         appendSystemMessage("[正在加载历史记录...]");
 
-        ChatDatabase db = ChatDatabase.getInstance();
         String currentUserJid = getCurrentUserJid();
 
-        if (db == null || currentUserJid == null) {
-            logger.error("Cannot load chat history: Database instance or current user JID is null.");
+        if (currentUserJid == null) {
+            logger.error("Cannot load chat history: current user JID is null.");
             appendSystemMessage("[错误：无法加载历史记录，数据库或用户信息不可用]");
             historyLoaded = true; // 标记为已尝试加载，避免重复尝试
             return;
         }
+        // 标记为正在加载，避免重复查询
+        historyLoaded = true;
+
+        // 只显示最近一页，向上滚动时再按页加载；本地记录不足时从服务器存档补取
+        historyBackfill = context.getArchiveSync().openConversation(currentUserJid, contactJid,
+            context.getXmppClient()::getMessageArchive, context.getXmppClient()::getDatabase);
+        historyBackfill.loadBefore(Long.MAX_VALUE, Long.MAX_VALUE, HISTORY_PAGE_SIZE)
+            .thenAccept(messages -> renderChatHistory(currentUserJid, messages))
+            .exceptionally(e -> {
+                logger.error("Error loading chat history for contact {}", contactJid, AsyncService.unwrap(e));
+                appendSystemMessage("[错误：加载历史记录时发生异常]");
+                return null;
+            });
+    }
 
-        try {
-            List<ChatMessage> messages = db.getChatHistory(currentUserJid, contactJid);
-            logger.info("Retrieved {} historical messages between {} and {}", messages.size(), currentUserJid, contactJid);
-
-            // 在添加历史记录前，清空现有内容可能是个好主意，以防重复加载
-            // chatArea.setText(""); // 如果需要清空的话
-
-            for (ChatMessage msg : messages) {
-                appendMessage(
-                    msg.isLocal() ? "我" : contactName, // 显示名称
-                    msg.getSenderJid(), // 实际 JID
-                    msg.getMessage(),   // 消息内容
-                    msg.getTimestamp().getTime(), // 时间戳 (ms)
-                    msg.isLocal()       // 是否由我发送
-                );
-            }
-            logger.info("成功加载了 {} 条历史消息", messages.size());
-            appendSystemMessage("[历史记录加载完毕]");
-            historyLoaded = true;
-            // 加载完历史后滚动到底部
-            SwingUtilities.invokeLater(() -> chatArea.setCaretPosition(doc.getLength()));
+    private void renderChatHistory(String currentUserJid, List<ChatMessage> messages) {
+        if (isDisposed) {
+            return;
+        }
+        logger.info("Retrieved {} historical messages between {} and {}", messages.size(), currentUserJid, contactJid);
+
+        // 在添加历史记录前，清空现有内容可能是个好主意，以防重复加载
+        // chatArea.setText(""); // 如果需要清空的话
+
+        for (ChatMessage msg : messages) {
+            appendMessage(
+                msg.isLocal() ? "我" : contactName, // 显示名称
+                msg.getSenderJid(), // 实际 JID
+                msg.getMessage(),   // 消息内容
+                msg.getTimestamp().getTime(), // 时间戳 (ms)
+                msg.isLocal()       // 是否由我发送
+            );
+        }
+        if (!messages.isEmpty()) {
+            rememberOldestShown(messages.get(0));
+        }
+        logger.info("成功加载了 {} 条历史消息", messages.size());
+        appendSystemMessage("[历史记录加载完毕]");
+        // 加载完历史后滚动到底部
+        SwingUtilities.invokeLater(() -> chatArea.setCaretPosition(doc.getLength()));
+    }
 
-        } catch (Exception e) {
-            logger.error("Error loading chat history for contact {}", contactJid, e);
-            appendSystemMessage("[错误：加载历史记录时发生异常]");
-            historyLoaded = true; // 标记为已尝试加载，避免重复失败
+    // 加载已显示记录之前的一页并插入到顶部，保持当前看到的内容不跳动
+    private void loadOlderHistory(JScrollBar verticalBar) {
+        if (!historyLoaded || historyBackfill == null || loadingOlderHistory || olderHistoryExhausted || isDisposed) {
+            return;
         }
+        loadingOlderHistory = true;
+        historyBackfill.loadBefore(oldestShownTimestamp, oldestShownId, HISTORY_PAGE_SIZE)
+            .thenAccept(messages -> {
+                if (isDisposed) {
+                    return;
+                }
+                if (messages.isEmpty()) {
+                    olderHistoryExhausted = historyBackfill.isComplete();
+                    return;
+                }
+                int oldMaximum = verticalBar.getMaximum();
+                int oldValue = verticalBar.getValue();
+                prependMessages(messages);
+                rememberOldestShown(messages.get(0));
+                SwingUtilities.invokeLater(() ->
+                    verticalBar.setValue(oldValue + verticalBar.getMaximum() - oldMaximum));
+            })
+            .exceptionally(e -> {
+                logger.error("Error loading older history for contact {}", contactJid, AsyncService.unwrap(e));
+                return null;
+            })
+            .whenComplete((ignored, e) -> loadingOlderHistory = false);
     }
 
-    public String getContactJid() {
-        return contactJid;
+    private void rememberOldestShown(ChatMessage oldest) {
+        oldestShownTimestamp = oldest.getTimestamp().getTime();
+        oldestShownId = oldest.getId();
     }
 
-    private void initNotificationSound() {
+    // 在 EDT 中调用；不触发新消息的提示音和闪烁
+    private void prependMessages(List<ChatMessage> messages) {
+        int offset = 0;
         try {
-            URL soundUrl = getClass().getResource("/sounds/message.wav");
-            if (soundUrl == null) {
-                logger.warn("Notification sound file not found: /sounds/message.wav");
-                return;
+            for (ChatMessage msg : messages) {
+                LocalDateTime messageTime = LocalDateTime.ofInstant(msg.getTimestamp().toInstant(), ZoneId.systemDefault());
+                offset = insertAt(offset, "[" + messageTime.format(timeFormatter) + "] ", doc.getStyle(ThemeManager.STYLE_TIME));
+                Style senderStyle = msg.isLocal() ? doc.getStyle(ThemeManager.STYLE_MY_SENDER) : doc.getStyle(ThemeManager.STYLE_CONTACT_SENDER);
+                offset = insertAt(offset, (msg.isLocal() ? "我" : contactName) + ": ", senderStyle);
+                if (isImageUrl(msg.getMessage())) {
+                    offset = insertAt(offset, "\n", doc.getStyle(ThemeManager.STYLE_REGULAR));
+                    SimpleAttributeSet imageAttrs = new SimpleAttributeSet();
+                    StyleConstants.setComponent(imageAttrs, new ImageMessageComponent(msg.getMessage()));
+                    offset = insertAt(offset, " ", imageAttrs);
+                    offset = insertAt(offset, "\n", doc.getStyle(ThemeManager.STYLE_REGULAR));
+                } else {
+                    offset = insertAt(offset, msg.getMessage() + "\n", doc.getStyle(ThemeManager.STYLE_REGULAR));
+                }
             }
-            
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(soundUrl);
-            notificationSound = AudioSystem.getClip();
-            notificationSound.open(audioIn);
-            logger.info("Notification sound initialized successfully");
-        } catch (Exception e) {
-            logger.error("Failed to initialize notification sound", e);
+        } catch (BadLocationException e) {
+            logger.error("Error prepending history to chat area", e);
         }
     }
 
-    private void playNotificationSound() {
-        if (notificationSound != null) {
-            try {
-                notificationSound.setFramePosition(0);
-                notificationSound.start();
-                logger.debug("Playing notification sound");
-            } catch (Exception e) {
-                logger.error("Failed to play notification sound", e);
-            }
-        } else {
-            logger.warn("Notification sound not initialized");
-        }
+    private int insertAt(int offset, String text, AttributeSet style) throws BadLocationException {
+        doc.insertString(offset, text, style);
+        return offset + text.length();
+    }
+
+    public String getContactJid() {
+        return contactJid;
     }
 
     // WindowFocusListener 方法
@@ -541,17 +657,16 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         logger.trace("Window gained focus: {}", contactJid);
         isWindowActive = true;
         // 窗口获得焦点时，标记此对话的消息为已读
-        ChatDatabase db = ChatDatabase.getInstance();
         String currentUserJid = getCurrentUserJid();
-        if (db != null && currentUserJid != null) {
-             db.markMessagesAsRead(currentUserJid, contactJid);
+        if (currentUserJid != null) {
+             context.getAsyncService().markMessagesAsRead(currentUserJid, contactJid);
              // 通知 ContactWindow 更新未读状态 (如果 ContactWindow 存在)
              ContactWindow contactWindow = context.getContactWindow();
              if (contactWindow != null) {
                  contactWindow.stopContactBlinking(contactJid); // 停止联系人闪烁
              }
         } else {
-             logger.warn("Could not mark messages as read: DB or UserJID null");
+             logger.warn("Could not mark messages as read: UserJID null");
         }
     }
 
@@ -621,22 +736,6 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
         isDisposed = true;
         isWindowActive = false; // 标记为非活动
 
-        // 停止并关闭声音资源
-        if (notificationSound != null) {
-            try {
-                if (notificationSound.isRunning()) {
-                    notificationSound.stop();
-                }
-                if (notificationSound.isOpen()) {
-                    notificationSound.close();
-                }
-                logger.debug("Notification sound closed.");
-            } catch (Exception e) {
-                logger.error("Error closing notification sound", e);
-            }
-            notificationSound = null;
-        }
-
         // 移除消息监听器
         if (listener != null && context != null && context.getXmppClient() != null) {
             try {
@@ -649,6 +748,8 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
             isListenerRegistered = false;
         }
 
+        context.getThemeManager().removeThemeListener(themeListener);
+
         // 重置状态
         historyLoaded = false;
 
@@ -671,33 +772,28 @@ public class ChatWindow extends JFrame implements WindowFocusListener, WindowLis
                  return;
             }
             
-            try {
-                // 1. 发送消息到服务器
-                context.getXmppClient().sendMessage(contactJid, text);
-                logger.debug("Message sent to {}: {}", contactJid, text.length() > 20 ? text.substring(0, 20) + "..." : text);
-
-                long timestamp = System.currentTimeMillis();
-                
-                // 2. 在本地界面显示消息
-                appendMessage("我", currentUserJid, text, timestamp, true);
-                
-                // 3. 保存消息到数据库 (如果不是临时会话)
-                ChatDatabase db = ChatDatabase.getInstance();
-                if (db != null) {
-                     // isLocal = true
-                     db.saveMessage(currentUserJid, contactJid, text, true);
-                } else {
-                     logger.warn("Database instance is null, sent message not saved.");
-                }
-
-                // 4. 清空输入框
-                inputArea.setText("");
-                inputArea.requestFocusInWindow(); // 保持焦点在输入框
-
-            } catch (Exception e) {
-                logger.error("Error sending message to {}", contactJid, e);
-                showErrorDialog("发送消息失败: " + e.getMessage());
-            }
+            // 1. 清空输入框，发送失败时再放回
+            inputArea.setText("");
+            inputArea.requestFocusInWindow(); // 保持焦点在输入框
+
+            // 2. 在发送线程中发送消息到服务器，完成后回到 EDT
+            context.getAsyncService().sendMessage(contactJid, text)
+                .thenAccept(messageId -> {
+                    logger.debug("Message sent to {}: {}", contactJid, text.length() > 20 ? text.substring(0, 20) + "..." : text);
+                    // 3. 在本地界面显示消息
+                    appendMessage("我", currentUserJid, text, System.currentTimeMillis(), true);
+                    // 4. 保存消息到数据库 (临时会话由数据库层跳过)
+                    context.getAsyncService().saveMessage(currentUserJid, contactJid, text, true, messageId);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = AsyncService.unwrap(e);
+                    logger.error("Error sending message to {}", contactJid, cause);
+                    if (inputArea.getText().isEmpty()) {
+                        inputArea.setText(text);
+                    }
+                    showErrorDialog("发送消息失败: " + cause.getMessage());
+                    return null;
+                });
         }
     }
 } 
\ No newline at end of file
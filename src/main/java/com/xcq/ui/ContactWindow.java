@@ -2,19 +2,22 @@ package com.xcq.ui;
 
 import com.xcq.core.ApplicationContext;
 import com.xcq.db.ChatDatabase;
+import com.xcq.service.AsyncService;
+import com.xcq.service.VCardCache;
 import com.xcq.ui.dialog.AddContactDialog;
 import com.xcq.ui.dialog.VCardDialog;
 import com.xcq.ui.dialog.SettingsDialog;
 import com.xcq.ui.model.ContactTreeModel;
 import com.xcq.ui.renderer.ContactTreeCellRenderer;
+import com.xcq.util.NotificationManager;
+import com.xcq.util.SoundService;
 import com.xcq.xmpp.XMPPClient;
 import org.jivesoftware.smack.roster.Roster;
 import org.jivesoftware.smack.roster.RosterEntry;
 import org.jivesoftware.smack.roster.RosterGroup;
 import org.jivesoftware.smack.roster.RosterListener;
+import org.jivesoftware.smack.roster.RosterLoadedListener;
 import org.jivesoftware.smack.packet.Presence;
-import org.jivesoftware.smack.SmackException;
-import org.jivesoftware.smackx.vcardtemp.VCardManager;
 import org.jivesoftware.smackx.vcardtemp.packet.VCard;
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.Jid;
@@ -35,6 +38,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.List;
 
 public class ContactWindow extends JFrame {
     private static final Logger logger = LoggerFactory.getLogger(ContactWindow.class);
@@ -42,21 +46,36 @@ public class ContactWindow extends JFrame {
     private final JTree contactTree;
     private final ContactTreeModel treeModel;
     private final ContactTreeCellRenderer cellRenderer;
+    private final VCardCache.AvatarListener avatarListener = this::onAvatarChanged;
     private final JTextField searchField;
     private final JPopupMenu contactPopupMenu;
     private final JLabel statusLabel;
     private final JLabel usernameLabel;
     private final JComboBox<String> statusComboBox;
     private final Map<String, ChatWindow> chatWindowCache = new HashMap<>();  // 添加聊天窗口缓存
+    private XMPPClient.MessageListener messageListener;
 
     public ContactWindow(ApplicationContext context) {
         this.context = context;
         
         // 设置窗口属性
-        setTitle("XCQ - 联系人");
+        context.setContactWindow(this);
+        setTitle(context.isPrimary() ? "XCQ - 联系人"
+            : "XCQ - 联系人 (" + context.getXmppClient().getAccountJid() + ")");
         setSize(358, 727);
         setLocationRelativeTo(null);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        if (context.isPrimary()) {
+            setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        } else {
+            // 关闭其他账号的窗口只退出该账号
+            setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    context.closeAccount(context);
+                }
+            });
+        }
 
         // 设置窗口图标
         ImageIcon logoIcon = new ImageIcon(getClass().getResource("/logo.png"));
@@ -156,8 +175,9 @@ public class ContactWindow extends JFrame {
         treeModel = new ContactTreeModel();
         contactTree = new JTree(treeModel);
         treeModel.setTree(contactTree);
-        cellRenderer = new ContactTreeCellRenderer(treeModel);
+        cellRenderer = new ContactTreeCellRenderer(treeModel, context.getVCardCache());
         contactTree.setCellRenderer(cellRenderer);
+        context.getVCardCache().addAvatarListener(avatarListener);
         contactTree.setRootVisible(false);
         contactTree.setShowsRootHandles(true);
         contactTree.setExpandsSelectedPaths(true);
@@ -175,6 +195,9 @@ public class ContactWindow extends JFrame {
                         } else if (SwingUtilities.isRightMouseButton(e)) {
                             showContactPopupMenu(e, (RosterEntry) node.getUserObject());
                         }
+                    } else if (node.getUserObject() instanceof ContactTreeModel.Contact && e.getClickCount() == 2) {
+                        ContactTreeModel.Contact contact = (ContactTreeModel.Contact) node.getUserObject();
+                        openChatWindow(contact.getJid(), contact.getName());
                     }
                 }
             }
@@ -210,6 +233,11 @@ public class ContactWindow extends JFrame {
         // 右侧按钮面板
         JPanel rightButtonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         
+        // 同时登录其他账号
+        JButton addAccountButton = new JButton("添加账号");
+        addAccountButton.addActionListener(e -> addAccount());
+        rightButtonPanel.add(addAccountButton);
+
         // 设置按钮
         JButton settingsButton = new JButton("设置");
         settingsButton.addActionListener(e -> showSettingsDialog());
@@ -238,8 +266,38 @@ public class ContactWindow extends JFrame {
     private void setupXMPPListeners() {
         XMPPClient xmppClient = context.getXmppClient();
         if (xmppClient != null && xmppClient.isConnected()) {
+            // 未打开聊天窗口的联系人发来消息时闪烁并提示
+            messageListener = new XMPPClient.MessageListener() {
+                @Override
+                public void onMessageReceived(String from, String message) {
+                    notifyIncoming(from, 1);
+                }
+
+                // 批量到达的消息每个联系人只提示一次，自己在其他设备上发出的不提示
+                @Override
+                public void onMessageBatch(String contactJid, List<ChatDatabase.ArchivedMessage> messages) {
+                    int incoming = (int) messages.stream().filter(m -> !m.isLocal()).count();
+                    if (incoming > 0) {
+                        notifyIncoming(contactJid, incoming);
+                    }
+                }
+            };
+            xmppClient.addMessageListener(messageListener);
+
             // 添加花名册监听器
             Roster roster = Roster.getInstanceFor(xmppClient.getConnection());
+            // 花名册同步完成后用服务器数据替换缓存的联系人
+            roster.addRosterLoadedListener(new RosterLoadedListener() {
+                @Override
+                public void onRosterLoaded(Roster loaded) {
+                    SwingUtilities.invokeLater(() -> refreshContacts());
+                }
+
+                @Override
+                public void onRosterLoadingFailed(Exception e) {
+                    logger.warn("Failed to load roster, showing cached contacts", e);
+                }
+            });
             roster.addRosterListener(new RosterListener() {
                 @Override
                 public void entriesAdded(Collection<Jid> addresses) {
@@ -258,6 +316,7 @@ public class ContactWindow extends JFrame {
 
                 @Override
                 public void presenceChanged(Presence presence) {
+                    context.getVCardCache().onPresence(presence);
                     SwingUtilities.invokeLater(() -> {
                         String jid = presence.getFrom().asBareJid().toString();
                         cellRenderer.updatePresence(presence.getFrom().asBareJid(), presence.getMode());
@@ -273,11 +332,31 @@ public class ContactWindow extends JFrame {
         }
     }
 
+    private void notifyIncoming(String from, int count) {
+        SwingUtilities.invokeLater(() -> {
+            ChatWindow chatWindow = chatWindowCache.get(from);
+            if (chatWindow == null || !chatWindow.isDisplayable()) {
+                startContactBlinking(from);
+                SoundService.getInstance().play(SoundService.MESSAGE);
+                NotificationManager.getInstance().notifyMessage(from, getContactName(from), count);
+            }
+        });
+    }
+
+    // 头像加载完成或联系人更换头像后重绘联系人列表
+    private void onAvatarChanged(String jid) {
+        contactTree.repaint();
+    }
+
     private void refreshContacts() {
         XMPPClient xmppClient = context.getXmppClient();
         if (xmppClient != null && xmppClient.isConnected()) {
             Roster roster = Roster.getInstanceFor(xmppClient.getConnection());
-            treeModel.updateContacts(roster.getGroups(), roster.getUnfiledEntries());
+            if (roster.isLoaded()) {
+                treeModel.updateContacts(roster.getGroups(), roster.getUnfiledEntries());
+            } else {
+                treeModel.updateCachedContacts(xmppClient.getCachedRosterItems());
+            }
             
             // 展开所有节点
             for (int i = 0; i < contactTree.getRowCount(); i++) {
@@ -401,21 +480,17 @@ public class ContactWindow extends JFrame {
                     String group = dialog.getSelectedGroup();
                     String message = dialog.getMessage();
                     
-                    if (!"未分组".equals(group)) {
-                        roster.createGroup(group);
-                        roster.createEntry(JidCreate.bareFrom(jid), null, new String[]{group});
-                    } else {
-                        roster.createEntry(JidCreate.bareFrom(jid), null, new String[0]);
-                    }
+                    context.getAsyncService()
+                        .addContact(JidCreate.bareFrom(jid), "未分组".equals(group) ? null : group)
+                        .exceptionally(ex -> {
+                            showError("添加联系人失败", ex);
+                            return null;
+                        });
                     
                     // TODO: 发送订阅请求
                     
                 } catch (Exception ex) {
-                    logger.error("Failed to add contact", ex);
-                    JOptionPane.showMessageDialog(this,
-                        "添加联系人失败: " + ex.getMessage(),
-                        "错误",
-                        JOptionPane.ERROR_MESSAGE);
+                    showError("添加联系人失败", ex);
                 }
             }
         }
@@ -469,16 +544,12 @@ public class ContactWindow extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             String newName = nameField.getText().trim();
             if (!newName.isEmpty()) {
-                try {
-                    entry.setName(newName);
-                    refreshContacts();
-                } catch (Exception ex) {
-                    logger.error("Failed to rename contact", ex);
-                    JOptionPane.showMessageDialog(this,
-                        "修改昵称失败: " + ex.getMessage(),
-                        "错误",
-                        JOptionPane.ERROR_MESSAGE);
-                }
+                context.getAsyncService().renameContact(entry, newName)
+                    .thenRun(this::refreshContacts)
+                    .exceptionally(ex -> {
+                        showError("修改昵称失败", ex);
+                        return null;
+                    });
             }
         }
     }
@@ -490,45 +561,37 @@ public class ContactWindow extends JFrame {
             JOptionPane.YES_NO_OPTION);
             
         if (result == JOptionPane.YES_OPTION) {
-            try {
-                Roster roster = Roster.getInstanceFor(context.getXmppClient().getConnection());
-                roster.removeEntry(entry);
-                refreshContacts();
-            } catch (Exception ex) {
-                logger.error("Failed to remove contact", ex);
-                JOptionPane.showMessageDialog(this,
-                    "删除联系人失败: " + ex.getMessage(),
-                    "错误",
-                    JOptionPane.ERROR_MESSAGE);
-            }
+            context.getAsyncService().removeContact(entry)
+                .thenRun(this::refreshContacts)
+                .exceptionally(ex -> {
+                    showError("删除联系人失败", ex);
+                    return null;
+                });
         }
     }
 
     private void showVCard(RosterEntry entry) {
-        try {
-            XMPPClient xmppClient = context.getXmppClient();
-            if (xmppClient != null && xmppClient.isConnected()) {
-                VCardManager vCardManager = VCardManager.getInstanceFor(xmppClient.getConnection());
-                VCard vCard = vCardManager.loadVCard(entry.getJid().asEntityBareJidIfPossible());
-                VCardDialog dialog = new VCardDialog(this, entry, vCard);
-                dialog.setVisible(true);
-            }
-        } catch (Exception ex) {
-            logger.error("Failed to load vCard", ex);
-            JOptionPane.showMessageDialog(this,
-                "获取联系人资料失败: " + ex.getMessage(),
-                "错误",
-                JOptionPane.ERROR_MESSAGE);
+        XMPPClient xmppClient = context.getXmppClient();
+        if (xmppClient != null && xmppClient.isConnected()) {
+            context.getVCardCache().getVCard(entry.getJid().asBareJid().toString())
+                .thenAccept(vCard -> new VCardDialog(this, entry, vCard).setVisible(true))
+                .exceptionally(ex -> {
+                    showError("获取联系人资料失败", ex);
+                    return null;
+                });
         }
     }
 
     private void openChatWindow(RosterEntry entry) {
-        String jid = entry.getJid().toString();
+        openChatWindow(entry.getJid().toString(), entry.getName());
+    }
+
+    private void openChatWindow(String jid, String name) {
         ChatWindow chatWindow = chatWindowCache.get(jid);
         
         if (chatWindow == null || !chatWindow.isDisplayable()) {
             // 如果窗口不存在或已被销毁，创建新窗口
-            chatWindow = new ChatWindow(context, jid, entry.getName());
+            chatWindow = new ChatWindow(context, jid, name);
             chatWindow.addWindowListener(new WindowAdapter() {
                 @Override
                 public void windowClosed(WindowEvent e) {
@@ -570,28 +633,42 @@ public class ContactWindow extends JFrame {
                         statusIcon = "⚫";
                 }
 
-                try {
-                    Presence presence;
-                    if (mode == null) {
-                        presence = new Presence(Presence.Type.unavailable);
-                    } else {
-                        presence = new Presence(Presence.Type.available);
-                        presence.setMode(mode);
-                    }
-                    
-                    xmppClient.getConnection().sendStanza(presence);
-                    statusLabel.setText(statusIcon);
-                } catch (SmackException.NotConnectedException | InterruptedException e) {
-                    logger.error("Failed to update presence", e);
-                    JOptionPane.showMessageDialog(this,
-                        "更新状态失败: " + e.getMessage(),
-                        "错误",
-                        JOptionPane.ERROR_MESSAGE);
+                Presence presence;
+                if (mode == null) {
+                    presence = new Presence(Presence.Type.unavailable);
+                } else {
+                    presence = new Presence(Presence.Type.available);
+                    presence.setMode(mode);
                 }
+
+                context.getAsyncService().sendPresence(presence)
+                    .thenRun(() -> statusLabel.setText(statusIcon))
+                    .exceptionally(ex -> {
+                        showError("更新状态失败", ex);
+                        return null;
+                    });
             }
         }
     }
 
+    // 在 EDT 中显示异步操作的错误
+    private void showError(String message, Throwable ex) {
+        Throwable cause = AsyncService.unwrap(ex);
+        logger.error(message, cause);
+        JOptionPane.showMessageDialog(this,
+            message + ": " + cause.getMessage(),
+            "错误",
+            JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void addAccount() {
+        try {
+            new LoginWindow(context.openAccount()).setVisible(true);
+        } catch (IllegalStateException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "添加账号", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
     private void showSettingsDialog() {
         SettingsDialog dialog = new SettingsDialog(this, context);
         dialog.setVisible(true);
@@ -612,18 +689,17 @@ public class ContactWindow extends JFrame {
                 }
                 chatWindowCache.clear();
                 
-                // 断开 XMPP 连接
-                XMPPClient xmppClient = context.getXmppClient();
-                if (xmppClient != null && xmppClient.isConnected()) {
-                    xmppClient.disconnect();
-                }
-                
-                // 显示登录窗口
-                LoginWindow loginWindow = new LoginWindow(context);
-                loginWindow.setVisible(true);
-                
                 // 关闭当前窗口
                 dispose();
+
+                // 在后台断开 XMPP 连接，完成后显示登录窗口
+                context.getAsyncService().disconnect().whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        logger.warn("Failed to disconnect on logout", AsyncService.unwrap(e));
+                    }
+                    LoginWindow loginWindow = new LoginWindow(context);
+                    loginWindow.setVisible(true);
+                });
                 
             } catch (Exception ex) {
                 logger.error("Failed to logout", ex);
@@ -649,8 +725,26 @@ public class ContactWindow extends JFrame {
         });
     }
 
+    private String getContactName(String jid) {
+        try {
+            Roster roster = Roster.getInstanceFor(context.getXmppClient().getConnection());
+            RosterEntry entry = roster.getEntry(JidCreate.bareFrom(jid));
+            if (entry != null && entry.getName() != null) {
+                return entry.getName();
+            }
+        } catch (Exception e) {
+            logger.debug("Could not resolve contact name for {}", jid, e);
+        }
+        return jid;
+    }
+
     @Override
     public void dispose() {
+        context.getVCardCache().removeAvatarListener(avatarListener);
+        if (messageListener != null) {
+            context.getXmppClient().removeMessageListener(messageListener);
+            messageListener = null;
+        }
         // 关闭所有聊天窗口
         for (ChatWindow window : chatWindowCache.values()) {
             window.dispose();
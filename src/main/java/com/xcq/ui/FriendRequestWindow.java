@@ -29,7 +29,7 @@ public class FriendRequestWindow extends JDialog {
         
         String message = String.format("<html>用户 %s (%s) 请求添加您为好友</html>", nickname, jid);
         JLabel messageLabel = new JLabel(message);
-        messageLabel.setFont(new Font("微软雅黑", Font.PLAIN, 14));
+        messageLabel.setFont(context.getThemeManager().getCurrentTheme().getFont(Font.PLAIN, 14));
         
         messagePanel.add(messageLabel, BorderLayout.CENTER);
         add(messagePanel, BorderLayout.CENTER);
@@ -47,12 +47,12 @@ public class FriendRequestWindow extends JDialog {
         rejectButton.setPreferredSize(buttonSize);
 
         acceptButton.addActionListener(e -> {
-            context.getXmppClient().acceptSubscription(jid);
+            context.getAsyncService().acceptSubscription(jid);
             dispose();
         });
 
         rejectButton.addActionListener(e -> {
-            context.getXmppClient().rejectSubscription(jid);
+            context.getAsyncService().rejectSubscription(jid);
             dispose();
         });
 
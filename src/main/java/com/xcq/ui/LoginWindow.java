@@ -1,8 +1,12 @@
 package com.xcq.ui;
 
 import com.xcq.core.ApplicationContext;
+import com.xcq.core.ConfigKeys;
 import com.xcq.core.Configuration;
+import com.xcq.plugin.PluginManager;
 import com.xcq.theme.Theme;
+import com.xcq.theme.ThemeManager;
+import com.xcq.util.ExecutorProvider;
 import com.xcq.xmpp.XMPPClient;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.XMPPException;
@@ -18,7 +22,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class LoginWindow extends JFrame {
     private static final Logger logger = LoggerFactory.getLogger(LoginWindow.class);
@@ -39,15 +42,17 @@ public class LoginWindow extends JFrame {
     
     private final ExecutorService executorService;
     private ContactWindow contactWindow;
+    private boolean loggedIn = false;
+    private final ThemeManager.ThemeListener themeListener = this::applyTheme;
 
     public LoginWindow(ApplicationContext context) {
         this.context = context;
         this.config = context.getConfiguration();
-        this.executorService = Executors.newCachedThreadPool();
+        this.executorService = ExecutorProvider.getInstance().newBlockingExecutor("login", 2);
 
-        // 设置窗口属性
-        setTitle("XCQ XMPP 客户端 - 登录");
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // 设置窗口属性，再登录一个账号时关闭窗口不退出程序
+        setTitle(context.isPrimary() ? "XCQ XMPP 客户端 - 登录" : "XCQ XMPP 客户端 - 添加账号");
+        setDefaultCloseOperation(context.isPrimary() ? JFrame.EXIT_ON_CLOSE : JFrame.DISPOSE_ON_CLOSE);
         setLocationRelativeTo(null);
         setResizable(false);
 
@@ -58,7 +63,7 @@ public class LoginWindow extends JFrame {
 
         // 添加标题
         JLabel titleLabel = new JLabel("XCQ");
-        titleLabel.setFont(new Font("微软雅黑", Font.BOLD, 24));
+        titleLabel.setFont(context.getThemeManager().getCurrentTheme().getFont(Font.BOLD, 24));
         titleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
         mainPanel.add(titleLabel);
         mainPanel.add(Box.createVerticalStrut(20));
@@ -75,7 +80,7 @@ public class LoginWindow extends JFrame {
         formPanel.add(new JLabel("服务器地址:"), gbc);
         gbc.gridx = 1;
         serverField = new JTextField(20);
-        serverField.setText(config.get("xmpp.server", ""));
+        serverField.setText(config.get(ConfigKeys.XMPP_SERVER));
         formPanel.add(serverField, gbc);
 
         // 端口
@@ -84,7 +89,7 @@ public class LoginWindow extends JFrame {
         formPanel.add(new JLabel("端口:"), gbc);
         gbc.gridx = 1;
         portField = new JTextField(20);
-        portField.setText(String.valueOf(config.get("xmpp.port", 5222)));
+        portField.setText(String.valueOf(config.get(ConfigKeys.XMPP_PORT)));
         formPanel.add(portField, gbc);
 
         // 用户名
@@ -93,7 +98,9 @@ public class LoginWindow extends JFrame {
         formPanel.add(new JLabel("用户名:"), gbc);
         gbc.gridx = 1;
         usernameField = new JTextField(20);
-        usernameField.setText(config.get("xmpp.username", ""));
+        if (context.isPrimary()) {
+            usernameField.setText(config.get(ConfigKeys.XMPP_USERNAME));
+        }
         formPanel.add(usernameField, gbc);
 
         // 密码
@@ -102,8 +109,8 @@ public class LoginWindow extends JFrame {
         formPanel.add(new JLabel("密码:"), gbc);
         gbc.gridx = 1;
         passwordField = new JPasswordField(20);
-        if (config.get("xmpp.rememberPassword", false)) {
-            passwordField.setText(config.get("xmpp.password", ""));
+        if (context.isPrimary() && config.get(ConfigKeys.XMPP_REMEMBER_PASSWORD)) {
+            passwordField.setText(config.get(ConfigKeys.XMPP_PASSWORD));
         }
         formPanel.add(passwordField, gbc);
 
@@ -111,7 +118,7 @@ public class LoginWindow extends JFrame {
         gbc.gridx = 1;
         gbc.gridy = 4;
         rememberPasswordCheck = new JCheckBox("记住密码");
-        rememberPasswordCheck.setSelected(config.get("xmpp.rememberPassword", false));
+        rememberPasswordCheck.setSelected(config.get(ConfigKeys.XMPP_REMEMBER_PASSWORD));
         formPanel.add(rememberPasswordCheck, gbc);
 
         // 高级设置按钮
@@ -128,7 +135,7 @@ public class LoginWindow extends JFrame {
         gbc.gridy = 6;
         gbc.gridwidth = 2;
         tlsCheck = new JCheckBox("启用TLS加密");
-        tlsCheck.setSelected(config.get("xmpp.tls", true));
+        tlsCheck.setSelected(config.get(ConfigKeys.XMPP_TLS));
         advancedPanel.add(tlsCheck, gbc);
         formPanel.add(advancedPanel, gbc);
 
@@ -157,8 +164,9 @@ public class LoginWindow extends JFrame {
         // 调整窗口大小
         setSize(400, 500);
         
-        // 应用当前主题
+        // 应用当前主题，主题文件修改后自动刷新
         applyTheme();
+        context.getThemeManager().addThemeListener(themeListener);
     }
 
     private void toggleAdvancedPanel() {
@@ -188,15 +196,17 @@ public class LoginWindow extends JFrame {
             return;
         }
 
-        // 保存配置
-        config.set("xmpp.server", server);
-        config.set("xmpp.port", port);
-        config.set("xmpp.username", username);
-        config.set("xmpp.tls", useTLS);
-        if (rememberPassword) {
-            config.set("xmpp.password", password);
+        // 保存配置，其他账号的登录信息不保存
+        if (context.isPrimary()) {
+            config.set(ConfigKeys.XMPP_SERVER, server);
+            config.set(ConfigKeys.XMPP_PORT, port);
+            config.set(ConfigKeys.XMPP_USERNAME, username);
+            config.set(ConfigKeys.XMPP_TLS, useTLS);
+            if (rememberPassword) {
+                config.set(ConfigKeys.XMPP_PASSWORD, password);
+            }
+            config.set(ConfigKeys.XMPP_REMEMBER_PASSWORD, rememberPassword);
         }
-        config.set("xmpp.rememberPassword", rememberPassword);
 
         // 禁用登录按钮
         loginButton.setEnabled(false);
@@ -221,8 +231,20 @@ public class LoginWindow extends JFrame {
                 xmppClient.initialize(config);
                 xmppClient.connect();
 
+                // 激活等待登录事件的插件
+                context.getPluginManager().fireEvent(PluginManager.EVENT_LOGIN);
+                if (!context.isPrimary()) {
+                    // 账号的数据库在登录后才确定，在这里启动它的维护任务
+                    context.startMaintenance();
+                    Runtime runtime = Runtime.getRuntime();
+                    logger.info("Account {} logged in, {} accounts open, heap used {} MB",
+                        xmppClient.getAccountJid(), context.getAccounts().size() + 1,
+                        (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+                }
+
                 // 登录成功
                 SwingUtilities.invokeLater(() -> {
+                    loggedIn = true;
                     statusLabel.setText("登录成功");
                     dispose();
                     contactWindow = new ContactWindow(context);
@@ -239,7 +261,10 @@ public class LoginWindow extends JFrame {
     }
 
     private void applyTheme() {
-        Theme theme = context.getThemeManager().getCurrentTheme();
+        applyTheme(context.getThemeManager().getCurrentTheme());
+    }
+
+    private void applyTheme(Theme theme) {
         if (theme != null) {
             mainPanel.setBackground(theme.getBackgroundColor());
             statusLabel.setForeground(theme.getTextColor());
@@ -256,13 +281,18 @@ public class LoginWindow extends JFrame {
 
     @Override
     public void dispose() {
+        context.getThemeManager().removeThemeListener(themeListener);
         executorService.shutdown();
+        // 放弃登录其他账号时释放为它创建的上下文
+        if (!loggedIn && !context.isPrimary()) {
+            context.closeAccount(context);
+        }
         super.dispose();
     }
 
     private void loadSavedCredentials() {
-        String savedUsername = context.getConfiguration().get("login.username", "");
-        boolean rememberMe = context.getConfiguration().get("login.remember", false);
+        String savedUsername = context.getConfiguration().get(ConfigKeys.LOGIN_USERNAME);
+        boolean rememberMe = context.getConfiguration().get(ConfigKeys.LOGIN_REMEMBER);
         
         if (!savedUsername.isEmpty() && rememberMe) {
             usernameField.setText(savedUsername);
@@ -272,11 +302,11 @@ public class LoginWindow extends JFrame {
 
     private void saveCredentials() {
         if (rememberPasswordCheck.isSelected()) {
-            config.set("login.username", usernameField.getText());
-            config.set("login.remember", true);
+            config.set(ConfigKeys.LOGIN_USERNAME, usernameField.getText());
+            config.set(ConfigKeys.LOGIN_REMEMBER, true);
         } else {
-            config.remove("login.username");
-            config.set("login.remember", false);
+            config.remove(ConfigKeys.LOGIN_USERNAME);
+            config.set(ConfigKeys.LOGIN_REMEMBER, false);
         }
     }
 } 
\ No newline at end of file
@@ -1,11 +1,13 @@
 package com.xcq.ui;
 
 import com.xcq.core.ApplicationContext;
+import com.xcq.core.ConfigKeys;
 import com.xcq.core.Configuration;
 import com.xcq.db.ChatDatabase;
 import com.xcq.ui.model.ContactTreeModel;
 import com.xcq.ui.renderer.ContactTreeCellRenderer;
 import com.xcq.util.NotificationManager;
+import com.xcq.util.SoundService;
 import com.xcq.xmpp.XMPPClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,11 +18,8 @@ import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import java.net.URL;
 
 public class MainWindow extends JFrame implements XMPPClient.MessageListener {
     private static final Logger logger = LoggerFactory.getLogger(MainWindow.class);
@@ -33,7 +32,6 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
     private final ContactWindow contactWindow;
     private final ChatWindow chatWindow;
     private final ContactTreeCellRenderer contactTreeCellRenderer;
-    private Clip notificationSound;
 
     public MainWindow(ApplicationContext context) {
         this.context = context;
@@ -48,9 +46,6 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        // 初始化提示音
-        initNotificationSound();
-
         tabbedPane = new JTabbedPane();
         getContentPane().add(tabbedPane, BorderLayout.CENTER);
 
@@ -62,7 +57,7 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
 
         // 创建联系人树
         contactTree = new JTree(contactTreeModel);
-        contactTreeCellRenderer = new ContactTreeCellRenderer(contactTreeModel);
+        contactTreeCellRenderer = new ContactTreeCellRenderer(contactTreeModel, context.getVCardCache());
         contactTree.setCellRenderer(contactTreeCellRenderer);
         contactTree.setRootVisible(false);
         contactTree.setShowsRootHandles(true);
@@ -98,6 +93,8 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
             @Override
             public void windowClosing(WindowEvent e) {
                 logger.info("正在关闭应用程序...");
+                // 在 EDT 中读取窗口状态，由 Configuration 的关闭钩子写盘
+                saveWindowState();
                 // 移除消息监听器
                 if (context.getXmppClient() != null) {
                     context.getXmppClient().removeMessageListener(MainWindow.this);
@@ -105,41 +102,36 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
                 for (ChatWindow window : chatWindows.values()) {
                     window.dispose();
                 }
-                context.getXmppClient().disconnect();
-                System.exit(0);
+                // 断开连接在后台执行，完成后退出
+                context.getAsyncService().disconnect().whenComplete((ignored, ex) -> System.exit(0));
             }
         });
     }
 
-    private void initNotificationSound() {
-        try {
-            URL soundUrl = getClass().getResource("/sounds/message.wav");
-            if (soundUrl == null) {
-                logger.warn("Notification sound file not found: /sounds/message.wav");
-                return;
-            }
-            
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(soundUrl);
-            notificationSound = AudioSystem.getClip();
-            notificationSound.open(audioIn);
-            logger.info("Notification sound initialized successfully");
-        } catch (Exception e) {
-            logger.error("Failed to initialize notification sound", e);
+    // 批量到达的消息由聊天窗口自己的监听器显示，这里每个联系人只提示一次
+    @Override
+    public void onMessageBatch(String from, List<ChatDatabase.ArchivedMessage> messages) {
+        int incoming = (int) messages.stream().filter(m -> !m.isLocal()).count();
+        if (incoming == 0) {
+            return;
         }
-    }
+        SwingUtilities.invokeLater(() -> {
+            ContactTreeModel.Contact contact = contactTreeModel.findContact(from);
+            String nickname = contact != null ? contact.getName() : from;
+
+            SoundService.getInstance().play(SoundService.MESSAGE);
+            contactTreeCellRenderer.startBlinking(from);
+            contactTree.repaint();
 
-    private void playNotificationSound() {
-        if (notificationSound != null) {
-            try {
-                notificationSound.setFramePosition(0);
-                notificationSound.start();
-                logger.debug("Playing notification sound");
-            } catch (Exception e) {
-                logger.error("Failed to play notification sound", e);
+            logger.info("收到与 {} 的 {} 条消息", nickname, messages.size());
+            ChatWindow chatWindow = chatWindows.get(from);
+            if (chatWindow == null || !chatWindow.isFocused()) {
+                NotificationManager.getInstance().notifyMessage(from, nickname, incoming);
             }
-        } else {
-            logger.warn("Notification sound not initialized");
-        }
+            if (config.isAutoOpenChat()) {
+                openChat(from, nickname);
+            }
+        });
     }
 
     @Override
@@ -153,20 +145,13 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
             }
 
             // 播放提示音
-            playNotificationSound();
+            SoundService.getInstance().play(SoundService.MESSAGE);
             
             // 在联系人列表中闪烁该联系人
             contactTreeCellRenderer.startBlinking(from);
             contactTree.repaint();
 
-            // 保存消息到数据库
-            if (!Configuration.getInstance().isTemporaryContact(from)) {
-                ChatDatabase db = ChatDatabase.getInstance();
-                String currentUserJid = getCurrentUserJid();
-                if (db != null && currentUserJid != null) {
-                    db.saveMessage(from, currentUserJid, message, false);
-                }
-            }
+            // 收到的消息已由 XMPPClient 保存到数据库
 
             // 如果聊天窗口已经打开，则显示消息
             ChatWindow chatWindow = chatWindows.get(from);
@@ -174,9 +159,11 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
                 chatWindow.appendMessage(nickname, from, message, System.currentTimeMillis(), false);
             }
 
-            // 显示系统通知
-            String notificationMessage = String.format("收到来自 %s 的新消息", nickname);
-            logger.info(notificationMessage);
+            // 显示系统通知（短时间内的多条消息合并显示）
+            logger.info("收到来自 {} 的新消息", nickname);
+            if (chatWindow == null || !chatWindow.isFocused()) {
+                NotificationManager.getInstance().notifyMessage(from, nickname);
+            }
             
             // 自动打开聊天窗口（如果配置允许）
             if (config.isAutoOpenChat()) {
@@ -185,13 +172,6 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
         });
     }
 
-    private String getCurrentUserJid() {
-        if (context != null && context.getXmppClient() != null && context.getXmppClient().isConnected()) {
-            return context.getXmppClient().getConnection().getUser().toString();
-        }
-        return null;
-    }
-
     public void openChat(String jid, String name) {
         ChatWindow chatWindow = chatWindows.get(jid);
         if (chatWindow == null) {
@@ -222,4 +202,15 @@ public class MainWindow extends JFrame implements XMPPClient.MessageListener {
     public ChatWindow getChatWindow() {
         return chatWindow;
     }
-} 
\ No newline at end of file
+
+    private void saveWindowState() {
+        Point location = getLocation();
+        Dimension size = getSize();
+        boolean isMaximized = (getExtendedState() & JFrame.MAXIMIZED_BOTH) == JFrame.MAXIMIZED_BOTH;
+        config.set(ConfigKeys.WINDOW_X, location.x);
+        config.set(ConfigKeys.WINDOW_Y, location.y);
+        config.set(ConfigKeys.WINDOW_WIDTH, size.width);
+        config.set(ConfigKeys.WINDOW_HEIGHT, size.height);
+        config.set(ConfigKeys.WINDOW_MAXIMIZED, isMaximized);
+    }
+}
@@ -1,7 +1,7 @@
 package com.xcq.ui;
 
 import com.xcq.core.ApplicationContext;
-import com.xcq.db.ChatDatabase;
+import com.xcq.service.AsyncService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,11 +37,18 @@ public class SettingsWindow extends JFrame {
                 JOptionPane.YES_NO_OPTION);
             
             if (result == JOptionPane.YES_OPTION) {
-                ChatDatabase.getInstance().deleteAllChatHistory();
-                JOptionPane.showMessageDialog(this,
-                    "所有聊天记录已删除",
-                    "提示",
-                    JOptionPane.INFORMATION_MESSAGE);
+                context.getAsyncService().deleteAllChatHistory()
+                    .thenRun(() -> JOptionPane.showMessageDialog(this,
+                        "所有聊天记录已删除",
+                        "提示",
+                        JOptionPane.INFORMATION_MESSAGE))
+                    .exceptionally(ex -> {
+                        JOptionPane.showMessageDialog(this,
+                            "删除聊天记录失败: " + AsyncService.unwrap(ex).getMessage(),
+                            "错误",
+                            JOptionPane.ERROR_MESSAGE);
+                        return null;
+                    });
             }
         });
         buttonPanel.add(deleteAllHistoryButton);
@@ -1,14 +1,13 @@
 package com.xcq.ui.components;
 
+import com.xcq.util.ImageLoader;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
 import java.net.URI;
-import java.net.URL;
-import javax.imageio.ImageIO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,53 +40,19 @@ public class ImageMessageComponent extends JPanel {
     }
 
     private void loadImage() {
-        SwingWorker<BufferedImage, Void> worker = new SwingWorker<>() {
-            @Override
-            protected BufferedImage doInBackground() {
-                try {
-                    BufferedImage originalImage = ImageIO.read(new URL(imageUrl));
-                    if (originalImage != null) {
-                        return createThumbnail(originalImage);
-                    }
-                } catch (IOException e) {
+        ImageLoader.loadThumbnail(imageUrl, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT)
+            .whenComplete((image, e) -> SwingUtilities.invokeLater(() -> {
+                if (e != null) {
                     logger.error("Error loading image: " + imageUrl, e);
                 }
-                return null;
-            }
-
-            @Override
-            protected void done() {
-                try {
-                    thumbnail = get();
-                    if (thumbnail != null) {
-                        repaint();
-                    } else {
-                        add(new JLabel("图片加载失败"), BorderLayout.CENTER);
-                    }
-                } catch (Exception e) {
-                    logger.error("Error processing image", e);
+                thumbnail = image;
+                if (thumbnail != null) {
+                    repaint();
+                } else {
                     add(new JLabel("图片加载失败"), BorderLayout.CENTER);
+                    revalidate();
                 }
-            }
-        };
-        worker.execute();
-    }
-
-    private BufferedImage createThumbnail(BufferedImage original) {
-        double scale = Math.min(
-            (double) THUMBNAIL_WIDTH / original.getWidth(),
-            (double) THUMBNAIL_HEIGHT / original.getHeight()
-        );
-        int w = (int) (original.getWidth() * scale);
-        int h = (int) (original.getHeight() * scale);
-
-        BufferedImage thumbnail = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = thumbnail.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(original, 0, 0, w, h, null);
-        g2d.dispose();
-
-        return thumbnail;
+            }));
     }
 
     private void openInBrowser() {
@@ -1,7 +1,9 @@
 package com.xcq.ui.dialog;
 
 import com.xcq.core.ApplicationContext;
+import com.xcq.core.ConfigKeys;
 import com.xcq.core.Configuration;
+import com.xcq.theme.ThemeResources;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -31,20 +33,20 @@ public class SettingsDialog extends JDialog {
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
         String[] fontNames = ge.getAvailableFontFamilyNames();
         fontFamilyComboBox = new JComboBox<>(fontNames);
-        fontFamilyComboBox.setSelectedItem(context.getConfiguration().get("font.family", "微软雅黑"));
+        fontFamilyComboBox.setSelectedItem(context.getConfiguration().get(ConfigKeys.FONT_FAMILY));
         settingsPanel.add(fontFamilyComboBox);
 
         // 字体大小
         settingsPanel.add(new JLabel("字体大小:"));
         Integer[] sizes = {12, 13, 14, 15, 16, 17, 18, 19, 20};
         fontSizeComboBox = new JComboBox<>(sizes);
-        fontSizeComboBox.setSelectedItem(context.getConfiguration().get("font.size", 14));
+        fontSizeComboBox.setSelectedItem(context.getConfiguration().get(ConfigKeys.FONT_SIZE));
         settingsPanel.add(fontSizeComboBox);
 
         // 粗体选项
         settingsPanel.add(new JLabel("粗体显示:"));
         boldTextCheckBox = new JCheckBox();
-        boldTextCheckBox.setSelected(context.getConfiguration().get("font.bold", false));
+        boldTextCheckBox.setSelected(context.getConfiguration().get(ConfigKeys.FONT_BOLD));
         settingsPanel.add(boldTextCheckBox);
 
         mainPanel.add(settingsPanel, BorderLayout.CENTER);
@@ -79,9 +81,9 @@ public class SettingsDialog extends JDialog {
         Configuration config = context.getConfiguration();
         
         // 保存字体设置
-        config.set("font.family", (String) fontFamilyComboBox.getSelectedItem());
-        config.set("font.size", (Integer) fontSizeComboBox.getSelectedItem());
-        config.set("font.bold", boldTextCheckBox.isSelected());
+        config.set(ConfigKeys.FONT_FAMILY, (String) fontFamilyComboBox.getSelectedItem());
+        config.set(ConfigKeys.FONT_SIZE, (Integer) fontSizeComboBox.getSelectedItem());
+        config.set(ConfigKeys.FONT_BOLD, boldTextCheckBox.isSelected());
         
         // 应用字体设置
         applyFontSettings();
@@ -89,11 +91,11 @@ public class SettingsDialog extends JDialog {
 
     private void applyFontSettings() {
         Configuration config = context.getConfiguration();
-        String fontFamily = config.get("font.family", "微软雅黑");
-        int fontSize = config.get("font.size", 14);
-        boolean isBold = config.get("font.bold", false);
+        String fontFamily = config.get(ConfigKeys.FONT_FAMILY);
+        int fontSize = config.get(ConfigKeys.FONT_SIZE);
+        boolean isBold = config.get(ConfigKeys.FONT_BOLD);
         
-        Font font = new Font(fontFamily, isBold ? Font.BOLD : Font.PLAIN, fontSize);
+        Font font = ThemeResources.getFont(fontFamily, isBold ? Font.BOLD : Font.PLAIN, fontSize);
         
         // 更新 UI 管理器的默认字体
         UIManager.put("Button.font", font);
@@ -2,6 +2,7 @@ package com.xcq.ui.model;
 
 import org.jivesoftware.smack.roster.RosterEntry;
 import org.jivesoftware.smack.roster.RosterGroup;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
 import org.jxmpp.jid.Jid;
 import org.jxmpp.jid.BareJid;
 
@@ -80,6 +81,39 @@ public class ContactTreeModel extends DefaultTreeModel {
         reload();
     }
 
+    // 花名册同步完成前，用本地缓存的条目显示联系人列表
+    public void updateCachedContacts(Iterable<RosterPacket.Item> items) {
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode) getRoot();
+        root.removeAllChildren();
+
+        Map<String, DefaultMutableTreeNode> groups = new HashMap<>();
+        DefaultMutableTreeNode ungroupedNode = new DefaultMutableTreeNode("未分组");
+        for (RosterPacket.Item item : items) {
+            String jid = item.getJid().toString();
+            if (item.getGroupNames().isEmpty()) {
+                ungroupedNode.add(new DefaultMutableTreeNode(new Contact(jid, item.getName(), null)));
+                continue;
+            }
+            for (String groupName : item.getGroupNames()) {
+                DefaultMutableTreeNode groupNode = groups.computeIfAbsent(groupName, name -> {
+                    DefaultMutableTreeNode node = new DefaultMutableTreeNode(name);
+                    root.add(node);
+                    return node;
+                });
+                groupNode.add(new DefaultMutableTreeNode(new Contact(jid, item.getName(), groupName)));
+            }
+        }
+        if (ungroupedNode.getChildCount() > 0) {
+            root.add(ungroupedNode);
+        }
+
+        // 按字母顺序排序节点
+        sortNodes(root);
+
+        // 通知树模型数据已更新
+        reload();
+    }
+
     public void updateFilteredContacts(Iterable<RosterGroup> groups, Iterable<RosterEntry> ungroupedEntries, String filter) {
         DefaultMutableTreeNode root = (DefaultMutableTreeNode) getRoot();
         root.removeAllChildren();
@@ -1,6 +1,8 @@
 package com.xcq.ui.renderer;
 
+import com.xcq.service.VCardCache;
 import com.xcq.ui.model.ContactTreeModel;
+import com.xcq.util.ExecutorProvider;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.roster.RosterEntry;
 import org.jivesoftware.smack.roster.RosterGroup;
@@ -16,8 +18,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ContactTreeCellRenderer extends DefaultTreeCellRenderer {
     private static final Logger logger = LoggerFactory.getLogger(ContactTreeCellRenderer.class);
@@ -27,30 +29,29 @@ public class ContactTreeCellRenderer extends DefaultTreeCellRenderer {
     private final Map<String, Color> jidColorMap = new HashMap<>();
     private final Map<String, Boolean> blinkingJids = new HashMap<>();
     private final ContactTreeModel model;
+    private final VCardCache vCardCache;
     private final Set<String> blinkingContacts;
-    private final Timer blinkTimer;
+    private final ScheduledExecutorService blinkTimer;
     private boolean isBlinking = false;
     private static final int BLINK_INTERVAL = 500; // 闪烁间隔（毫秒）
 
-    public ContactTreeCellRenderer(ContactTreeModel model) {
+    public ContactTreeCellRenderer(ContactTreeModel model, VCardCache vCardCache) {
         this.model = model;
+        this.vCardCache = vCardCache;
         this.blinkingContacts = new HashSet<>();
-        this.blinkTimer = new Timer(true);
+        this.blinkTimer = ExecutorProvider.getInstance().newScheduler("contact-blink");
         startBlinkTimer();
     }
 
     private void startBlinkTimer() {
-        blinkTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                isBlinking = !isBlinking;
-                SwingUtilities.invokeLater(() -> {
-                    if (!blinkingContacts.isEmpty()) {
-                        model.reload();
-                    }
-                });
-            }
-        }, 0, BLINK_INTERVAL);
+        blinkTimer.scheduleAtFixedRate(() -> {
+            isBlinking = !isBlinking;
+            SwingUtilities.invokeLater(() -> {
+                if (!blinkingContacts.isEmpty()) {
+                    model.reload();
+                }
+            });
+        }, 0, BLINK_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -98,6 +99,12 @@ public class ContactTreeCellRenderer extends DefaultTreeCellRenderer {
                 }
                 
                 setText(statusIcon + " " + displayName);
+
+                // 只显示已缓存的头像，未缓存时在后台加载，完成后重绘
+                Icon avatar = vCardCache.getAvatar(jidStr);
+                if (avatar != null) {
+                    setIcon(avatar);
+                }
                 
                 // 设置颜色
                 if (blinkingContacts.contains(jidStr) && isBlinking) {
@@ -106,6 +113,14 @@ public class ContactTreeCellRenderer extends DefaultTreeCellRenderer {
                     Color color = jidColorMap.getOrDefault(jidStr, Color.BLACK);
                     setForeground(selected ? getTextSelectionColor() : color);
                 }
+            } else if (userObject instanceof ContactTreeModel.Contact) {
+                // 花名册同步完成前显示的缓存联系人，此时还没有出席信息
+                ContactTreeModel.Contact contact = (ContactTreeModel.Contact) userObject;
+                setText("⚫ " + contact.getName());
+                Icon avatar = vCardCache.getAvatar(contact.getJid());
+                if (avatar != null) {
+                    setIcon(avatar);
+                }
             } else if (userObject instanceof RosterGroup) {
                 RosterGroup group = (RosterGroup) userObject;
                 setText("👥 " + group.getName() + " (" + group.getEntries().size() + ")");
@@ -142,10 +157,10 @@ public class ContactTreeCellRenderer extends DefaultTreeCellRenderer {
 
     public void stopAllBlinking() {
         blinkingContacts.clear();
-        blinkTimer.cancel();
+        blinkTimer.shutdownNow();
     }
 
     public void cleanup() {
-        blinkTimer.cancel();
+        blinkTimer.shutdownNow();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.xcq.util;
+
+import com.xcq.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.SwingUtilities;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 检查网络和数据库操作是否在 EDT 中执行。
+// 默认每个操作只警告一次；以 -Dxcq.edt.strict=true 启动时直接抛出异常，用于开发和测试
+public final class EdtGuard {
+    private static final Logger logger = LoggerFactory.getLogger(EdtGuard.class);
+    private static final boolean STRICT = Boolean.getBoolean("xcq.edt.strict");
+    private static final Set<String> reported = ConcurrentHashMap.newKeySet();
+
+    private EdtGuard() {}
+
+    public static void checkNotEdt(String operation) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            return;
+        }
+        Metrics.EDT_BLOCKING_CALLS.increment();
+        if (STRICT) {
+            throw new IllegalStateException(operation + " must not be called on the event dispatch thread");
+        }
+        if (reported.add(operation)) {
+            logger.warn("{} called on the event dispatch thread", operation, new Throwable("call site"));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.xcq.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+// 后台任务使用的线程。上传、图片下载、vCard 请求和数据库访问等阻塞任务通过这里创建线程池，
+// 默认使用平台线程；在 JDK 21 及以上运行时，多版本 JAR 中的 ExecutorProviders 换成虚拟线程实现。
+// 启动参数 -Dxcq.executor=platform 强制使用平台线程
+public interface ExecutorProvider {
+    String PROPERTY = "xcq.executor";
+
+    static ExecutorProvider getInstance() {
+        return ExecutorProviders.INSTANCE;
+    }
+
+    // 任务数量不定、大部分时间在等待网络或磁盘。平台线程最多 platformThreads 个，多出的任务排队；
+    // 虚拟线程每个任务一个，不排队
+    ExecutorService newBlockingExecutor(String name, int platformThreads);
+
+    // 同时执行的任务不超过 maxConcurrency，用于需要限流的场景；为 1 时按提交顺序执行
+    ExecutorService newBoundedExecutor(String name, int maxConcurrency);
+
+    // 延时和周期任务，只占一个平台线程
+    ScheduledExecutorService newScheduler(String name);
+
+    boolean isVirtual();
+}
@@ -0,0 +1,13 @@
+package com.xcq.util;
+
+// 选择 ExecutorProvider 的实现。JDK 21 及以上加载 META-INF/versions/21 中的同名类
+final class ExecutorProviders {
+    static final ExecutorProvider INSTANCE = create();
+
+    private ExecutorProviders() {
+    }
+
+    private static ExecutorProvider create() {
+        return new PlatformExecutorProvider();
+    }
+}
@@ -1,5 +1,6 @@
 package com.xcq.util;
 
+import com.xcq.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,13 +11,21 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.file.Files;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class FileUploader {
     private static final Logger logger = LoggerFactory.getLogger(FileUploader.class);
     private static final String UPLOAD_URL = "http://localhost:8080/upload"; // 替换为实际的上传服务器地址
+    // 同时进行的上传数量，多选发送时并行上传
+    private static final int MAX_PARALLEL_UPLOADS = 4;
+
+    private static final ExecutorService executor =
+        ExecutorProvider.getInstance().newBoundedExecutor("file-uploader", MAX_PARALLEL_UPLOADS);
 
     public static CompletableFuture<String> uploadFile(File file, Component parent) {
         return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
             try {
                 String boundary = Long.toHexString(System.currentTimeMillis());
                 URL url = new URL(UPLOAD_URL);
@@ -46,12 +55,14 @@ public class FileUploader {
                 if (responseCode == HttpURLConnection.HTTP_OK) {
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
                         String fileUrl = reader.readLine();
+                        recordUpload(file.length(), start);
                         return fileUrl;
                     }
                 } else {
                     throw new IOException("Server returned code: " + responseCode);
                 }
             } catch (Exception e) {
+                Metrics.UPLOAD_FAILURES.increment();
                 logger.error("Error uploading file", e);
                 SwingUtilities.invokeLater(() -> {
                     JOptionPane.showMessageDialog(parent,
@@ -61,6 +72,15 @@ public class FileUploader {
                 });
                 return null;
             }
-        });
+        }, executor);
+    }
+
+    private static void recordUpload(long bytes, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        Metrics.UPLOAD_BYTES.add(bytes);
+        Metrics.UPLOAD_DURATION.record(elapsed, TimeUnit.NANOSECONDS);
+        if (elapsed > 0) {
+            Metrics.UPLOAD_THROUGHPUT.observe(bytes * 1e9 / elapsed);
+        }
     }
-} 
\ No newline at end of file
+}
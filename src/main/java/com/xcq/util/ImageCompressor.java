@@ -0,0 +1,208 @@
+package com.xcq.util;
+
+import com.xcq.core.ConfigKeys;
+import com.xcq.core.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImageCompressor {
+    private static final Logger logger = LoggerFactory.getLogger(ImageCompressor.class);
+    // 小于该大小且尺寸未超限的图片直接发送原图
+    private static final long SKIP_BELOW_BYTES = 200 * 1024;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors() - 1),
+        r -> {
+            Thread t = new Thread(r, "image-compressor-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+    private ImageCompressor() {}
+
+    // 在工作线程中为上传准备图片：超过目标分辨率的图片会被缩放并重新编码。
+    // 返回的文件可能是临时文件，上传完成后应调用 release() 清理
+    public static CompletableFuture<File> prepareForUpload(File original, boolean keepOriginal) {
+        if (keepOriginal || !isCompressible(original)) {
+            return CompletableFuture.completedFuture(original);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return compress(original);
+            } catch (Exception e) {
+                logger.warn("Failed to compress image {}, sending original", original.getName(), e);
+                return original;
+            }
+        }, executor);
+    }
+
+    public static void release(File original, File prepared) {
+        if (prepared != null && !prepared.equals(original) && !prepared.delete()) {
+            prepared.deleteOnExit();
+        }
+    }
+
+    private static boolean isCompressible(File file) {
+        String name = file.getName().toLowerCase();
+        // GIF 可能是动图，保持原样
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png");
+    }
+
+    private static File compress(File original) throws IOException {
+        Configuration config = Configuration.getInstance();
+        int maxDimension = config.get(ConfigKeys.UPLOAD_IMAGE_MAX_DIMENSION);
+        double quality = config.get(ConfigKeys.UPLOAD_IMAGE_QUALITY);
+
+        BufferedImage source = ImageIO.read(original);
+        if (source == null) {
+            return original;
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        if (scale >= 1.0 && original.length() < SKIP_BELOW_BYTES) {
+            return original;
+        }
+
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        boolean hasAlpha = source.getColorModel().hasAlpha();
+        // 重新编码不保留 EXIF，按方向标记把像素转正；5 到 8 需要交换宽高
+        int orientation = readExifOrientation(original);
+        boolean transposed = orientation >= 5 && orientation <= 8;
+
+        BufferedImage scaled = new BufferedImage(transposed ? targetHeight : targetWidth,
+            transposed ? targetWidth : targetHeight,
+            hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.transform(orientationTransform(orientation, targetWidth, targetHeight));
+        g2d.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        g2d.dispose();
+
+        String baseName = original.getName().replaceFirst("\\.[^.]+$", "");
+        File target;
+        if (hasAlpha) {
+            // 带透明通道的图片保持 PNG，只做缩放
+            target = File.createTempFile(baseName + "-", ".png");
+            ImageIO.write(scaled, "png", target);
+        } else {
+            target = File.createTempFile(baseName + "-", ".jpg");
+            writeJpeg(scaled, target, (float) quality);
+        }
+
+        if (target.length() >= original.length()) {
+            release(original, target);
+            logger.debug("Compressed image is not smaller, sending original: {}", original.getName());
+            return original;
+        }
+
+        logger.info("Compressed image {} from {}x{} ({} bytes) to {}x{} ({} bytes)",
+            original.getName(), width, height, original.length(),
+            scaled.getWidth(), scaled.getHeight(), target.length());
+        return target;
+    }
+
+    // 把 w x h 的图像按 EXIF 方向（1 到 8）转正的变换
+    private static AffineTransform orientationTransform(int orientation, int w, int h) {
+        switch (orientation) {
+            case 2: return new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3: return new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4: return new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5: return new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6: return new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7: return new AffineTransform(0, -1, -1, 0, h, w);
+            case 8: return new AffineTransform(0, -1, 1, 0, 0, w);
+            default: return new AffineTransform();
+        }
+    }
+
+    // JPEG 的 EXIF 方向标记，没有或无法解析时返回 1（不旋转）
+    static int readExifOrientation(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                // 图像数据开始后不再有 EXIF
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return 1;
+                }
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                if (marker == 0xFFE1 && length > 14
+                        && new String(segment, 0, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+                    return orientationFromTiff(ByteBuffer.wrap(segment, 6, length - 6).slice());
+                }
+            }
+        } catch (EOFException | RuntimeException e) {
+            return 1;
+        } catch (IOException e) {
+            logger.debug("Cannot read EXIF orientation of {}", file.getName(), e);
+            return 1;
+        }
+    }
+
+    // 在 TIFF 结构的第一个 IFD 中查找 Orientation（0x0112）
+    private static int orientationFromTiff(ByteBuffer tiff) {
+        tiff.order(tiff.getShort(0) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff.getInt(4);
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0112) {
+                int value = tiff.getShort(entry + 8) & 0xFFFF;
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static void writeJpeg(BufferedImage image, File target, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.xcq.util;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+// 聊天记录中的图片下载和缩略图生成。打开历史记录较多的会话时会同时加载很多图片，
+// 使用平台线程时最多 PLATFORM_THREADS 个同时下载。解码和缩放占用 CPU 和大块内存，单独限制为 CPU 核数个同时进行
+public class ImageLoader {
+    private static final int PLATFORM_THREADS = 8;
+    private static final ExecutorService downloadExecutor =
+        ExecutorProvider.getInstance().newBlockingExecutor("image-load", PLATFORM_THREADS);
+    private static final ExecutorService decodeExecutor =
+        ExecutorProvider.getInstance().newBoundedExecutor("image-decode", Runtime.getRuntime().availableProcessors());
+
+    private ImageLoader() {}
+
+    // 缩略图按比例缩放到 maxWidth x maxHeight 以内；无法解码时结果为 null
+    public static CompletableFuture<BufferedImage> loadThumbnail(String imageUrl, int maxWidth, int maxHeight) {
+        return CompletableFuture.supplyAsync(() -> download(imageUrl), downloadExecutor)
+            .thenApplyAsync(bytes -> {
+                try {
+                    BufferedImage original = ImageIO.read(new ByteArrayInputStream(bytes));
+                    return original != null ? createThumbnail(original, maxWidth, maxHeight) : null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, decodeExecutor);
+    }
+
+    private static byte[] download(String imageUrl) {
+        try (InputStream in = new URL(imageUrl).openStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static BufferedImage createThumbnail(BufferedImage original, int maxWidth, int maxHeight) {
+        double scale = Math.min(
+            (double) maxWidth / original.getWidth(),
+            (double) maxHeight / original.getHeight()
+        );
+        int w = Math.max(1, (int) (original.getWidth() * scale));
+        int h = Math.max(1, (int) (original.getHeight() * scale));
+
+        BufferedImage thumbnail = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = thumbnail.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(original, 0, 0, w, h, null);
+        g2d.dispose();
+
+        return thumbnail;
+    }
+}
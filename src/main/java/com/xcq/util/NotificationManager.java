@@ -1,42 +1,218 @@
 package com.xcq.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.swing.*;
+import javax.swing.Timer;
 
+// 系统通知：复用同一个托盘图标，短时间内的多条消息合并为一条摘要通知
 public class NotificationManager {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationManager.class);
     private static NotificationManager instance;
-    
-    private NotificationManager() {}
-    
+
+    // 收到第一条消息后等待的时间，期间到达的消息合并到同一条通知
+    private static final int BATCH_DELAY_MS = 1500;
+    // 两条通知之间的最小间隔
+    private static final int MIN_INTERVAL_MS = 5000;
+    // 托盘不可用时提示框的显示时间
+    private static final int TOAST_DURATION_MS = 4000;
+    private static final int MAX_NAMES_IN_SUMMARY = 3;
+    // 排队等待显示的普通通知数，超过时丢弃最早的；通知每隔 MIN_INTERVAL_MS 才显示一条，积压的旧通知已无意义
+    private static final int MAX_PENDING_NOTICES = 3;
+
+    // 以下字段只在 EDT 中访问
+    private final Map<String, PendingContact> pendingMessages = new LinkedHashMap<>();
+    private final List<String[]> pendingNotices = new ArrayList<>();
+    private final Timer flushTimer;
+    private long lastShownAt = 0;
+    private TrayIcon trayIcon;
+    private boolean trayUnavailable = false;
+    private JWindow toastWindow;
+    private JLabel toastLabel;
+    private Timer toastTimer;
+
+    private NotificationManager() {
+        flushTimer = new Timer(BATCH_DELAY_MS, e -> flush());
+        flushTimer.setRepeats(false);
+    }
+
     public static synchronized NotificationManager getInstance() {
         if (instance == null) {
             instance = new NotificationManager();
         }
         return instance;
     }
-    
+
     public void showNotification(String title, String message) {
-        if (SystemTray.isSupported()) {
-            try {
-                SystemTray tray = SystemTray.getSystemTray();
-                Image image = Toolkit.getDefaultToolkit().createImage(getClass().getResource("/icon.png"));
-                TrayIcon trayIcon = new TrayIcon(image, "XCQ");
-                trayIcon.setImageAutoSize(true);
-                tray.add(trayIcon);
-                trayIcon.displayMessage(title, message, TrayIcon.MessageType.INFO);
-                
-                // 5秒后移除图标
-                new Timer(5000, e -> {
-                    tray.remove(trayIcon);
-                    ((Timer) e.getSource()).stop();
-                }).start();
-            } catch (Exception e) {
-                // 如果系统托盘通知失败，使用对话框
-                JOptionPane.showMessageDialog(null, message, title, JOptionPane.INFORMATION_MESSAGE);
+        runOnEdt(() -> {
+            if (pendingNotices.size() >= MAX_PENDING_NOTICES) {
+                String[] dropped = pendingNotices.remove(0);
+                logger.debug("Dropped notification '{}', too many pending", dropped[0]);
+            }
+            pendingNotices.add(new String[]{title, message});
+            scheduleFlush();
+        });
+    }
+
+    // 新消息通知，可在任意线程调用
+    public void notifyMessage(String fromJid, String displayName) {
+        notifyMessage(fromJid, displayName, 1);
+    }
+
+    // 一次到达 count 条消息（如离线消息）时计入摘要中的条数
+    public void notifyMessage(String fromJid, String displayName, int count) {
+        if (count <= 0) {
+            return;
+        }
+        runOnEdt(() -> {
+            pendingMessages.computeIfAbsent(fromJid, jid -> new PendingContact(displayName != null ? displayName : jid))
+                .count += count;
+            scheduleFlush();
+        });
+    }
+
+    public void dispose() {
+        runOnEdt(() -> {
+            flushTimer.stop();
+            pendingMessages.clear();
+            pendingNotices.clear();
+            if (trayIcon != null) {
+                SystemTray.getSystemTray().remove(trayIcon);
+                trayIcon = null;
+            }
+            if (toastWindow != null) {
+                toastWindow.dispose();
+                toastWindow = null;
+            }
+        });
+    }
+
+    private void scheduleFlush() {
+        if (!flushTimer.isRunning()) {
+            long sinceLast = System.currentTimeMillis() - lastShownAt;
+            flushTimer.setInitialDelay((int) Math.max(BATCH_DELAY_MS, MIN_INTERVAL_MS - sinceLast));
+            flushTimer.restart();
+        }
+    }
+
+    private void flush() {
+        if (!pendingNotices.isEmpty()) {
+            // 普通通知逐条显示，同样受最小间隔限制
+            String[] notice = pendingNotices.remove(0);
+            display(notice[0], notice[1]);
+        } else if (!pendingMessages.isEmpty()) {
+            display("XCQ", buildSummary());
+            pendingMessages.clear();
+        }
+        if (!pendingNotices.isEmpty() || !pendingMessages.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private String buildSummary() {
+        int total = 0;
+        List<String> names = new ArrayList<>();
+        for (PendingContact contact : pendingMessages.values()) {
+            total += contact.count;
+            if (names.size() < MAX_NAMES_IN_SUMMARY) {
+                names.add(contact.name);
             }
+        }
+        int contacts = pendingMessages.size();
+        if (contacts == 1) {
+            return total == 1
+                ? String.format("收到来自 %s 的新消息", names.get(0))
+                : String.format("%s 发来 %d 条新消息", names.get(0), total);
+        }
+        String who = String.join("、", names) + (contacts > names.size() ? " 等" : "");
+        return String.format("%d 条新消息，来自 %d 位联系人（%s）", total, contacts, who);
+    }
+
+    private void display(String title, String message) {
+        lastShownAt = System.currentTimeMillis();
+        TrayIcon icon = getTrayIcon();
+        if (icon != null) {
+            icon.displayMessage(title, message, TrayIcon.MessageType.INFO);
+        } else {
+            showToast(title, message);
+        }
+    }
+
+    private TrayIcon getTrayIcon() {
+        if (trayIcon != null || trayUnavailable) {
+            return trayIcon;
+        }
+        if (!SystemTray.isSupported()) {
+            trayUnavailable = true;
+            return null;
+        }
+        try {
+            URL iconUrl = getClass().getResource("/logo.png");
+            Image image = iconUrl != null
+                ? Toolkit.getDefaultToolkit().createImage(iconUrl)
+                : new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+            TrayIcon icon = new TrayIcon(image, "XCQ");
+            icon.setImageAutoSize(true);
+            SystemTray.getSystemTray().add(icon);
+            trayIcon = icon;
+        } catch (Exception e) {
+            logger.warn("System tray unavailable, falling back to in-app notifications", e);
+            trayUnavailable = true;
+        }
+        return trayIcon;
+    }
+
+    // 托盘不可用时在屏幕右下角显示一个不抢焦点、自动消失的提示框
+    private void showToast(String title, String message) {
+        if (toastWindow == null) {
+            toastWindow = new JWindow();
+            toastWindow.setFocusableWindowState(false);
+            toastWindow.setAlwaysOnTop(true);
+            toastLabel = new JLabel();
+            toastLabel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(Color.GRAY),
+                BorderFactory.createEmptyBorder(8, 12, 8, 12)));
+            toastLabel.setOpaque(true);
+            toastLabel.setBackground(new Color(255, 255, 225));
+            toastWindow.setContentPane(toastLabel);
+            toastTimer = new Timer(TOAST_DURATION_MS, e -> toastWindow.setVisible(false));
+            toastTimer.setRepeats(false);
+        }
+        toastLabel.setText("<html><b>" + escape(title) + "</b><br>" + escape(message) + "</html>");
+        toastWindow.pack();
+        Rectangle bounds = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        toastWindow.setLocation(bounds.x + bounds.width - toastWindow.getWidth() - 10,
+            bounds.y + bounds.height - toastWindow.getHeight() - 10);
+        toastWindow.setVisible(true);
+        toastTimer.restart();
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static void runOnEdt(Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
         } else {
-            // 如果系统不支持托盘，使用对话框
-            JOptionPane.showMessageDialog(null, message, title, JOptionPane.INFORMATION_MESSAGE);
+            SwingUtilities.invokeLater(task);
+        }
+    }
+
+    private static final class PendingContact {
+        private final String name;
+        private int count;
+
+        PendingContact(String name) {
+            this.name = name;
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package com.xcq.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 平台线程实现。线程空闲一分钟后退出，不常用的线程池不长期占用线程
+class PlatformExecutorProvider implements ExecutorProvider {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    @Override
+    public ExecutorService newBlockingExecutor(String name, int platformThreads) {
+        return newPool(name, platformThreads, daemon(name));
+    }
+
+    @Override
+    public ExecutorService newBoundedExecutor(String name, int maxConcurrency) {
+        return newPool(name, maxConcurrency, daemon(name));
+    }
+
+    @Override
+    public ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return false;
+    }
+
+    static ExecutorService newPool(String name, int threads, ThreadFactory factory) {
+        int size = Math.max(1, threads);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,171 @@
+package com.xcq.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 全局共享的提示音服务：每个音效只解码一次，使用少量可复用的音频线路播放，
+// 短时间内的多次播放请求会被合并
+public class SoundService {
+    private static final Logger logger = LoggerFactory.getLogger(SoundService.class);
+    public static final String MESSAGE = "/sounds/message.wav";
+
+    // 每个音效最多同时占用的音频线路数
+    private static final int CLIPS_PER_SOUND = 2;
+    // 同一音效两次播放之间的最小间隔，期间的请求合并为间隔结束后的一次播放
+    private static final long MIN_INTERVAL_MS = 1000;
+
+    private static SoundService instance;
+
+    private final Map<String, Sound> sounds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private SoundService() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sound-player");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static synchronized SoundService getInstance() {
+        if (instance == null) {
+            instance = new SoundService();
+        }
+        return instance;
+    }
+
+    // 预先解码并打开音频线路，可在启动时后台调用
+    public void preload(String resource) {
+        getSound(resource);
+    }
+
+    public void play(String resource) {
+        executor.execute(() -> {
+            Sound sound = getSound(resource);
+            if (sound != null) {
+                sound.requestPlay();
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        for (Sound sound : sounds.values()) {
+            sound.close();
+        }
+        sounds.clear();
+    }
+
+    private Sound getSound(String resource) {
+        Sound sound = sounds.computeIfAbsent(resource, this::load);
+        return sound.clips.isEmpty() ? null : sound;
+    }
+
+    private Sound load(String resource) {
+        Sound sound = new Sound(resource);
+        try (InputStream raw = SoundService.class.getResourceAsStream(resource)) {
+            if (raw == null) {
+                logger.warn("Notification sound file not found: {}", resource);
+                return sound;
+            }
+            byte[] pcm;
+            AudioFormat format;
+            try (AudioInputStream audioIn = AudioSystem.getAudioInputStream(new BufferedInputStream(raw))) {
+                format = audioIn.getFormat();
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = audioIn.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+                pcm = buffer.toByteArray();
+            }
+            for (int i = 0; i < CLIPS_PER_SOUND; i++) {
+                Clip clip = AudioSystem.getClip();
+                clip.open(format, pcm, 0, pcm.length);
+                sound.clips.add(clip);
+            }
+            logger.info("Notification sound {} loaded ({} bytes, {} lines)", resource, pcm.length, sound.clips.size());
+        } catch (Exception e) {
+            logger.error("Failed to initialize notification sound {}", resource, e);
+        }
+        return sound;
+    }
+
+    // 只在 sound-player 线程中访问
+    private final class Sound {
+        private final String resource;
+        private final List<Clip> clips = new ArrayList<>();
+        private long lastPlayedAt = Long.MIN_VALUE / 2;
+        private boolean trailingScheduled = false;
+
+        Sound(String resource) {
+            this.resource = resource;
+        }
+
+        void requestPlay() {
+            long now = System.currentTimeMillis();
+            long wait = lastPlayedAt + MIN_INTERVAL_MS - now;
+            if (wait <= 0) {
+                playNow(now);
+            } else if (!trailingScheduled) {
+                trailingScheduled = true;
+                executor.schedule(() -> {
+                    trailingScheduled = false;
+                    playNow(System.currentTimeMillis());
+                }, wait, TimeUnit.MILLISECONDS);
+            } else {
+                logger.trace("Coalesced notification sound {}", resource);
+            }
+        }
+
+        private void playNow(long now) {
+            Clip clip = pickClip();
+            try {
+                clip.stop();
+                clip.setFramePosition(0);
+                clip.start();
+                lastPlayedAt = now;
+                logger.debug("Playing notification sound {}", resource);
+            } catch (Exception e) {
+                logger.error("Failed to play notification sound {}", resource, e);
+            }
+        }
+
+        // 优先使用空闲的线路，全部占用时复用第一条
+        private Clip pickClip() {
+            for (Clip clip : clips) {
+                if (!clip.isRunning()) {
+                    return clip;
+                }
+            }
+            return clips.get(0);
+        }
+
+        void close() {
+            for (Clip clip : clips) {
+                try {
+                    clip.close();
+                } catch (Exception e) {
+                    logger.debug("Error closing clip for {}", resource, e);
+                }
+            }
+            clips.clear();
+        }
+    }
+}
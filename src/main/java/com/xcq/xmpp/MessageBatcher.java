@@ -0,0 +1,86 @@
+package com.xcq.xmpp;
+
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// 不需要逐条即时处理的消息（登录后的离线消息、其他设备的消息副本）先攒成批，
+// 攒满一批或第一条消息到达 windowMillis 后交给 sink，由它在一个事务中写入并按联系人合并通知
+class MessageBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatcher.class);
+
+    private final int maxBatch;
+    private final long windowMillis;
+    private final Consumer<List<ArchivedMessage>> sink;
+    // 所有账号共用一个线程
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "message-batch");
+        t.setDaemon(true);
+        return t;
+    });
+    private List<ArchivedMessage> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    // 已提交立即写入的任务，尚未执行
+    private boolean flushQueued;
+
+    MessageBatcher(int maxBatch, long windowMillis, Consumer<List<ArchivedMessage>> sink) {
+        this.maxBatch = Math.max(1, maxBatch);
+        this.windowMillis = windowMillis;
+        this.sink = sink;
+    }
+
+    synchronized void add(ArchivedMessage message) {
+        pending.add(message);
+        if (pending.size() >= maxBatch) {
+            if (!flushQueued) {
+                cancelScheduledFlush();
+                flushQueued = true;
+                scheduler.execute(this::flush);
+            }
+        } else if (scheduledFlush == null && !flushQueued) {
+            scheduledFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 断开连接前调用，把尚未写入的消息立即交给 sink 并等待写入完成；不能在 EDT 中调用
+    void flushNow() {
+        try {
+            scheduler.submit(this::flush).get();
+        } catch (Exception e) {
+            logger.warn("Failed to flush batched messages", e);
+        }
+    }
+
+    private void flush() {
+        List<ArchivedMessage> batch;
+        synchronized (this) {
+            cancelScheduledFlush();
+            flushQueued = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        try {
+            sink.accept(batch);
+        } catch (RuntimeException e) {
+            logger.error("Failed to ingest {} batched messages", batch.size(), e);
+        }
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+}
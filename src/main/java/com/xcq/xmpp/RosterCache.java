@@ -0,0 +1,38 @@
+package com.xcq.xmpp;
+
+import org.jivesoftware.smack.roster.rosterstore.DirectoryRosterStore;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
+import org.jxmpp.jid.BareJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+// 花名册的本地缓存，每个账号一个 Smack DirectoryRosterStore。
+// 登录时把缓存的版本号发给服务器（XEP-0237），服务器只推送变化的联系人
+public final class RosterCache {
+    private static final Logger logger = LoggerFactory.getLogger(RosterCache.class);
+    private static final String ROSTER_DIR = "data" + File.separator + "roster";
+
+    private RosterCache() {}
+
+    // 打开失败时返回 null，登录时退回到完整获取花名册
+    public static RosterStore open(BareJid account) {
+        File dir = new File(ROSTER_DIR, account.toString().replaceAll("[^A-Za-z0-9@._-]", "_"));
+        try {
+            DirectoryRosterStore store = DirectoryRosterStore.open(dir);
+            if (store == null) {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    logger.warn("Failed to create roster cache directory: {}", dir.getAbsolutePath());
+                    return null;
+                }
+                store = DirectoryRosterStore.init(dir);
+                logger.info("Created roster cache at {}", dir.getAbsolutePath());
+            }
+            return store;
+        } catch (RuntimeException e) {
+            logger.warn("Roster cache unavailable for {}", account, e);
+            return null;
+        }
+    }
+}
@@ -1,15 +1,29 @@
 package com.xcq.xmpp;
 
+import com.xcq.core.ConfigKeys;
 import com.xcq.core.Context;
 import com.xcq.ui.FriendRequestWindow;
+import com.xcq.util.EdtGuard;
+import com.xcq.xmpp.archive.MessageArchive;
+import com.xcq.xmpp.archive.SmackMessageArchive;
 import org.jivesoftware.smack.AbstractXMPPConnection;
 import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.chat2.Chat;
 import org.jivesoftware.smack.chat2.ChatManager;
 import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.roster.Roster;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jivesoftware.smackx.carbons.CarbonManager;
+import org.jivesoftware.smackx.carbons.packet.CarbonExtension;
+import org.jivesoftware.smackx.delay.packet.DelayInformation;
+import org.jivesoftware.smackx.sid.element.StanzaIdElement;
+import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.jid.parts.Localpart;
@@ -19,55 +33,76 @@ import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.packet.Stanza;
 import javax.swing.SwingUtilities;
 import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+import com.xcq.metrics.Metrics;
+import com.xcq.plugin.MessageInterceptor.Stage;
+import com.xcq.plugin.MessagePipeline;
 import com.xcq.ui.MainWindow;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class XMPPClient {
     private static final Logger logger = LoggerFactory.getLogger(XMPPClient.class);
     private final Context context;
     private XMPPTCPConnection connection;
-    private final List<MessageListener> messageListeners = new ArrayList<>();
+    private final List<MessageListener> messageListeners = new CopyOnWriteArrayList<>();
     private ChatManager chatManager;
+    // 登录前从本地缓存读出的花名册，花名册同步完成前用于显示联系人列表
+    private volatile List<RosterPacket.Item> cachedRosterItems = Collections.emptyList();
+    // 登录使用的账号（不含资源），连接建立前即可确定
+    private volatile String accountJid;
     private final Map<String, Chat> chatCache = new ConcurrentHashMap<>();
+    private final MessageBatcher messageBatcher;
 
     public XMPPClient(Context context) {
         this.context = context;
+        int batchSize = context != null ? context.getConfig().get(ConfigKeys.MESSAGE_BATCH_SIZE) : 200;
+        int windowMs = context != null ? context.getConfig().get(ConfigKeys.MESSAGE_BATCH_WINDOW_MS) : 300;
+        this.messageBatcher = new MessageBatcher(batchSize, windowMs, this::ingestBatch);
     }
 
     public void initialize(XMPPTCPConnectionConfiguration config) {
         try {
             connection = new XMPPTCPConnection(config);
-            connection.connect();
-            connection.login();
-            
-            chatManager = ChatManager.getInstanceFor(connection);
-            
-            // 设置全局消息监听器
-            chatManager.addIncomingListener((from, message, chat) -> {
-                String messageBody = message.getBody();
-                if (messageBody != null) {
-                    // 去除消息末尾的空格
-                    messageBody = messageBody.replaceAll("\\s+$", "");
-                    
-                    // 保存消息到数据库
-                    String fromJid = from.asBareJid().toString();
-                    String toJid = connection.getUser().asBareJid().toString();
-                    ChatDatabase db = ChatDatabase.getInstance();
-                    if (db != null) {
-                        // 只保存一次消息
-                        db.saveMessage(fromJid, toJid, messageBody, false);
+            connection.addConnectionListener(new ConnectionListener() {
+                private boolean authenticatedBefore;
+
+                @Override
+                public void authenticated(XMPPConnection connection, boolean resumed) {
+                    if (authenticatedBefore) {
+                        Metrics.XMPP_RECONNECTS.increment();
                     }
-                    
-                    // 通知所有消息监听器
-                    for (MessageListener listener : messageListeners) {
-                        listener.onMessageReceived(from.toString(), messageBody);
+                    authenticatedBefore = true;
+                    // 流恢复时服务器会重发未确认的消息，不需要补同步
+                    if (!resumed) {
+                        enableCarbons();
+                        startArchiveSync();
                     }
                 }
+
+                @Override
+                public void connectionClosedOnError(Exception e) {
+                    Metrics.XMPP_CONNECTION_ERRORS.increment();
+                }
             });
+            setupRosterCache(config);
+
+            // 监听器在登录前注册：authenticated 回调中启用消息副本，登录后服务器立即推送离线消息和副本
+            chatManager = ChatManager.getInstanceFor(connection);
+            CarbonManager.getInstanceFor(connection).addCarbonCopyReceivedListener(
+                (direction, carbonCopy, wrappingMessage) -> handleCarbonCopy(direction, carbonCopy));
+            
+            // 设置全局消息监听器
+            chatManager.addIncomingListener((from, message, chat) -> handleIncomingMessage(from, message));
+
+            connection.connect();
+            connection.login();
             
             // 添加好友请求监听器
             connection.addAsyncStanzaListener(stanza -> {
@@ -98,6 +133,147 @@ public class XMPPClient {
         }
     }
 
+    // 启用花名册版本号，登录时服务器只返回缓存之后的变化
+    private void setupRosterCache(XMPPTCPConnectionConfiguration config) {
+        cachedRosterItems = Collections.emptyList();
+        try {
+            BareJid account = JidCreate.bareFrom(config.getUsername() + "@" + config.getXMPPServiceDomain());
+            accountJid = account.toString();
+            RosterStore store = RosterCache.open(account);
+            if (store != null) {
+                Roster.getInstanceFor(connection).setRosterStore(store);
+                cachedRosterItems = store.getEntries();
+                logger.info("Loaded {} cached roster entries for {}", cachedRosterItems.size(), account);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to set up roster cache", e);
+        }
+    }
+
+    // 在后台补齐离线期间和其他设备上的消息，不阻塞登录
+    private void startArchiveSync() {
+        if (context == null || !context.getConfig().get(ConfigKeys.ARCHIVE_SYNC_ENABLED)) {
+            return;
+        }
+        String account = connection.getUser().asBareJid().toString();
+        context.getArchiveSync().catchUp(account, new SmackMessageArchive(connection), getDatabase());
+    }
+
+    // 未登录或关闭了存档同步时返回 null
+    public MessageArchive getMessageArchive() {
+        if (context == null || !context.getConfig().get(ConfigKeys.ARCHIVE_SYNC_ENABLED)
+                || !isConnected() || !connection.isAuthenticated()) {
+            return null;
+        }
+        return new SmackMessageArchive(connection);
+    }
+
+    public String getAccountJid() {
+        return accountJid;
+    }
+
+    // 本账号的消息数据库，可能为 null
+    public ChatDatabase getDatabase() {
+        return context != null ? context.getDatabase() : ChatDatabase.getInstance();
+    }
+
+    public List<RosterPacket.Item> getCachedRosterItems() {
+        return cachedRosterItems;
+    }
+
+    // 处理一条收到的聊天消息：经过插件管道后保存并通知监听器
+    public void handleIncomingMessage(EntityBareJid from, Message message) {
+        long receivedAt = System.nanoTime();
+        String messageBody = message.getBody();
+        if (messageBody != null) {
+            Metrics.MESSAGES_RECEIVED.increment();
+            // 去除消息末尾的空格
+            messageBody = messageBody.stripTrailing();
+
+            String fromJid = from.asBareJid().toString();
+            String toJid = connection != null && connection.getUser() != null
+                ? connection.getUser().asBareJid().toString() : "";
+            messageBody = MessagePipeline.getInstance().process(Stage.INBOUND, fromJid, toJid, messageBody);
+
+            // 离线消息按原始时间批量写入，通知按联系人合并
+            DelayInformation delay = DelayInformation.from(message);
+            if (delay != null) {
+                messageBatcher.add(new ArchivedMessage(serverStanzaId(message, toJid), message.getStanzaId(),
+                    fromJid, toJid, messageBody, delay.getStamp().getTime(), false));
+                return;
+            }
+
+            // 保存消息到数据库，记录服务器分配的存档 id，存档同步时据此去重
+            ChatDatabase db = getDatabase();
+            if (db != null) {
+                // 只保存一次消息
+                db.saveMessage(fromJid, toJid, messageBody, false, message.getStanzaId(), serverStanzaId(message, toJid));
+            }
+
+            // 通知所有消息监听器
+            for (MessageListener listener : messageListeners) {
+                listener.onMessageReceived(from.toString(), messageBody, receivedAt);
+            }
+        }
+    }
+
+    // 本账号其他设备收发的消息副本（XEP-0280），与离线消息一样批量写入，按 stanza-id 和 origin-id 去重
+    private void handleCarbonCopy(CarbonExtension.Direction direction, Message copy) {
+        if (copy.getBody() == null || copy.getFrom() == null || copy.getTo() == null || connection.getUser() == null) {
+            return;
+        }
+        Metrics.CARBON_COPIES.increment();
+        String account = connection.getUser().asBareJid().toString();
+        String fromJid = copy.getFrom().asBareJid().toString();
+        String toJid = copy.getTo().asBareJid().toString();
+        String body = copy.getBody().stripTrailing();
+        boolean sent = direction == CarbonExtension.Direction.sent;
+        if (!sent) {
+            body = MessagePipeline.getInstance().process(Stage.INBOUND, fromJid, toJid, body);
+        }
+        DelayInformation delay = DelayInformation.from(copy);
+        long timestamp = delay != null ? delay.getStamp().getTime() : System.currentTimeMillis();
+        messageBatcher.add(new ArchivedMessage(serverStanzaId(copy, account), copy.getStanzaId(),
+            fromJid, toJid, body, timestamp, sent));
+    }
+
+    private void enableCarbons() {
+        if (context != null && !context.getConfig().get(ConfigKeys.CARBONS_ENABLED)) {
+            return;
+        }
+        CarbonManager.getInstanceFor(connection).enableCarbonsAsync(
+            e -> logger.info("Message carbons not available: {}", e.toString()));
+    }
+
+    // 在 message-batch 线程中执行：一个事务写入整批消息，重复的副本不再通知，每个联系人通知监听器一次
+    private void ingestBatch(List<ArchivedMessage> received) {
+        ChatDatabase db = getDatabase();
+        List<ArchivedMessage> batch = db != null ? db.saveNewMessages(received) : received;
+        Metrics.MESSAGES_BATCHED.add(received.size());
+
+        Map<String, List<ArchivedMessage>> byContact = new LinkedHashMap<>();
+        for (ArchivedMessage m : batch) {
+            String contact = m.isLocal() ? m.getReceiverJid() : m.getSenderJid();
+            byContact.computeIfAbsent(contact, k -> new ArrayList<>()).add(m);
+        }
+        for (Map.Entry<String, List<ArchivedMessage>> entry : byContact.entrySet()) {
+            List<ArchivedMessage> messages = Collections.unmodifiableList(entry.getValue());
+            for (MessageListener listener : messageListeners) {
+                listener.onMessageBatch(entry.getKey(), messages);
+            }
+        }
+        logger.info("Ingested {} batched messages ({} new) for {} contacts", received.size(), batch.size(), byContact.size());
+    }
+
+    // 只信任本账号服务器添加的 stanza-id（XEP-0359）
+    private static String serverStanzaId(Message message, String accountJid) {
+        StanzaIdElement stanzaId = StanzaIdElement.getStanzaId(message);
+        if (stanzaId != null && accountJid.equals(stanzaId.getBy())) {
+            return stanzaId.getId();
+        }
+        return null;
+    }
+
     public XMPPTCPConnection getConnection() {
         return connection;
     }
@@ -115,8 +291,11 @@ public class XMPPClient {
         }
     }
 
+    // 会等待批量消息写入数据库，界面中通过 AsyncService.disconnect() 调用
     public void disconnect() {
+        EdtGuard.checkNotEdt("XMPPClient.disconnect");
         if (connection != null && connection.isConnected()) {
+            messageBatcher.flushNow();
             connection.disconnect();
             chatCache.clear();
             logger.info("Disconnected from XMPP server");
@@ -137,7 +316,9 @@ public class XMPPClient {
         messageListeners.remove(listener);
     }
 
-    public void sendMessage(String to, String messageText) throws Exception {
+    // 返回消息的 id，保存到数据库后用于和服务器存档去重
+    public String sendMessage(String to, String messageText) throws Exception {
+        EdtGuard.checkNotEdt("XMPPClient.sendMessage");
         if (!isConnected()) {
             throw new SmackException.NotConnectedException("Not connected to XMPP server");
         }
@@ -148,15 +329,20 @@ public class XMPPClient {
             // 获取或创建Chat对象
             Chat chat = chatCache.computeIfAbsent(to, k -> chatManager.chatWith(jid));
             
+            messageText = MessagePipeline.getInstance().process(Stage.OUTBOUND,
+                connection.getUser().asBareJid().toString(), to, messageText);
+
             // 创建并发送消息
             Message message = new Message(jid, Message.Type.chat);
             message.setBody(messageText);
             message.setFrom(connection.getUser());  // 设置发送者
             
+            String messageId = message.setStanzaId();
             chat.send(message);
             
             // 记录发送的消息
             logger.debug("Sent message to {}: {}", to, messageText);
+            return messageId;
         } catch (Exception e) {
             logger.error("Failed to send message to {}", to, e);
             throw e;
@@ -164,6 +350,7 @@ public class XMPPClient {
     }
 
     public void acceptSubscription(String jid) {
+        EdtGuard.checkNotEdt("XMPPClient.acceptSubscription");
         try {
             // 接受订阅请求
             Presence subscribed = new Presence(Presence.Type.subscribed);
@@ -182,6 +369,7 @@ public class XMPPClient {
     }
     
     public void rejectSubscription(String jid) {
+        EdtGuard.checkNotEdt("XMPPClient.rejectSubscription");
         try {
             Presence unsubscribed = new Presence(Presence.Type.unsubscribed);
             unsubscribed.setTo(JidCreate.from(jid));
@@ -194,5 +382,20 @@ public class XMPPClient {
 
     public interface MessageListener {
         void onMessageReceived(String from, String message);
+
+        // receivedAt 为收到消息时的 System.nanoTime()，需要统计处理耗时的监听器可以覆盖此方法
+        default void onMessageReceived(String from, String message, long receivedAt) {
+            onMessageReceived(from, message);
+        }
+
+        // 批量投递的离线消息和其他设备的消息副本，按联系人合并、按到达顺序排列，
+        // isLocal 的消息是本账号在其他设备上发出的；需要合并提示的监听器覆盖此方法
+        default void onMessageBatch(String contactJid, List<ArchivedMessage> messages) {
+            for (ArchivedMessage message : messages) {
+                if (!message.isLocal()) {
+                    onMessageReceived(contactJid, message.getBody());
+                }
+            }
+        }
     }
 } 
\ No newline at end of file
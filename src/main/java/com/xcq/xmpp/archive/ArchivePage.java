@@ -0,0 +1,39 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+
+import java.util.Collections;
+import java.util.List;
+
+// 存档查询返回的一页消息，按时间顺序排列
+public final class ArchivePage {
+    private final List<ArchivedMessage> messages;
+    private final String firstId;
+    private final String lastId;
+    private final boolean complete;
+
+    // firstId、lastId 为本页第一条和最后一条的存档 id，包括没有正文而被跳过的消息；
+    // complete 表示查询方向上已经没有更多消息
+    public ArchivePage(List<ArchivedMessage> messages, String firstId, String lastId, boolean complete) {
+        this.messages = Collections.unmodifiableList(messages);
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.complete = complete;
+    }
+
+    public List<ArchivedMessage> getMessages() {
+        return messages;
+    }
+
+    public String getFirstId() {
+        return firstId;
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,101 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.metrics.Metrics;
+import com.xcq.util.ExecutorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+// 登录后在后台从服务器存档补齐离线期间和其他设备上的消息。
+// 从上次记录的存档 id 向后分页，每页在一个事务中写入数据库并更新同步位置，中断后下次从断点继续
+public class ArchiveSync {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveSync.class);
+
+    private final ExecutorService executor;
+    // 聊天窗口翻页时的补取由用户触发，使用单独的线程，不排在长时间的同步后面
+    private final ExecutorService backfillExecutor;
+    private final int pageSize;
+    // 每个账号同时只有一个同步任务
+    private final Map<String, CompletableFuture<Integer>> running = new ConcurrentHashMap<>();
+
+    // concurrency 限制同时同步的账号数
+    public ArchiveSync(int concurrency, int pageSize) {
+        this.pageSize = pageSize;
+        this.executor = ExecutorProvider.getInstance().newBoundedExecutor("archive-sync", concurrency);
+        this.backfillExecutor = ExecutorProvider.getInstance().newBoundedExecutor("archive-backfill", 2);
+    }
+
+    // 返回新写入的消息数；该账号已有同步任务时返回正在进行的任务
+    public CompletableFuture<Integer> catchUp(String account, MessageArchive archive, ChatDatabase db) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        CompletableFuture<Integer> existing = running.putIfAbsent(account, future);
+        if (existing != null) {
+            return existing;
+        }
+        executor.execute(() -> {
+            try {
+                int inserted = run(account, archive, db);
+                running.remove(account, future);
+                future.complete(inserted);
+            } catch (Throwable e) {
+                running.remove(account, future);
+                logger.warn("Archive sync for {} stopped", account, e);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // 为一个会话创建历史翻页；archive 在每次补取时调用，返回 null 时只翻本地记录。两者都在后台线程中调用
+    public HistoryBackfill openConversation(String account, String contactJid, Supplier<MessageArchive> archive,
+                                            Supplier<ChatDatabase> database) {
+        return new HistoryBackfill(account, contactJid, archive, database, pageSize, backfillExecutor);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        backfillExecutor.shutdownNow();
+    }
+
+    private int run(String account, MessageArchive archive, ChatDatabase db) throws Exception {
+        if (db == null) {
+            throw new IllegalStateException("数据库不可用");
+        }
+        if (!archive.isSupported()) {
+            logger.info("Server does not support message archive, skipping sync for {}", account);
+            return 0;
+        }
+        long start = System.nanoTime();
+        String lastId = db.getLastArchiveId(account);
+        int inserted = 0;
+        int pages = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long pageStart = System.nanoTime();
+            ArchivePage page = archive.pageAfter(lastId, pageSize);
+            Metrics.ARCHIVE_PAGE_FETCH.recordSince(pageStart);
+            pages++;
+            if (page.getLastId() == null) {
+                break;
+            }
+            int count = db.saveArchivedMessages(account, page.getMessages(), page.getLastId());
+            if (count < 0) {
+                throw new IllegalStateException("Failed to save archive page after " + lastId);
+            }
+            Metrics.ARCHIVE_MESSAGES_SYNCED.add(count);
+            inserted += count;
+            lastId = page.getLastId();
+            if (page.isComplete()) {
+                break;
+            }
+        }
+        logger.info("Archive sync for {} finished: {} new messages in {} pages, {} ms",
+            account, inserted, pages, (System.nanoTime() - start) / 1_000_000);
+        return inserted;
+    }
+}
@@ -0,0 +1,139 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.ChatMessage;
+import com.xcq.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+// 一个会话的历史记录翻页。本地数据库中的记录不够时，从服务器存档取回更早的一页写入数据库，
+// 每次翻页后再预取下一页，用户继续向上翻时通常不需要等待网络。
+// 同一会话的加载和预取按提交顺序串行执行，存档游标只在这些任务中访问
+public class HistoryBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryBackfill.class);
+
+    private final String account;
+    private final String contactJid;
+    // 每次补取时取得当前连接上的存档；未连接时得到 null，这次只翻本地记录，连上后再补取
+    private final Supplier<MessageArchive> archive;
+    // 在后台线程中取得，打开数据库不占用 EDT
+    private final Supplier<ChatDatabase> database;
+    private final int pageSize;
+    private final Executor executor;
+
+    // 已取回的最早一条存档 id
+    private String cursor;
+    // 本地已有的最早消息时间，尚未取过存档时作为查询的时间上限
+    private long oldestKnown = Long.MAX_VALUE;
+    private Boolean supported;
+    private volatile boolean complete;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    HistoryBackfill(String account, String contactJid, Supplier<MessageArchive> archive, Supplier<ChatDatabase> database,
+                    int pageSize, Executor executor) {
+        this.account = account;
+        this.contactJid = contactJid;
+        this.archive = archive;
+        this.database = database;
+        this.pageSize = pageSize;
+        this.executor = executor;
+    }
+
+    // 返回 (beforeTimestamp, beforeId) 之前最近的最多 limit 条消息，按时间正序；结果在 EDT 中完成。
+    // 翻页时传入已显示的最早一条消息的时间和 id，从最新处开始时都传 Long.MAX_VALUE
+    public synchronized CompletableFuture<List<ChatMessage>> loadBefore(long beforeTimestamp, long beforeId, int limit) {
+        CompletableFuture<List<ChatMessage>> loaded = tail.thenApplyAsync(ignored -> load(beforeTimestamp, beforeId, limit), executor);
+        tail = loaded.handle((messages, e) -> null).thenRunAsync(this::prefetch, executor);
+
+        CompletableFuture<List<ChatMessage>> result = new CompletableFuture<>();
+        loaded.whenComplete((messages, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(messages);
+            }
+        }));
+        return result;
+    }
+
+    // 服务器上也没有更早的记录
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private List<ChatMessage> load(long beforeTimestamp, long beforeId, int limit) {
+        ChatDatabase db = db();
+        List<ChatMessage> messages = db.getChatHistoryBefore(account, contactJid, beforeTimestamp, beforeId, limit);
+        if (messages.size() < limit && !complete) {
+            // 本地记录已翻到头，等待服务器上的下一页
+            rememberOldest(messages, beforeTimestamp);
+            if (fetchPage()) {
+                messages = db.getChatHistoryBefore(account, contactJid, beforeTimestamp, beforeId, limit);
+            }
+        }
+        rememberOldest(messages, beforeTimestamp);
+        return messages;
+    }
+
+    private void prefetch() {
+        if (!complete) {
+            fetchPage();
+        }
+    }
+
+    // 取回游标之前的一页并写入数据库，失败或未连接时保留游标，下次翻页时重试
+    private boolean fetchPage() {
+        MessageArchive archive = this.archive.get();
+        if (archive == null) {
+            return false;
+        }
+        try {
+            if (supported == null) {
+                supported = archive.isSupported();
+            }
+            if (!supported) {
+                complete = true;
+                return false;
+            }
+            long start = System.nanoTime();
+            ArchivePage page = archive.pageBefore(contactJid, cursor, oldestKnown, pageSize);
+            Metrics.ARCHIVE_PAGE_FETCH.recordSince(start);
+            if (page.getFirstId() == null) {
+                complete = true;
+                return false;
+            }
+            // 翻阅的是旧记录，不计入未读
+            int count = db().saveBackfilledMessages(page.getMessages());
+            if (count < 0) {
+                return false;
+            }
+            Metrics.ARCHIVE_MESSAGES_SYNCED.add(count);
+            cursor = page.getFirstId();
+            complete = page.isComplete();
+            logger.debug("Backfilled {} messages with {}", count, contactJid);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed to fetch archived history with {}", contactJid, e);
+            return false;
+        }
+    }
+
+    private ChatDatabase db() {
+        ChatDatabase db = database.get();
+        if (db == null) {
+            throw new IllegalStateException("数据库不可用");
+        }
+        return db;
+    }
+
+    private void rememberOldest(List<ChatMessage> messages, long beforeTimestamp) {
+        long oldest = messages.isEmpty() ? beforeTimestamp : messages.get(0).getTimestamp().getTime();
+        oldestKnown = Math.min(oldestKnown, oldest);
+    }
+}
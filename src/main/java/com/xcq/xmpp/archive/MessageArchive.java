@@ -0,0 +1,16 @@
+package com.xcq.xmpp.archive;
+
+// 服务器消息存档（XEP-0313）的分页查询。
+// 同步引擎只依赖这个接口，调试时可以换成本地的替身存档
+public interface MessageArchive {
+    default boolean isSupported() throws Exception {
+        return true;
+    }
+
+    // 按时间顺序返回 afterId 之后的一页；afterId 为 null 时返回最新的一页
+    ArchivePage pageAfter(String afterId, int pageSize) throws Exception;
+
+    // 按时间顺序返回与 withJid 的会话中 beforeId 之前的一页；
+    // beforeId 为 null 时返回 beforeTimestamp 之前最近的一页，Long.MAX_VALUE 表示不限时间
+    ArchivePage pageBefore(String withJid, String beforeId, long beforeTimestamp, int pageSize) throws Exception;
+}
@@ -0,0 +1,94 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.delay.packet.DelayInformation;
+import org.jivesoftware.smackx.forward.packet.Forwarded;
+import org.jivesoftware.smackx.mam.MamManager;
+import org.jivesoftware.smackx.mam.MamManager.MamQuery;
+import org.jivesoftware.smackx.mam.MamManager.MamQueryArgs;
+import org.jivesoftware.smackx.mam.element.MamElements.MamResultExtension;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// 通过 Smack 的 MamManager 查询服务器上的个人存档，用 RSM 分页
+public class SmackMessageArchive implements MessageArchive {
+    private final MamManager mamManager;
+    private final BareJid account;
+
+    public SmackMessageArchive(XMPPConnection connection) {
+        this.mamManager = MamManager.getInstanceFor(connection);
+        this.account = connection.getUser().asBareJid();
+    }
+
+    @Override
+    public boolean isSupported() throws Exception {
+        return mamManager.isSupported();
+    }
+
+    @Override
+    public ArchivePage pageAfter(String afterId, int pageSize) throws Exception {
+        MamQueryArgs.Builder args = MamQueryArgs.builder().setResultPageSize(pageSize);
+        if (afterId != null) {
+            args.afterUid(afterId);
+        } else {
+            args.queryLastPage();
+        }
+        MamQuery query = mamManager.queryArchive(args.build());
+        // 首次同步只取最新的一页，更早的记录在翻看时按需获取
+        return toPage(query.getMamResultExtensions(), afterId == null || query.isComplete());
+    }
+
+    @Override
+    public ArchivePage pageBefore(String withJid, String beforeId, long beforeTimestamp, int pageSize) throws Exception {
+        MamQueryArgs.Builder args = MamQueryArgs.builder()
+            .setResultPageSize(pageSize)
+            .limitResultsToJid(JidCreate.bareFrom(withJid));
+        if (beforeId != null) {
+            args.beforeUid(beforeId);
+        } else {
+            if (beforeTimestamp != Long.MAX_VALUE) {
+                args.limitResultsBefore(new Date(beforeTimestamp));
+            }
+            args.queryLastPage();
+        }
+        MamQuery query = mamManager.queryArchive(args.build());
+        return toPage(query.getMamResultExtensions(), query.isComplete());
+    }
+
+    private ArchivePage toPage(List<MamResultExtension> results, boolean complete) {
+        List<ArchivedMessage> messages = new ArrayList<>(results.size());
+        String firstId = null;
+        String lastId = null;
+        for (MamResultExtension result : results) {
+            if (firstId == null) {
+                firstId = result.getId();
+            }
+            lastId = result.getId();
+            ArchivedMessage message = toArchivedMessage(result);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return new ArchivePage(messages, firstId, lastId, complete);
+    }
+
+    // 没有正文的消息（回执、输入状态等）返回 null
+    private ArchivedMessage toArchivedMessage(MamResultExtension result) {
+        Forwarded<Message> forwarded = result.getForwarded();
+        Message message = forwarded.getForwardedStanza();
+        if (message.getBody() == null || message.getFrom() == null || message.getTo() == null) {
+            return null;
+        }
+        BareJid from = message.getFrom().asBareJid();
+        DelayInformation delay = forwarded.getDelayInformation();
+        long timestamp = delay != null ? delay.getStamp().getTime() : System.currentTimeMillis();
+        return new ArchivedMessage(result.getId(), message.getStanzaId(), from.toString(),
+            message.getTo().asBareJid().toString(), message.getBody(), timestamp, from.equals(account));
+    }
+}
@@ -0,0 +1,19 @@
+package com.xcq.util;
+
+import org.slf4j.LoggerFactory;
+
+// JDK 21 及以上的版本：默认使用虚拟线程，-Dxcq.executor=platform 时退回平台线程
+final class ExecutorProviders {
+    static final ExecutorProvider INSTANCE = create();
+
+    private ExecutorProviders() {
+    }
+
+    private static ExecutorProvider create() {
+        if ("platform".equals(System.getProperty(ExecutorProvider.PROPERTY))) {
+            return new PlatformExecutorProvider();
+        }
+        LoggerFactory.getLogger(ExecutorProviders.class).info("Using virtual threads for blocking tasks");
+        return new VirtualExecutorProvider();
+    }
+}
@@ -0,0 +1,24 @@
+package com.xcq.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 虚拟线程实现，只在 JDK 21 及以上编译和加载。阻塞任务每个一个虚拟线程，
+// 需要限流的线程池仍限制同时执行的任务数，但等待 I/O 时不占用平台线程
+class VirtualExecutorProvider extends PlatformExecutorProvider {
+
+    @Override
+    public ExecutorService newBlockingExecutor(String name, int platformThreads) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    @Override
+    public ExecutorService newBoundedExecutor(String name, int maxConcurrency) {
+        return newPool(name, maxConcurrency, Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.xcq.db;
+
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+import com.xcq.db.ChatDatabase.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatDatabaseArchiveTest {
+    private static final String ME = "me@example.com";
+    private static final String BOB = "bob@example.com";
+    private static final String CAROL = "carol@example.com";
+
+    @TempDir
+    File dir;
+
+    // 2019、2020 年与 BOB 各 3 条，2021 年与 CAROL 3 条，全部移到归档库
+    private ChatDatabase openArchived(File file) {
+        ChatDatabase db = ChatDatabase.open(file);
+        List<ArchivedMessage> page = new ArrayList<>();
+        addMessages(page, BOB, 2019);
+        addMessages(page, BOB, 2020);
+        addMessages(page, CAROL, 2021);
+        db.saveBackfilledMessages(page);
+        while (db.archiveOldMessages(System.currentTimeMillis(), 100) > 0) {
+            // 每次移动最早一年
+        }
+        assertThat(db.getArchiveFiles()).hasSize(3);
+        return db;
+    }
+
+    private static void addMessages(List<ArchivedMessage> page, String contact, int year) {
+        long base = LocalDate.of(year, 6, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        for (int i = 0; i < 3; i++) {
+            boolean local = i % 2 == 0;
+            String id = contact + "-" + year + "-" + i;
+            page.add(new ArchivedMessage(id, id, local ? ME : contact, local ? contact : ME, id, base + i * 1000L, local));
+        }
+    }
+
+    @Test
+    void readsOnlyArchivesWithConversation() {
+        ChatDatabase db = openArchived(new File(dir, "chat.db"));
+        try {
+            List<ChatMessage> bob = db.getChatHistory(ME, BOB);
+            assertThat(bob).extracting(ChatMessage::getMessage).containsExactly(
+                BOB + "-2019-0", BOB + "-2019-1", BOB + "-2019-2", BOB + "-2020-0", BOB + "-2020-1", BOB + "-2020-2");
+            assertThat(db.getChatHistoryBefore(ME, CAROL, Long.MAX_VALUE, Long.MAX_VALUE, 2))
+                .extracting(ChatMessage::getMessage).containsExactly(CAROL + "-2021-1", CAROL + "-2021-2");
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    void deletesConversationFromAllArchives() {
+        ChatDatabase db = openArchived(new File(dir, "chat.db"));
+        try {
+            db.saveMessage(ME, BOB, "recent", true);
+            db.deleteChatHistory(ME, BOB);
+            assertThat(db.getChatHistory(ME, BOB)).isEmpty();
+            assertThat(db.getChatHistory(ME, CAROL)).hasSize(3);
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    void indexesArchivesFromEarlierVersions() throws Exception {
+        File file = new File(dir, "chat.db");
+        openArchived(file).close();
+        // 之前的版本没有记录归档库中的会话
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM archive_conversations");
+            statement.executeUpdate("DELETE FROM db_state WHERE key LIKE 'archive.indexed.%'");
+        }
+        ChatDatabase db = ChatDatabase.open(file);
+        try {
+            assertThat(db.getChatHistory(ME, BOB)).hasSize(6);
+            assertThat(db.getChatHistory(ME, CAROL)).hasSize(3);
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.xcq.db;
+
+import com.xcq.db.ChatDatabase.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatDatabaseMigrationTest {
+    private static final String ME = "me@example.com";
+    private static final String BOB = "bob@example.com";
+
+    @TempDir
+    File dir;
+
+    @Test
+    void migratesLegacySchemaInBackground() throws Exception {
+        File file = new File(dir, "chat.db");
+        int rows = 1000;
+        // 旧版本的消息表直接保存 JID 字符串
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE messages (id INTEGER PRIMARY KEY AUTOINCREMENT, sender_jid TEXT NOT NULL, " +
+                "receiver_jid TEXT NOT NULL, message TEXT NOT NULL, is_local BOOLEAN NOT NULL, " +
+                "is_read BOOLEAN NOT NULL DEFAULT 0, timestamp BIGINT NOT NULL)");
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO messages (sender_jid, receiver_jid, message, is_local, is_read, timestamp) VALUES (?, ?, ?, ?, 1, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    boolean local = i % 2 == 0;
+                    insert.setString(1, local ? ME : BOB);
+                    insert.setString(2, local ? BOB : ME);
+                    insert.setString(3, "m" + i);
+                    insert.setBoolean(4, local);
+                    insert.setLong(5, 1_700_000_000_000L + i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+
+        ChatDatabase db = ChatDatabase.open(file);
+        try {
+            // 打开后立即返回，查询等待迁移完成
+            List<ChatMessage> history = db.getChatHistory(ME, BOB);
+            assertThat(history).hasSize(rows);
+            assertThat(history.get(0).getMessage()).isEqualTo("m0");
+            assertThat(history.get(rows - 1).isLocal()).isFalse();
+            db.saveMessage(ME, BOB, "after migration", true);
+            assertThat(db.getChatHistory(ME, BOB)).hasSize(rows + 1);
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.xcq.plugin;
+
+import com.xcq.plugin.MessageInterceptor.Stage;
+import com.xcq.plugin.MessagePipeline.Mode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessagePipelineTest {
+    private static final String PLUGIN = "test-plugin";
+    private static final long BUDGET_MS = 5;
+
+    private final MessagePipeline pipeline = new MessagePipeline();
+
+    @AfterEach
+    void tearDown() {
+        pipeline.unregister(PLUGIN);
+    }
+
+    @Test
+    void syncInterceptorRunsInlineAndChangesBody() {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        pipeline.register(PLUGIN, Stage.INBOUND, (stage, from, to, body) -> {
+            thread.set(Thread.currentThread());
+            return body.toUpperCase();
+        });
+
+        assertThat(process("hi")).isEqualTo("HI");
+        assertThat(thread.get()).isSameAs(Thread.currentThread());
+        assertThat(mode()).isEqualTo(Mode.SYNC);
+    }
+
+    @Test
+    void singleOverrunKeepsSyncMode() {
+        AtomicBoolean slow = new AtomicBoolean(true);
+        pipeline.register(PLUGIN, Stage.INBOUND, (stage, from, to, body) -> {
+            if (slow.getAndSet(false)) {
+                sleep(BUDGET_MS * 4);
+            }
+            return body + "!";
+        });
+
+        // 超时的这次结果照样生效
+        assertThat(process("a")).isEqualTo("a!");
+        assertThat(process("b")).isEqualTo("b!");
+        assertThat(mode()).isEqualTo(Mode.SYNC);
+    }
+
+    @Test
+    void repeatedOverrunsSwitchToAsyncAndIgnoreChanges() {
+        AtomicBoolean slow = new AtomicBoolean(true);
+        pipeline.register(PLUGIN, Stage.INBOUND, (stage, from, to, body) -> {
+            if (slow.get()) {
+                sleep(BUDGET_MS * 4);
+            }
+            return body + "!";
+        });
+
+        for (int i = 0; i < MessagePipeline.MAX_CONSECUTIVE_OVERRUNS; i++) {
+            process("m" + i);
+        }
+        assertThat(mode()).isEqualTo(Mode.ASYNC);
+        assertThat(process("ignored")).isEqualTo("ignored");
+    }
+
+    @Test
+    void asyncInterceptorReturnsToSyncWhenFast() throws Exception {
+        AtomicBoolean slow = new AtomicBoolean(true);
+        pipeline.register(PLUGIN, Stage.INBOUND, (stage, from, to, body) -> {
+            if (slow.get()) {
+                sleep(BUDGET_MS * 4);
+            }
+            return body + "!";
+        });
+        for (int i = 0; i < MessagePipeline.MAX_CONSECUTIVE_OVERRUNS; i++) {
+            process("m" + i);
+        }
+        assertThat(mode()).isEqualTo(Mode.ASYNC);
+
+        slow.set(false);
+        for (int i = 0; i < MessagePipeline.RESTORE_AFTER_FAST_CALLS; i++) {
+            process("m" + i);
+        }
+        awaitMode(Mode.SYNC);
+        assertThat(process("back")).isEqualTo("back!");
+    }
+
+    @Test
+    void repeatedFailuresDisableInterceptor() {
+        AtomicInteger calls = new AtomicInteger();
+        pipeline.register(PLUGIN, Stage.INBOUND, (stage, from, to, body) -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("broken");
+        });
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(process("m" + i)).isEqualTo("m" + i);
+        }
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(pipeline.hasInterceptors(Stage.INBOUND)).isFalse();
+    }
+
+    @Test
+    void failuresInAsyncModeDisableInterceptor() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(false);
+        pipeline.register(PLUGIN, Stage.INBOUND, (stage, from, to, body) -> {
+            sleep(BUDGET_MS * 4);
+            if (failing.get()) {
+                throw new IllegalStateException("broken");
+            }
+            return null;
+        });
+        for (int i = 0; i < MessagePipeline.MAX_CONSECUTIVE_OVERRUNS; i++) {
+            process("m" + i);
+        }
+        assertThat(mode()).isEqualTo(Mode.ASYNC);
+
+        failing.set(true);
+        for (int i = 0; i < 3; i++) {
+            process("m" + i);
+        }
+        awaitMode(Mode.DISABLED);
+        process("last");
+        assertThat(pipeline.hasInterceptors(Stage.INBOUND)).isFalse();
+    }
+
+    private String process(String body) {
+        return pipeline.process(Stage.INBOUND, "bob@example.com", "me@example.com", body, BUDGET_MS);
+    }
+
+    private Mode mode() {
+        return pipeline.getStats().get(0).getMode();
+    }
+
+    private void awaitMode(Mode expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mode() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(mode()).isEqualTo(expected);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
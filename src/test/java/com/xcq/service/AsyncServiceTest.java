@@ -0,0 +1,146 @@
+package com.xcq.service;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.ChatMessage;
+import com.xcq.xmpp.XMPPClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// surefire 以 -Dxcq.edt.strict=true 运行测试，EdtGuard 在 EDT 中直接抛出异常
+class AsyncServiceTest {
+    private static final String ME = "me@example.com";
+    private static final String BOB = "bob@example.com";
+
+    @TempDir
+    File dir;
+
+    private ChatDatabase db;
+
+    @BeforeEach
+    void openDatabase() {
+        db = ChatDatabase.open(new File(dir, "chat.db"));
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        db.close();
+    }
+
+    @Test
+    void strictModeIsEnabled() {
+        assertThat(Boolean.getBoolean("xcq.edt.strict")).isTrue();
+    }
+
+    @Test
+    void databaseThrowsOnEdt() {
+        assertThrowsOnEdt(() -> db.saveMessage(ME, BOB, "hi", true), "ChatDatabase.saveMessage");
+        assertThrowsOnEdt(() -> db.getChatHistory(ME, BOB), "ChatDatabase.getChatHistory");
+        assertThrowsOnEdt(() -> db.markMessagesAsRead(ME, BOB), "ChatDatabase.markMessagesAsRead");
+    }
+
+    @Test
+    void xmppClientThrowsOnEdt() {
+        XMPPClient client = new XMPPClient(null);
+        assertThrowsOnEdt(() -> client.sendMessage(BOB, "hi"), "XMPPClient.sendMessage");
+        assertThrowsOnEdt(client::disconnect, "XMPPClient.disconnect");
+        assertThrowsOnEdt(() -> client.acceptSubscription(BOB), "XMPPClient.acceptSubscription");
+    }
+
+    @Test
+    void databaseWorkRunsOffEdtAndCompletesOnEdt() throws Exception {
+        XMPPClient client = mock(XMPPClient.class);
+        when(client.getDatabase()).thenReturn(db);
+        AsyncService service = new AsyncService(client);
+        try {
+            service.saveMessage(ME, BOB, "hello", true, "origin-1").get(5, TimeUnit.SECONDS);
+
+            AtomicReference<CompletableFuture<Boolean>> completedOnEdt = new AtomicReference<>();
+            AtomicReference<CompletableFuture<List<ChatMessage>>> history = new AtomicReference<>();
+            // 在 EDT 中提交并注册回调：结果通过 invokeLater 交回，回调一定在这段代码结束之后执行
+            SwingUtilities.invokeAndWait(() -> {
+                history.set(service.getChatHistory(ME, BOB));
+                completedOnEdt.set(history.get().thenApply(ignored -> SwingUtilities.isEventDispatchThread()));
+            });
+
+            assertThat(completedOnEdt.get().get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(history.get().get()).extracting(ChatMessage::getMessage).containsExactly("hello");
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void sendRunsOffEdtAndCompletesOnEdt() throws Exception {
+        XMPPClient client = mock(XMPPClient.class);
+        AtomicBoolean sentOnEdt = new AtomicBoolean(true);
+        when(client.sendMessage(anyString(), anyString())).thenAnswer(invocation -> {
+            sentOnEdt.set(SwingUtilities.isEventDispatchThread());
+            return "id-1";
+        });
+        AsyncService service = new AsyncService(client);
+        try {
+            AtomicReference<CompletableFuture<Boolean>> completedOnEdt = new AtomicReference<>();
+            SwingUtilities.invokeAndWait(() -> completedOnEdt.set(service.sendMessage(BOB, "hi")
+                .thenApply(id -> "id-1".equals(id) && SwingUtilities.isEventDispatchThread())));
+
+            assertThat(completedOnEdt.get().get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(sentOnEdt.get()).isFalse();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void failuresCompleteOnEdt() throws Exception {
+        XMPPClient client = mock(XMPPClient.class);
+        when(client.getDatabase()).thenReturn(null);
+        AsyncService service = new AsyncService(client);
+        try {
+            AtomicReference<CompletableFuture<Boolean>> failedOnEdt = new AtomicReference<>();
+            SwingUtilities.invokeAndWait(() -> failedOnEdt.set(service.deleteAllChatHistory()
+                .handle((ignored, e) -> e != null && SwingUtilities.isEventDispatchThread())));
+
+            assertThat(failedOnEdt.get().get(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static void assertThrowsOnEdt(ThrowingRunnable call, String operation) {
+        assertThatThrownBy(() -> SwingUtilities.invokeAndWait(() -> {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new AssertionError(operation + " failed before the EDT check", e);
+            }
+        }))
+            .isInstanceOf(InvocationTargetException.class)
+            .cause()
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining(operation);
+    }
+
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,106 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveSyncTest {
+    private static final String ME = InMemoryArchive.ME;
+    private static final String BOB = InMemoryArchive.BOB;
+    private static final int PAGE_SIZE = 3;
+
+    @TempDir
+    File dir;
+
+    private ChatDatabase db;
+    private ArchiveSync sync;
+    private InMemoryArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        db = ChatDatabase.open(new File(dir, "chat.db"));
+        sync = new ArchiveSync(1, PAGE_SIZE);
+        archive = new InMemoryArchive();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sync.shutdown();
+        db.close();
+    }
+
+    @Test
+    void firstSyncFetchesNewestPage() throws Exception {
+        archive.addMessages(1, 10);
+
+        assertThat(catchUp(ME)).isEqualTo(PAGE_SIZE);
+
+        assertThat(archive.requests).containsExactly((String) null);
+        assertThat(db.getLastArchiveId(ME)).isEqualTo("a10");
+        assertThat(bodies()).containsExactly("m8", "m9", "m10");
+    }
+
+    @Test
+    void resumesFromLastArchiveIdAfterFailedPage() throws Exception {
+        archive.addMessages(1, 3);
+        assertThat(catchUp(ME)).isEqualTo(3);
+
+        archive.addMessages(4, 10);
+        // a4..a6 保存后，下一页失败
+        archive.failAfter = "a6";
+        assertThatThrownBy(() -> catchUp(ME))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(IOException.class);
+        assertThat(db.getLastArchiveId(ME)).isEqualTo("a6");
+
+        archive.failAfter = null;
+        archive.requests.clear();
+        assertThat(catchUp(ME)).isEqualTo(4);
+
+        assertThat(archive.requests).startsWith("a6");
+        assertThat(db.getLastArchiveId(ME)).isEqualTo("a10");
+        assertThat(bodies()).containsExactly("m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9", "m10");
+    }
+
+    @Test
+    void deduplicatesByOriginIdAndStanzaId() throws Exception {
+        // 本机发送时只记录了 origin_id，存档中的同一条消息不再插入
+        db.saveMessage(ME, BOB, "m2", true, "o2", null);
+        archive.addMessages(1, 3);
+
+        assertThat(catchUp(ME)).isEqualTo(2);
+        // 本地保存的 m2 使用当前时间，排在最后
+        assertThat(bodies()).containsExactlyInAnyOrder("m1", "m2", "m3");
+
+        // 另一个同步位置从头再取一遍，全部按 stanza_id 跳过
+        archive.requests.clear();
+        assertThat(catchUp("other@example.com")).isZero();
+        assertThat(archive.requests).containsExactly((String) null);
+        assertThat(bodies()).hasSize(3);
+    }
+
+    private int catchUp(String account) throws Exception {
+        return sync.catchUp(account, archive, db).get(10, TimeUnit.SECONDS);
+    }
+
+    private List<String> bodies() {
+        List<String> bodies = new ArrayList<>();
+        for (ChatMessage m : db.getChatHistory(ME, BOB)) {
+            bodies.add(m.getMessage());
+        }
+        return bodies;
+    }
+}
@@ -0,0 +1,116 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase;
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+import com.xcq.db.ChatDatabase.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryBackfillTest {
+    private static final String ME = InMemoryArchive.ME;
+    private static final String BOB = InMemoryArchive.BOB;
+    private static final int PAGE_SIZE = 3;
+
+    @TempDir
+    File dir;
+
+    private ChatDatabase db;
+    private ExecutorService executor;
+    private final InMemoryArchive archive = new InMemoryArchive();
+    private final AtomicReference<MessageArchive> connected = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        db = ChatDatabase.open(new File(dir, "chat.db"));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        db.close();
+    }
+
+    @Test
+    void pagesLocalHistoryWithTiedTimestamps() throws Exception {
+        // 每三条消息时间相同，翻页边界落在相同时间的消息中间
+        List<ArchivedMessage> messages = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            messages.add(new ArchivedMessage("s" + i, null, BOB, ME, "m" + i,
+                InMemoryArchive.BASE_TIME + (i / 3) * 1000L, false));
+        }
+        db.saveBackfilledMessages(messages);
+        HistoryBackfill backfill = open();
+
+        List<String> seen = new ArrayList<>();
+        List<ChatMessage> page = backfill.loadBefore(Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE).get(5, TimeUnit.SECONDS);
+        while (!page.isEmpty()) {
+            List<String> bodies = bodies(page);
+            bodies.addAll(seen);
+            seen = bodies;
+            ChatMessage oldest = page.get(0);
+            page = backfill.loadBefore(oldest.getTimestamp().getTime(), oldest.getId(), PAGE_SIZE)
+                .get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(seen).containsExactly("m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9", "m10");
+        assertThat(seen).isEqualTo(bodies(db.getChatHistory(ME, BOB)));
+    }
+
+    @Test
+    void backfillsFromArchiveAsRead() throws Exception {
+        archive.addMessages(1, 7);
+        connected.set(archive);
+        HistoryBackfill backfill = open();
+
+        List<ChatMessage> page = backfill.loadBefore(Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE).get(5, TimeUnit.SECONDS);
+        assertThat(bodies(page)).containsExactly("m5", "m6", "m7");
+
+        while (!page.isEmpty()) {
+            ChatMessage oldest = page.get(0);
+            page = backfill.loadBefore(oldest.getTimestamp().getTime(), oldest.getId(), PAGE_SIZE)
+                .get(5, TimeUnit.SECONDS);
+        }
+        assertThat(backfill.isComplete()).isTrue();
+        assertThat(bodies(db.getChatHistory(ME, BOB))).containsExactly("m1", "m2", "m3", "m4", "m5", "m6", "m7");
+        // 翻阅的旧消息不算未读
+        assertThat(db.getUnreadMessageCountFromContact(ME, BOB)).isZero();
+    }
+
+    @Test
+    void backfillsAfterConnecting() throws Exception {
+        archive.addMessages(1, 4);
+        HistoryBackfill backfill = open();
+
+        assertThat(backfill.loadBefore(Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE).get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(backfill.isComplete()).isFalse();
+
+        connected.set(archive);
+        List<ChatMessage> page = backfill.loadBefore(Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE).get(5, TimeUnit.SECONDS);
+        assertThat(bodies(page)).containsExactly("m2", "m3", "m4");
+    }
+
+    private HistoryBackfill open() {
+        return new HistoryBackfill(ME, BOB, connected::get, () -> db, PAGE_SIZE, executor);
+    }
+
+    private static List<String> bodies(List<ChatMessage> messages) {
+        List<String> bodies = new ArrayList<>();
+        for (ChatMessage m : messages) {
+            bodies.add(m.getMessage());
+        }
+        return bodies;
+    }
+}
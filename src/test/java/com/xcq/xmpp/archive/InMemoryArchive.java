@@ -0,0 +1,71 @@
+package com.xcq.xmpp.archive;
+
+import com.xcq.db.ChatDatabase.ArchivedMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 测试用的服务器存档：按时间顺序保存，存档 id 为 a1、a2…；偶数条由 me 发送
+class InMemoryArchive implements MessageArchive {
+    static final String ME = "me@example.com";
+    static final String BOB = "bob@example.com";
+    static final long BASE_TIME = 1_700_000_000_000L;
+
+    private final List<ArchivedMessage> messages = new ArrayList<>();
+    final List<String> requests = new ArrayList<>();
+    // pageAfter 收到这个 id 时失败
+    volatile String failAfter;
+
+    synchronized void addMessages(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            boolean local = i % 2 == 0;
+            messages.add(new ArchivedMessage("a" + i, "o" + i, local ? ME : BOB, local ? BOB : ME,
+                "m" + i, BASE_TIME + i * 1000L, local));
+        }
+    }
+
+    @Override
+    public synchronized ArchivePage pageAfter(String afterId, int pageSize) throws Exception {
+        requests.add(afterId);
+        if (afterId != null && afterId.equals(failAfter)) {
+            throw new IOException("Simulated failure after " + afterId);
+        }
+        int from = afterId == null ? Math.max(0, messages.size() - pageSize) : indexOf(afterId) + 1;
+        int to = Math.min(messages.size(), from + pageSize);
+        boolean complete = afterId == null || to == messages.size();
+        return page(messages.subList(from, to), complete);
+    }
+
+    @Override
+    public synchronized ArchivePage pageBefore(String withJid, String beforeId, long beforeTimestamp, int pageSize) {
+        requests.add(beforeId);
+        int to = beforeId != null ? indexOf(beforeId) : messages.size();
+        List<ArchivedMessage> earlier = new ArrayList<>();
+        for (ArchivedMessage m : messages.subList(0, to)) {
+            String contact = m.isLocal() ? m.getReceiverJid() : m.getSenderJid();
+            if (contact.equals(withJid) && (beforeId != null || m.getTimestamp() < beforeTimestamp)) {
+                earlier.add(m);
+            }
+        }
+        int from = Math.max(0, earlier.size() - pageSize);
+        return page(earlier.subList(from, earlier.size()), from == 0);
+    }
+
+    private static ArchivePage page(List<ArchivedMessage> messages, boolean complete) {
+        List<ArchivedMessage> page = new ArrayList<>(messages);
+        if (page.isEmpty()) {
+            return new ArchivePage(page, null, null, true);
+        }
+        return new ArchivePage(page, page.get(0).getStanzaId(), page.get(page.size() - 1).getStanzaId(), complete);
+    }
+
+    private int indexOf(String id) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).getStanzaId().equals(id)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown archive id " + id);
+    }
+}